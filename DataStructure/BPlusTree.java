@@ -1,3 +1,17 @@
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 /**
 * B+ 树的 Java 实现
 *
@@ -16,6 +30,10 @@ public class BPlusTree<K extends Comparable<K>, V> {
         Entry[] children;
         // prev: 前一个叶子节点，suc: 后继叶子节点
         Node prev, suc;
+        // 叶子节点中所有 key 的公共前缀，此时元素中只保存去掉前缀之后的后缀；为 null 时表示 key 没有经过压缩
+        String prefix;
+        // 叶子节点中 Integer 或者 Long 类型的 key 的位压缩形式，此时元素中的 key 都为 null
+        PackedKeys packed;
 
         public Node(int m, int M) {
             this.m = m;
@@ -39,14 +57,117 @@ public class BPlusTree<K extends Comparable<K>, V> {
         }
     }
 
+    /**
+     * 叶子节点中 Integer 或者 Long 类型的 key 的 Frame-of-Reference 编码：以最小的 key 作为 base，
+     * 每个 key 只保存它和 base 的差值，所有的差值使用相同的位数 bits，紧密地排列在 long 数组中
+     * <br />
+     * 由于每个差值的位数相同，位置 i 的 key 可以直接通过位运算解码，二分查找不需要解码整个叶子节点。
+     * 一个叶子节点中的 key 的分布范围通常很小，差值一般只需要十几位，一个缓存行就能够容纳几十个 key，
+     * 而不是几十个分散在堆中的 Long 对象
+     */
+    static final class PackedKeys {
+        final boolean ints; // key 的类型是否为 Integer，用于还原 key
+        final int capacity;  // 能够容纳的 key 的个数
+        long base;
+        int bits;
+        long[] words;
+
+        PackedKeys(boolean ints, int capacity) {
+            this.ints = ints;
+            this.capacity = capacity;
+        }
+
+        /**
+         * 叶子节点中位置 i 的 key，位置从 1 开始
+         */
+        long get(int i) {
+            return base + raw(i - 1);
+        }
+
+        /**
+         * 在位置 i 插入 key，原有的位置 [i, m] 的 key 向后移动一位。key 小于 base 或者差值超过了 bits 位时重新编码
+         */
+        void insert(int i, long key, int m) {
+            long delta = key - base;
+            if (key < base || bits < Long.SIZE && delta >>> bits != 0) {
+                long[] keys = new long[m + 1];
+                for (int j = 1, k = 0; k <= m; ++k)
+                    keys[k] = k == i - 1 ? key : get(j++);
+                pack(keys, m + 1);
+                return;
+            }
+
+            for (int j = m - 1; j >= i - 1; --j)
+                set(j + 1, raw(j));
+            set(i - 1, delta);
+        }
+
+        /**
+         * 删除位置 [from, to] 的 key，之后的 key 向前移动
+         */
+        void remove(int from, int to, int m) {
+            int n = to - from + 1;
+            for (int j = to; j < m; ++j)
+                set(j - n, raw(j));
+        }
+
+        /**
+         * 按照 keys 中前 n 个有序的 key 重新确定 base 和 bits，然后重新编码
+         */
+        void pack(long[] keys, int n) {
+            base = keys[0];
+            bits = Math.max(1, Long.SIZE - Long.numberOfLeadingZeros(keys[n - 1] - base));
+            words = new long[(int) (((long) capacity * bits + Long.SIZE - 1) / Long.SIZE)];
+            for (int j = 0; j < n; ++j)
+                set(j, keys[j] - base);
+        }
+
+        private long raw(int j) {
+            long pos = (long) j * bits;
+            int w = (int) (pos >>> 6), off = (int) (pos & 63);
+            long v = words[w] >>> off;
+            if (off + bits > Long.SIZE) v |= words[w + 1] << (Long.SIZE - off);
+            return bits == Long.SIZE ? v : v & (1L << bits) - 1;
+        }
+
+        private void set(int j, long v) {
+            long mask = bits == Long.SIZE ? -1L : (1L << bits) - 1;
+            long pos = (long) j * bits;
+            int w = (int) (pos >>> 6), off = (int) (pos & 63);
+            words[w] = words[w] & ~(mask << off) | v << off;
+            if (off + bits > Long.SIZE) {
+                int shift = Long.SIZE - off;
+                words[w + 1] = words[w + 1] & ~(mask >>> shift) | v >>> shift;
+            }
+        }
+    }
+
+    public static final double DEFAULT_FILL_FACTOR = 0.9;
+
+    /**
+     * 顺序插入导致最右边的节点分裂时，左边的节点保留的元素比例
+     */
+    private static final double SEQUENTIAL_SPLIT = 0.9;
+
+    /**
+     * 合并的批次中的修改数目达到树中元素数目的 1 / MERGE_REBUILD 时，直接重新构建整棵树
+     */
+    private static final int MERGE_REBUILD = 8;
+
     private final int M;
 
     private Node root;
 
+    private Node last; // 最右边的叶子节点，key 递增地插入时直接追加到这个节点中
+
     private int height;
 
     private int size;
 
+    private int nodes = 1; // 当前树中节点的个数，由分裂、合并以及根节点的变化维护，用于计算填充因子
+
+    private TreeMetrics metrics; // 为 null 时表示没有开启指标
+
     public BPlusTree(int m) {
         if (m % 2 == 0 || m < 2) {
             throw new IllegalArgumentException("阶数 M 只能是大于 1 的奇数");
@@ -54,6 +175,7 @@ public class BPlusTree<K extends Comparable<K>, V> {
 
         M = m;
         this.root = new Node(0, M);
+        this.last = root;
     }
 
     int height() {
@@ -64,38 +186,122 @@ public class BPlusTree<K extends Comparable<K>, V> {
         return this.size;
     }
 
+    /**
+     * 开启结构指标的记录，之后的分裂、合并、借用、比较次数以及 get、put、delete 的延迟都会被记录，重复调用返回同一个对象
+     *
+     * @return : 记录指标的对象，可以直接读取或者通过 {@link TreeMetrics#register(String)} 注册到 JMX
+     */
+    public TreeMetrics enableMetrics() {
+        if (metrics == null) metrics = new TreeMetrics(this::fillFactor, this::height, this::size);
+        return metrics;
+    }
+
+    /**
+     * 所有节点（包括索引节点和叶子节点）的平均填充因子，即键值对的个数和所有节点的容量之比。
+     * 索引节点中的分隔元素不计入其中，因此比实际占用的比例略低
+     */
+    double fillFactor() {
+        return (double) size / ((long) nodes * (M - 1));
+    }
+
     public V get(K key) {
         if (key == null) {
             throw new IllegalArgumentException("key 不能为 null");
         }
 
-        return search(root, key, 0);
-    }
+        TreeMetrics metrics = this.metrics;
+        if (metrics == null) return search(key);
 
-    private V search(Node x, K key, int h) {
-        if (x == null) return null;
+        long start = System.nanoTime(), comparisons = metrics.comparisons;
+        V value = search(key);
+        metrics.recordLookup(metrics.comparisons - comparisons, System.nanoTime() - start);
+        return value;
+    }
 
-        Entry[] entries = x.children;
+    private V search(K key) {
+        Node x = root;
         /*
-            和 B 树的搜索不同的地方在于，B+ 树实际存储数据的元素只能在叶子节点上
+            和 B 树的搜索不同的地方在于，B+ 树实际存储数据的元素只能在叶子节点上，
+            索引节点中等于 key 的分隔元素也需要继续进入它的右区间
          */
-        if (h == height) {
-            for (int i = 1; i <= x.m; ++i) {
-                if (eq(entries[i].key, key))
-                    return (V) entries[i].val;
-            }
-            return null;
+        for (int h = 0; h < height; ++h)
+            x = x.children[childOf(x, key)].next;
+
+        int idx = indexOf(x, key);
+        return idx > 0 ? (V) x.children[idx].val : null;
+    }
+
+    /**
+     * 在节点 x 的有效元素 [1, x.m] 中二分查找 key，返回值的约定和 {@link java.util.Arrays#binarySearch} 一致：
+     * 如果查找到了 key，返回它所在的位置；否则返回 -(插入位置) - 1，其中插入位置为第一个大于 key 的元素位置
+     *
+     * @param x   : 待查找的节点
+     * @param key : 待查找的 key
+     * @return : key 在节点中的位置，或者经过编码之后的插入位置
+     */
+    private int indexOf(Node x, K key) {
+        TreeMetrics metrics = this.metrics;
+        Entry[] entries = x.children;
+        String prefix = x.prefix;
+        PackedKeys packed = x.packed;
+        long k = packed == null ? 0 : ((Number) key).longValue();
+        if (prefix != null && !((String) key).startsWith(prefix)) {
+            // 叶子节点中所有的 key 都以 prefix 开头，因此 key 要么小于所有的元素，要么大于所有的元素
+            if (metrics != null) metrics.comparisons++;
+            return ((String) key).compareTo(prefix) < 0 ? -2 : -x.m - 2;
+        }
+
+        int lo = 1, hi = x.m;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp;
+            if (packed != null) cmp = Long.compare(k, packed.get(mid));
+            else if (prefix != null) cmp = compareFrom((String) key, prefix.length(), (String) entries[mid].key);
+            else cmp = key.compareTo((K) entries[mid].key);
+            if (metrics != null) metrics.comparisons++;
+            if (cmp < 0) hi = mid - 1;
+            else if (cmp > 0) lo = mid + 1;
+            else return mid;
         }
 
-        for (int i = 1; i <= x.m; ++i) {
-            if (eq(entries[i].key, key))
-                return search(entries[i].next, key, h + 1);
+        return -lo - 1;
+    }
+
+    /**
+     * 比较 key 和叶子节点 x 中位置 i 的元素，不需要还原元素的完整 key
+     */
+    private int compare(K key, Node x, int i) {
+        if (x.packed != null) return Long.compare(((Number) key).longValue(), x.packed.get(i));
+
+        String prefix = x.prefix;
+        if (prefix == null) return key.compareTo((K) x.children[i].key);
+
+        String s = (String) key;
+        if (!s.startsWith(prefix)) return s.compareTo(prefix);
+        return compareFrom(s, prefix.length(), (String) x.children[i].key);
+    }
 
-            if (less(entries[i - 1].key, key) && less(key, entries[i].key))
-                return search(entries[i - 1].next, key, h + 1);
+    /**
+     * 叶子节点 x 中位置 i 的元素的完整 key，哨兵元素的 key 仍然为 null
+     */
+    private K keyOf(Node x, int i) {
+        if (i == 0) return null;
+        Object key = x.children[i].key;
+
+        PackedKeys packed = x.packed;
+        if (packed != null) {
+            long v = packed.get(i);
+            return (K) (packed.ints ? (Object) (int) v : (Object) v);
         }
+        return (K) (x.prefix == null ? key : x.prefix.concat((String) key));
+    }
 
-        return search(entries[x.m].next, key, h + 1);
+    /**
+     * 索引节点 x 中包含 key 的区间，即最后一个小于等于 key 的分隔元素的位置，不存在时为哨兵元素的位置 0
+     */
+    private int childOf(Node x, K key) {
+        int idx = indexOf(x, key);
+        return idx > 0 ? idx : -idx - 2;
     }
 
     public void put(K key, V val) {
@@ -103,8 +309,18 @@ public class BPlusTree<K extends Comparable<K>, V> {
             throw new IllegalArgumentException("key 不能为 null");
         }
 
-        Node result = insert(root, key, val, 0);
+        long start = metrics == null ? 0 : System.nanoTime();
+        Node result = null;
+        Node x = last;
+        if (x.m > 0 && x.m < M - 1 && compare(key, x, x.m) > 0) {
+            // key 大于树中所有的 key，并且最右边的叶子节点不会分裂，直接追加，不需要从根节点向下查找
+            K stored = encode(x, x.m + 1, key);
+            x.children[++x.m] = new Entry(stored, val, null);
+        } else {
+            result = insert(root, key, val, 0, true);
+        }
         size++;
+        if (metrics != null) metrics.record(TreeMetrics.Op.PUT, System.nanoTime() - start);
 
         if (result == null) return;
         /*
@@ -112,6 +328,7 @@ public class BPlusTree<K extends Comparable<K>, V> {
          */
         root = result;
         height++;
+        nodes++;
     }
 
     public Entry delete(K key) {
@@ -119,156 +336,201 @@ public class BPlusTree<K extends Comparable<K>, V> {
             throw new IllegalArgumentException("待删除的 key 不能为 null");
         }
 
-        Entry entry = delete(null, root, key, 0);
+        long start = metrics == null ? 0 : System.nanoTime();
+        Entry entry = delete(null, 0, root, key, 0);
         if (entry != null) size--;
+        if (metrics != null) metrics.record(TreeMetrics.Op.DELETE, System.nanoTime() - start);
 
         return entry;
     }
 
-    private Node insert(Node x, K key, V val, int h) {
-        int idx;
-        Entry t = new Entry(key, val, null);
+    /**
+     * 在以 x 为根的子树中插入键值对
+     *
+     * @param edge : x 是否是所在的层中最右边的节点，这样的节点在末尾插入之后发生分裂时，按照顺序插入的方式进行分裂
+     * @return : 如果 x 发生了分裂，返回分裂之后形成的子树的根节点；否则返回 null
+     */
+    private Node insert(Node x, K key, V val, int h, boolean edge) {
+        Entry t;
         Entry[] entries = x.children;
+        int idx;
 
         if (h == height) {
             // 只能在叶子节点上完成元素的插入
-            for (idx = 1; idx <= x.m; ++idx) {
-                if (eq(entries[idx].key, key)) {
-                    entries[idx].val = val;
-                    size--;
-                    return null;
-                }
-                if (less(key, entries[idx].key)) break;
+            idx = indexOf(x, key);
+            if (idx > 0) {
+                entries[idx].val = val;
+                size--;
+                return null;
             }
+
+            idx = -idx - 1;
+            t = new Entry(encode(x, idx, key), val, null);
         } else {
-            for (idx = 1; idx <= x.m; ++idx) {
-                if (less(entries[idx].key, key) || eq(entries[idx].key, key)) continue;
-                break;
-            }
+            idx = childOf(x, key);
 
-            // 插入到前一个区间元素中，因为此时的元素已经大于现有的 key 了
-            Node u = insert(entries[idx - 1].next, key, val, h + 1);
+            // 插入到 key 所在的区间中
+            Node u = insert(entries[idx].next, key, val, h + 1, edge && idx == x.m);
             // 插入结果为 null 说明没有发生节点分裂，正常返回即可
             if (u == null) return null;
 
             /*
                 由于此时发生了节点分裂，需要将分裂后的节点的根节点插入到当前的节点中，
-                首先需要找到根节点的插入位置
+                分裂得到的分隔元素一定位于 (entries[idx], entries[idx + 1]) 这个区间内，因此它的插入位置为 idx + 1
             */
-            for (idx = 1; idx <= x.m; ++idx)
-                if (less(u.children[1].key, entries[idx].key)) break;
-
-            entries[idx - 1].next = u.children[0].next;
+            idx++;
             t = u.children[1]; // t 表示待插入的节点
         }
 
-        if (M - idx >= 0)
-            System.arraycopy(x.children, idx, x.children, idx + 1, M - idx);
+        System.arraycopy(x.children, idx, x.children, idx + 1, x.m + 1 - idx);
 
         x.children[idx] = t;
         x.m++;
 
         if (x.m < M) return null;
+
+        /*
+            在最右边的节点的末尾插入时，key 很可能是顺序递增的，之后的插入也都会进入新的右节点，
+            这时左边的节点保留大部分的元素，否则左边的节点将永远只有一半的元素
+         */
+        boolean sequential = edge && idx == x.m;
         // 对叶子节点和索引节点采取不同的处理策略
-        if (h == height) return splitLeaf(x);
-        return splitIndex(x);
+        if (h == height) return splitLeaf(x, sequential ? sequentialKeep(M - 1) : M / 2);
+        return splitIndex(x, sequential ? sequentialKeep(M - 2) : M / 2);
+    }
+
+    /**
+     * 顺序插入时分裂之后左边的节点保留的元素个数，不会超过 max，也不会少于 M / 2
+     */
+    private int sequentialKeep(int max) {
+        return Math.min(max, Math.max(M / 2, (int) (M * SEQUENTIAL_SPLIT)));
     }
 
-    private Entry delete(Node parent, Node cur, K key, int h) {
+    /**
+     * 通过传入的父节点和当前处理的节点，按照传入的 key 对对应的键值对进行删除
+     * <br />
+     * 删除只会发生在叶子节点上，索引节点中的分隔元素即使等于被删除的 key 也依旧能够正确地划分区间，因此不需要修改
+     *
+     * @param parent : 当前处理的节点的父节点，特别地，根节点的父节点为 null
+     * @param pos    : 当前处理的节点在父节点中的链接位置，即 parent.children[pos].next == cur
+     * @param cur    : 当前处理的节点
+     * @param key    : 待删除的 key
+     * @param h      : 当前处理的节点的树的高度
+     * @return : 如果删除成功，返回 key 在树中对应的键值对对象
+     */
+    private Entry delete(Node parent, int pos, Node cur, K key, int h) {
         Entry entry;
-        int idx;
+        Entry[] entries = cur.children;
 
         if (h == height) {
-            for (idx = 1; idx <= cur.m; ++idx)
-                if (eq(cur.children[idx].key, key)) break;
-
+            int idx = indexOf(cur, key);
             // 如果当前叶子节点不存在这样的键值对元素，则跳过
-            if (idx > cur.m) return null;
-            entry = cur.children[idx];
-
-            // 移动节点元素列表，删除元素
-            if (cur.m + 1 - idx >= 0)
-                System.arraycopy(cur.children, idx + 1, cur.children, idx, cur.m + 1 - idx);
-            cur.m--;
+            if (idx < 0) return null;
+            entry = entries[idx];
+            entry.key = keyOf(cur, idx);
+            removeAt(cur, idx);
         } else {
-            for (idx = 1; idx <= cur.m; ++idx) {
-                if (eq(cur.children[idx].key, key)) {
-                    entry = delete(cur, cur.children[idx].next, key, h + 1);
-                    if (cur.m < M / 2) reBalance(parent, cur, h);
-                    return entry;
-                }
-
-                // 当前节点在该节点的后继节点中，递归进行删除
-                if (less(key, cur.children[idx].key)) {
-                    entry = delete(cur, cur.children[idx - 1].next, key, h + 1);
-                    if (cur.m < M / 2) reBalance(parent, cur, h);
-                    return entry;
-                }
-            }
-
-            entry = delete(cur, cur.children[cur.m].next, key, h + 1);
+            int idx = childOf(cur, key);
+            entry = delete(cur, idx, entries[idx].next, key, h + 1);
         }
 
-        if (cur.m < M / 2) reBalance(parent, cur, h);
+        if (cur.m < M / 2) reBalance(parent, pos, cur, h);
         return entry;
     }
 
     /**
-     * 分裂索引节点，由于索引节点不存储实际数据，因此直接从中间进行分裂即可
+     * 移除叶子节点 x 中位置 idx 的元素，之后的元素向前移动一位，不会对 x 进行重平衡
+     */
+    private void removeAt(Node x, int idx) {
+        if (x.packed != null) x.packed.remove(idx, idx, x.m);
+
+        // 移动节点元素列表，删除元素
+        System.arraycopy(x.children, idx + 1, x.children, idx, x.m - idx);
+        x.children[x.m--] = null;
+        resetIfEmpty(x);
+    }
+
+    /**
+     * 叶子节点的元素全部被删除之后，清除它的公共前缀以及位压缩的状态，之后加入的 key 将以完整的形式保存，直到再次被压缩
+     */
+    private static void resetIfEmpty(Node x) {
+        if (x.m != 0) return;
+        x.prefix = null;
+        x.packed = null;
+    }
+
+    /**
+     * 分裂索引节点，由于索引节点不存储实际数据，因此直接将位置 keep + 1 的元素上移即可。
+     * 上移的分隔元素在叶子节点分裂时已经截断过，它仍然能够分隔两侧的子树，因此不需要再处理
      *
-     * @param x : 待分裂的节点
+     * @param x    : 待分裂的节点
+     * @param keep : x 保留的元素个数，一般为 M / 2，顺序插入时会保留更多的元素
      * @return : 分裂之后得到的子树的根节点
      */
-    private Node splitIndex(Node x) {
-        Node t = new Node(M / 2, M);
-        x.m = M / 2;
+    private Node splitIndex(Node x, int keep) {
+        if (metrics != null) metrics.splits++;
+        nodes++;
+        Node t = new Node(M - keep - 1, M);
+        x.m = keep;
 
-        Entry mid = x.children[M / 2 + 1];
+        Entry mid = x.children[keep + 1];
 
         // 将 x 中的后半部分的节点放入 t 中
-        for (int i = 1; i <= M / 2; ++i) {
-            t.children[i] = x.children[M / 2 + i + 1];
-            x.children[M / 2 + i + 1] = null;
+        for (int i = 1; i <= M - keep - 1; ++i) {
+            t.children[i] = x.children[keep + i + 1];
+            x.children[keep + i + 1] = null;
         }
 
         Node p = new Node(1, M); // 分裂后形成的根节点
 
-        // 调整相关的链接
+        // 调整相关的链接，中间元素上移之后它原有的右区间成为 t 的最左区间
         t.children[0].next = mid.next;
-        x.children[M / 2 + 1] = null; // clear mid
+        x.children[keep + 1] = null; // clear mid
+        mid.next = t;
         p.children[0].next = x;
-        p.children[1] = new Entry(mid.key, mid.val, t);
+        p.children[1] = mid;
 
         return p;
     }
 
     /**
      * 分裂叶子节点，在分裂叶子节点时需要将分裂后的叶子节点进行链接，从而满足
-     * B+ 树的要求
+     * B+ 树的要求。分隔元素的 key 见 {@link #separator(Object, Object)}，
+     * 分裂之后的两个叶子节点各自重新计算公共前缀
      *
-     * @param x : 待分裂的节点
+     * @param x    : 待分裂的节点
+     * @param keep : x 保留的元素个数，一般为 M / 2，顺序插入时会保留更多的元素
      * @return : 分裂之后的子树的根节点
      */
-    private Node splitLeaf(Node x) {
-        Node t = new Node(M / 2 + 1, M);
-        x.m = M / 2;
+    private Node splitLeaf(Node x, int keep) {
+        if (metrics != null) metrics.splits++;
+        nodes++;
+        expand(x);
+        Node t = new Node(M - keep, M);
+        x.m = keep;
 
-        Entry mid = x.children[M / 2 + 1]; // x 的中间节点，它的属性将会被作为根节点的属性
+        Entry mid = x.children[keep + 1]; // t 的第一个元素，分隔元素的 key 是它的 key 的最短前缀
 
         // 将 x 中的后半部分的节点放入 t 中
-        for (int i = 1; i <= M / 2 + 1; ++i) {
-            t.children[i] = x.children[M / 2 + i];
-            x.children[M / 2 + i] = null;
+        for (int i = 1; i <= M - keep; ++i) {
+            t.children[i] = x.children[keep + i];
+            x.children[keep + i] = null;
         }
 
         Node p = new Node(1, M); // 分裂后形成的根节点
 
         // 调整相关的链接
         p.children[0].next = x;
-        p.children[1] = new Entry(mid.key, null, t);
+        p.children[1] = new Entry(separator(x.children[keep].key, mid.key), null, t);
+        compress(x);
+        compress(t);
 
+        // 将 t 插入到 x 和它原有的后继叶子节点之间
+        t.suc = x.suc;
+        if (x.suc != null) x.suc.prev = t;
         t.prev = x;
         x.suc = t;
+        if (t.suc == null) last = t;
 
         return p;
     }
@@ -276,263 +538,996 @@ public class BPlusTree<K extends Comparable<K>, V> {
     /**
      * 重新平衡当前节点的平衡性，具体行为如下: <br />
      * 1. 如果左右兄弟节点存在多余的元素，那么直接借用兄弟节点的一个元素来调整当前节点使得当前节点满足限制条件<br />
-     * 2. 如果处理的节点是叶子节点，在调整时需要删除原有的分隔节点元素 <br />
-     * 3. 如果处理的节点是索引节点，则按照一般 B 树的节点来调整当前的节点
+     * 2. 如果处理的节点是叶子节点，在合并时需要删除原有的分隔节点元素，同时维护叶子节点之间的链接 <br />
+     * 3. 如果处理的节点是索引节点，则按照一般 B 树的节点来调整当前的节点 <br />
+     * 4. 合并之后父节点的元素会减少，父节点的重平衡由上一层的递归完成。如果根节点只剩下哨兵元素的链接，
+     *    那么它唯一的子节点成为新的根节点
      *
      * @param parent : 当前处理的节点的父节点
+     * @param pos : 当前处理的节点在父节点中的链接位置
      * @param cur : 当前待处理的节点
      * @param h : 当前处理的节点的树的高度，用于判断当前处理的节点是否是叶子节点
      */
-    private void reBalance(Node parent, Node cur, int h) {
+    private void reBalance(Node parent, int pos, Node cur, int h) {
         if (parent == null) return;
 
-        int idx;
         Entry[] children = parent.children;
-
-        for (idx = 1; idx <= parent.m; ++idx)
-            if (less(cur.children[cur.m].key, children[idx].key))
-                break;
-        idx -= 1;
+        boolean leaf = h == height;
 
         Node left = null, right = null;
-        if (idx > 0) left = children[idx - 1].next;
-        if (idx < parent.m) right = children[idx + 1].next;
-
-        if (left == null && right == null) return;
+        if (pos > 0) left = children[pos - 1].next;
+        if (pos < parent.m) right = children[pos + 1].next;
 
         if (left != null && left.m > M / 2) {
-            reBalanceByLeft(left, cur, parent, idx);
+            reBalanceByLeft(left, cur, parent, pos, leaf);
             return;
         }
 
         if (right != null && right.m > M / 2) {
-            reBalanceByRight(right, cur, parent, idx);
+            reBalanceByRight(right, cur, parent, pos, leaf);
             return;
         }
 
-        if (h == height) {
-            if (left != null)
-                reBalanceLeafByLeft(left, cur, parent, idx);
-            else
-                reBalanceLeafByRight(right, cur, parent, idx);
-        } else {
-            if (left != null)
-                reBalanceIndexByLeft(left, cur, parent, idx);
-            else
-                reBalanceIndexByRight(right, cur, parent, idx);
-        }
-        parent.m--;
+        // 优先和左兄弟节点合并，合并之后的节点为左边的节点
+        int idx = left != null ? pos : pos + 1;
+        if (leaf) mergeLeaf(parent, idx);
+        else mergeIndex(parent, idx);
 
-        if (parent.m == 0 && h == 1) {
-            root = cur;
+        if (parent == root && parent.m == 0) {
+            root = parent.children[0].next;
             height--;
+            nodes--;
         }
     }
 
     /**
-     * 由于当前处理的节点存在左兄弟节点，因此这个时候会将左节点的最大元素插入到当前处理节点的最小元素所在的位置
-     * 同时使用该移动的节点的属性覆盖掉原有的父节点的分隔元素的属性，从而实现 B+ 树节点的平衡性
+     * 从左兄弟节点借用一个元素。对于叶子节点，左兄弟节点的最大元素直接移动到当前节点的最前面，
+     * 父节点的分隔元素更新为这个元素的 key；对于索引节点，分隔元素下移成为当前节点的最小元素，
+     * 左兄弟节点的最大元素上移成为新的分隔元素
      *
      * @param left : 当前处理节点的左兄弟节点
      * @param cur : 当前正在被处理的节点
      * @param parent : 当前处理的节点的父节点
-     * @param idx : 当前父节点中分隔元素所在的索引位置
+     * @param idx : 当前处理的节点在父节点中的链接位置，即分隔左兄弟节点和当前节点的元素所在的位置
+     * @param leaf : 当前处理的节点是否是叶子节点
      */
-    private void reBalanceByLeft(Node left, Node cur, Node parent, int idx) {
-        Entry[] children = parent.children;
-
-        for (int i = cur.m + 1; i > idx; --i) {
-            if (cur.children[i] == null)
-                cur.children[i] = new Entry(null, null, null);
-            cur.children[i].key = cur.children[i - 1].key;
-            cur.children[i].val = cur.children[i - 1].val;
+    private void reBalanceByLeft(Node left, Node cur, Node parent, int idx, boolean leaf) {
+        if (metrics != null) metrics.borrowsFromLeft++;
+        if (leaf) {
+            expand(left);
+            expand(cur);
         }
+        Entry sep = parent.children[idx], last = left.children[left.m];
+        left.children[left.m--] = null;
 
-        // 复制属性到当前节点的第一个元素（从 1 开始计数）
-        cur.children[1].key = children[idx].key;
-        cur.children[1].val = children[idx].val;
-        cur.children[1].next = cur.children[0].next;
-        cur.children[0].next = left.children[left.m].next;
+        System.arraycopy(cur.children, 1, cur.children, 2, cur.m);
         cur.m++;
 
-        // 将从左子节点借用到的元素的属性复制到父节点的分隔元素，使得树最终是有序的
-        children[idx].key = left.children[left.m].key;
-        children[idx].val = left.children[left.m].val;
+        if (leaf) {
+            cur.children[1] = last;
+            sep.key = separator(left.children[left.m].key, last.key);
+            compress(left);
+            compress(cur);
+            return;
+        }
 
-        // 删除左子节点的最大元素
-        left.children[left.m] = null;
-        left.m--;
+        /*
+            左兄弟节点的最大元素的右区间成为当前节点的最左区间，借用到的元素对象则带着分隔元素的 key 下移，
+            链接到当前节点原有的最左区间
+         */
+        K key = (K) last.key;
+        Node next = last.next;
+        last.key = sep.key;
+        last.next = cur.children[0].next;
+        cur.children[1] = last;
+        cur.children[0].next = next;
+        sep.key = key;
     }
 
     /**
-     * 当前处理的节点存在右兄弟节点，因此这个时候需要将右兄弟节点的最小元素插入到当前处理节点的尾部，
-     * 同时使用该元素的属性覆盖掉原有的父节点的分隔元素的属性。由于右兄弟节点被借用了一个元素，
-     * 因此此时需要调整右兄弟节点所有元素的相对位置
+     * 从右兄弟节点借用一个元素，和 {@link #reBalanceByLeft(Node, Node, Node, int, boolean)} 对称
      *
      * @param right : 当前处理节点的右兄弟节点
      * @param cur : 当前正在被处理的节点
      * @param parent : 当前处理的节点的父节点
-     * @param idx : 当前处理的节点的父节点的分隔元素所在的位置
+     * @param idx : 当前处理的节点在父节点中的链接位置，分隔当前节点和右兄弟节点的元素位于 idx + 1
+     * @param leaf : 当前处理的节点是否是叶子节点
      */
-    private void reBalanceByRight(Node right, Node cur, Node parent, int idx) {
-        Entry[] children = parent.children;
+    private void reBalanceByRight(Node right, Node cur, Node parent, int idx, boolean leaf) {
+        if (metrics != null) metrics.borrowsFromRight++;
+        if (leaf) {
+            expand(cur);
+            expand(right);
+        }
+        Entry sep = parent.children[idx + 1], first = right.children[1];
 
-        ++cur.m;
-        // 如果此时这个位置的对象未实例化，那么首先实例化该位置的对象
-        if (cur.children[cur.m] == null)
-            cur.children[cur.m] = new Entry(null, null, null);
+        // 由于右子节点被借用了一个元素，因此需要移动右子节点的元素列表使得其依旧是有序的
+        System.arraycopy(right.children, 2, right.children, 1, right.m - 1);
+        right.children[right.m--] = null;
+
+        if (leaf) {
+            cur.children[++cur.m] = first;
+            sep.key = separator(first.key, right.children[1].key);
+            compress(cur);
+            compress(right);
+            return;
+        }
 
-        // 单纯地复制属性到当前的节点，如果使用引用复制的话会导致出现冗余的链接，甚至出现环
-        cur.children[cur.m].key = children[idx + 1].key;
-        cur.children[cur.m].val = children[idx + 1].val;
-        cur.children[cur.m].next = right.children[0].next;
-        right.children[0].next = right.children[1].next;
+        // 分隔元素的 key 下移到当前节点的末尾，链接右兄弟节点原有的最左区间，右兄弟节点的最小元素的 key 上移成为新的分隔元素
+        K key = (K) first.key;
+        Node next = first.next;
+        first.key = sep.key;
+        first.next = right.children[0].next;
+        cur.children[++cur.m] = first;
+        right.children[0].next = next;
+        sep.key = key;
+    }
 
-        // 更新父节点的分隔元素
-        children[idx + 1].key = right.children[1].key;
-        children[idx + 1].val = right.children[1].val;
+    /**
+     * 合并父节点中位置 idx 两侧的叶子节点，右边叶子节点的所有元素移动到左边的叶子节点，
+     * 然后删除父节点中的分隔元素，同时将右边的叶子节点从叶子节点的链表中移除
+     *
+     * @param parent : 待合并的两个叶子节点的父节点
+     * @param idx : 父节点中分隔元素的位置，需要满足 idx >= 1
+     */
+    private void mergeLeaf(Node parent, int idx) {
+        if (metrics != null) metrics.merges++;
+        nodes--;
+        Entry[] children = parent.children;
+        Node left = children[idx - 1].next, right = children[idx].next;
+        expand(left);
+        expand(right);
 
-        // 由于右子节点被借用了一个元素，因此需要移动右子节点的元素列表使得其依旧是有序的
-        if (right.m >= 0)
-            System.arraycopy(right.children, 2, right.children, 1, right.m);
-        right.m--;
+        System.arraycopy(right.children, 1, left.children, left.m + 1, right.m);
+        left.m += right.m;
+        compress(left);
+
+        left.suc = right.suc;
+        if (right.suc != null) right.suc.prev = left;
+        if (right == last) last = left;
+
+        System.arraycopy(children, idx + 1, children, idx, parent.m - idx);
+        children[parent.m--] = null;
     }
 
     /**
-     * 当当前处理的节点的左右兄弟节点都不存在多余的元素，这种情况就需要合并一个兄弟节点成为一个新的节点
-     * 由于 B+ 树的特性，需要对叶子节点和非叶子节点做不同的处理，对于叶子节点来讲，如果它存在左兄弟叶子
-     * 节点，那么直接将当前的节点复制到左兄弟节点的末尾，同时删除原有的父节点的分隔元素
+     * 合并父节点中位置 idx 两侧的索引节点，分隔元素下移到左边的节点，它的后继链接为右边节点的最左区间，
+     * 再将右边节点的所有元素复制到左边的节点
      *
-     * @param left : 当前处理节点的左兄弟节点
-     * @param cur : 当前正在处理的节点
-     * @param parent : 当前处理节点的父节点
-     * @param idx : 父节点中划分左兄弟节点和当前节点的元素的所在位置
+     * @param parent : 待合并的两个索引节点的父节点
+     * @param idx : 父节点中分隔元素的位置，需要满足 idx >= 1
      */
-    private void reBalanceLeafByLeft(Node left, Node cur, Node parent, int idx) {
+    private void mergeIndex(Node parent, int idx) {
+        if (metrics != null) metrics.merges++;
+        nodes--;
         Entry[] children = parent.children;
+        Entry sep = children[idx];
+        Node left = children[idx - 1].next, right = sep.next;
+
+        sep.next = right.children[0].next;
+        left.children[++left.m] = sep;
+
+        // 再将右节点的所有元素复制到左节点，由于位置 0 是一个哨兵元素，因此从元素 1 开始进行复制
+        System.arraycopy(right.children, 1, left.children, left.m + 1, right.m);
+        left.m += right.m;
+
+        System.arraycopy(children, idx + 1, children, idx, parent.m - idx);
+        children[parent.m--] = null;
+    }
+
+    /**
+     * 分隔左右两个叶子节点的 key，它需要大于左边节点的最大 key lo，并且小于等于右边节点的最小 key hi。
+     * <br />
+     * 对于 String 类型的 key，取 hi 的最短的大于 lo 的前缀：两者的公共前缀再加上 hi 的下一个字符。
+     * 像 URL 这样较长的 key 通常只需要保留很短的一段就能够区分，索引节点中因此不会保存完整的 key；其他类型的 key 直接使用 hi
+     */
+    private static <T> T separator(T lo, T hi) {
+        if (!(lo instanceof String) || !(hi instanceof String)) return hi;
+
+        String s = (String) hi;
+        int n = commonPrefix((String) lo, s) + 1;
+        return (T) (n >= s.length() ? s : s.substring(0, n));
+    }
+
+    /**
+     * 压缩叶子节点 x 中的 key：String 类型的 key 计算所有 key 的公共前缀，之后每个元素只保存去掉公共前缀的后缀，
+     * 由于 key 是有序的，公共前缀就是第一个 key 和最后一个 key 的公共前缀；Integer 和 Long 类型的 key
+     * 编码为 {@link PackedKeys}，元素中不再保存 key。其他类型的 key 不做处理
+     * <br />
+     * 在叶子节点之间移动元素的操作（分裂、借用、合并）首先通过 {@link #expand(Node)} 还原完整的 key，完成之后再重新压缩
+     */
+    private void compress(Node x) {
+        if (x.prefix != null || x.packed != null || x.m == 0) return;
+
+        Object key = x.children[1].key;
+        if (key instanceof Integer || key instanceof Long) {
+            long[] keys = new long[x.m];
+            for (int i = 1; i <= x.m; ++i) {
+                keys[i - 1] = ((Number) x.children[i].key).longValue();
+                x.children[i].key = null;
+            }
+            x.packed = new PackedKeys(key instanceof Integer, M);
+            x.packed.pack(keys, x.m);
+            return;
+        }
+        if (!(key instanceof String)) return;
+
+        String first = (String) key;
+        int n = commonPrefix(first, (String) x.children[x.m].key);
+        if (n == 0) return;
 
-        for (int i = 1; i <= cur.m; ++i) {
-            ++left.m;
-            if (left.children[left.m] == null)
-                left.children[left.m] = new Entry(null, null, null);
+        x.prefix = first.substring(0, n);
+        for (int i = 1; i <= x.m; ++i)
+            x.children[i].key = ((String) x.children[i].key).substring(n);
+    }
+
+    /**
+     * 还原叶子节点 x 中所有元素的完整 key
+     */
+    private void expand(Node x) {
+        if (x.packed != null) {
+            for (int i = 1; i <= x.m; ++i)
+                x.children[i].key = keyOf(x, i);
+            x.packed = null;
+            return;
+        }
 
-            left.children[left.m].key = cur.children[i].key;
-            left.children[left.m].val = cur.children[i].val;
+        String prefix = x.prefix;
+        if (prefix == null) return;
+
+        for (int i = 1; i <= x.m; ++i)
+            x.children[i].key = prefix.concat((String) x.children[i].key);
+        x.prefix = null;
+    }
+
+    /**
+     * 在叶子节点 x 的位置 idx 插入 key 之前调用，返回元素中保存的 key，存在公共前缀时 K 一定是 String，因此后缀的类型仍然是 K。
+     * 如果 key 不以 x 的公共前缀开头，那么首先缩短公共前缀；位压缩的叶子节点直接将 key 插入到 {@link PackedKeys} 中
+     */
+    private K encode(Node x, int idx, K key) {
+        if (x.packed != null) {
+            x.packed.insert(idx, ((Number) key).longValue(), x.m);
+            return null;
         }
 
-        left.suc = cur;
-        cur.prev = left;
+        String prefix = x.prefix;
+        if (prefix == null) return key;
+
+        String s = (String) key;
+        if (!s.startsWith(prefix)) {
+            int n = commonPrefix(prefix, s);
+            String cut = prefix.substring(n);
+            for (int i = 1; i <= x.m; ++i)
+                x.children[i].key = cut.concat((String) x.children[i].key);
+            x.prefix = prefix = n == 0 ? null : prefix.substring(0, n);
+            if (prefix == null) return key;
+        }
+        return (K) s.substring(prefix.length());
+    }
 
-        children[idx].next = null;
-        children[idx] = null;
+    private static int commonPrefix(String a, String b) {
+        int n = Math.min(a.length(), b.length()), i = 0;
+        while (i < n && a.charAt(i) == b.charAt(i)) i++;
+        return i;
+    }
 
-        if (parent.m + 1 - idx >= 0)
-            System.arraycopy(children, idx + 1, children, idx, parent.m + 1 - idx);
+    /**
+     * 比较 a 从 offset 开始的后缀和 b，结果和 a.substring(offset).compareTo(b) 一致
+     */
+    private static int compareFrom(String a, int offset, String b) {
+        int n1 = a.length() - offset, n2 = b.length(), n = Math.min(n1, n2);
+        for (int i = 0; i < n; ++i) {
+            char c1 = a.charAt(offset + i), c2 = b.charAt(i);
+            if (c1 != c2) return c1 - c2;
+        }
+        return n1 - n2;
     }
 
     /**
-     * 当前处理的节点是一个叶子节点，并且当前处理的节点不存在左兄弟节点。
-     * 由于当前处理的节点的左右兄弟节点都不存在多余的元素，同时处理的节点不存在左兄弟节点，因此需要将
-     * 当前处理节点的所有元素都移动到右兄弟节点，然后删除父节点中分隔处理节点和右兄弟节点的元素
+     * 以默认的填充因子批量加载有序的键值对，见 {@link #bulkLoad(Iterator, double)}
      *
-     * @param right : 当前处理的节点的右兄弟节点
-     * @param cur : 当前正在被处理的节点
-     * @param parent : 当前处理节点的父节点
-     * @param idx : 父节点中划分右兄弟节点和当前节点的元素的所在位置
+     * @param sorted : 按照 key 严格递增的键值对
      */
-    private void reBalanceLeafByRight(Node right, Node cur, Node parent, int idx) {
-        Entry[] children = parent.children;
+    public void bulkLoad(Iterator<? extends Map.Entry<? extends K, ? extends V>> sorted) {
+        bulkLoad(sorted, DEFAULT_FILL_FACTOR);
+    }
 
-        // 复制右兄弟节点的所有元素到当前的处理节点
-        for (int i = 1; i <= right.m; ++i)
-            cur.children[++cur.m] = right.children[i];
+    /**
+     * 自底向上地批量加载按照 key 严格递增的键值对，只能在空树上调用
+     * <br />
+     * 和 {@link BTree#bulkLoad(Iterator, double)} 一样，每一层只维护最右边的一个节点：叶子节点填满之后创建新的叶子节点，
+     * 同时将它链接到叶子节点链表的末尾，新叶子节点的第一个 key 作为分隔元素进入上一层；索引节点填满之后，
+     * 新到达的分隔元素继续进入更上一层。整个过程只遍历一次输入，不会发生任何节点的分裂
+     * <br />
+     * 加载完成之后，每一层最右边的节点的元素可能少于 M / 2，此时通过和左兄弟节点的借用或者合并来恢复 B+ 树的限制条件
+     *
+     * @param sorted     : 按照 key 严格递增的键值对
+     * @param fillFactor : 每个节点的填充因子，取值范围为 (0, 1]，实际的元素个数不会低于 M / 2
+     */
+    public void bulkLoad(Iterator<? extends Map.Entry<? extends K, ? extends V>> sorted, double fillFactor) {
+        if (sorted == null) {
+            throw new IllegalArgumentException("sorted 不能为 null");
+        }
+        if (!(fillFactor > 0 && fillFactor <= 1)) {
+            throw new IllegalArgumentException("填充因子的取值范围为 (0, 1]");
+        }
+        if (size != 0) {
+            throw new IllegalStateException("只能在空树上进行批量加载");
+        }
+
+        int fill = Math.max(M / 2, (int) (fillFactor * (M - 1)));
+        /*
+            通过 delete 清空的树的根节点可能仍然保留着原有的压缩状态，因此总是从一个新的叶子节点开始加载。
+            spine 记录了每一层最右边的节点，下标 0 为叶子节点所在的层
+         */
+        root = last = new Node(0, M);
+        height = 0;
+        nodes = 1;
+        List<Node> spine = new ArrayList<>();
+        spine.add(root);
+
+        K prev = null;
+        while (sorted.hasNext()) {
+            Map.Entry<? extends K, ? extends V> e = sorted.next();
+            K key = e.getKey();
+            if (key == null) {
+                throw new IllegalArgumentException("key 不能为 null");
+            }
+            if (prev != null && prev.compareTo(key) >= 0) {
+                throw new IllegalArgumentException("批量加载的键值对必须按照 key 严格递增");
+            }
+            prev = key;
+            size++;
+
+            Node leaf = spine.get(0);
+            if (leaf.m < fill) {
+                leaf.children[++leaf.m] = new Entry(key, e.getValue(), null);
+                continue;
+            }
 
-        cur.suc = right;
-        right.prev = cur;
+            Node t = new Node(1, M);
+            t.children[1] = new Entry(key, e.getValue(), null);
+            t.prev = leaf;
+            leaf.suc = t;
+            spine.set(0, t);
+            nodes++;
+
+            // 新叶子节点的第一个 key 截断之后作为分隔元素进入上一层，索引节点已经填满时，分隔元素带着新的节点继续上移
+            Entry sep = new Entry(separator(leaf.children[leaf.m].key, key), null, t);
+            compress(leaf);
+            Node left = leaf;
+            for (int level = 1; ; ++level) {
+                if (level == spine.size()) {
+                    Node p = new Node(0, M);
+                    p.children[0].next = left;
+                    spine.add(p);
+                    nodes++;
+                }
+
+                Node x = spine.get(level);
+                if (x.m < fill) {
+                    x.children[++x.m] = sep;
+                    break;
+                }
+
+                Node u = new Node(0, M);
+                u.children[0].next = sep.next;
+                sep.next = u;
+                spine.set(level, u);
+                nodes++;
+                left = x;
+            }
+        }
+
+        compress(spine.get(0));
+
+        /*
+            修复每一层最右边的节点，如果父节点暂时还没有元素，
+            那么需要等到更上层的处理使得父节点拥有元素之后，再重新处理当前的层
+         */
+        boolean pending = true;
+        while (pending) {
+            pending = false;
+            for (int level = 0; level + 1 < spine.size(); ++level) {
+                Node p = spine.get(level + 1);
+                if (spine.get(level).m >= M / 2) continue;
+                if (p.m == 0) {
+                    pending = true;
+                    continue;
+                }
 
-        if (parent.m + 1 - (idx + 1) >= 0)
-            System.arraycopy(children, idx + 1 + 1, children, idx + 1, parent.m + 1 - (idx + 1));
+                int pos = fixChild(p, p.m, level);
+                spine.set(level, p.children[pos].next);
+            }
+
+            while (spine.size() > 1 && spine.get(spine.size() - 1).m == 0) {
+                spine.remove(spine.size() - 1);
+                nodes--;
+            }
+        }
+
+        root = spine.get(spine.size() - 1);
+        last = spine.get(0);
+        height = spine.size() - 1;
     }
 
     /**
-     * 由于当前处理的节点类型为索引节点，和叶子节点的处理不同，索引节点存在后继链接，因此在处理时需要对
-     * 后继链接做额外的处理<br />
-     * 将父节点中分隔当前节点和左兄弟节点的元素都移动到左兄弟节点，然后将当前节点的最左链接复制到移下来的
-     * 分隔节点的后继链接，从而维护节点的平衡性
+     * 将一批按照 key 排序的修改合并到树中，value 为 null 的键值对表示删除这个 key
+     * <br />
+     * 批次相对于树足够大时，沿着叶子节点链表遍历原有的元素，和批次进行一次有序的归并，
+     * 归并的结果通过 {@link #bulkLoad(Iterator)} 重新构建整棵树，整个过程都是顺序的读写，不会发生任何分裂；
+     * 否则按照 key 的顺序逐个执行修改：记录上一次查找到的叶子节点以及它的上界，由于 batch 中的 key 是递增的，
+     * 小于这个上界的 key 一定仍然位于这个叶子节点中，直接在叶子节点中修改，不需要再从根节点向下查找。
+     * 只有 key 越过了上界，或者修改会使得叶子节点分裂、需要重平衡时，才通过 put 或者 delete 从根节点开始处理
      *
-     * @param left : 当前处理节点的左兄弟节点
-     * @param cur : 当前正在处理的节点
-     * @param parent : 当前正在处理的节点的父节点
-     * @param idx : 父节点中划分左兄弟节点和当前节点的元素的所在位置
+     * @param batch : 使用 key 的自然顺序排序的修改
      */
-    private void reBalanceIndexByLeft(Node left, Node cur, Node parent, int idx) {
-        Entry[] children = parent.children;
+    public void merge(SortedMap<K, ? extends V> batch) {
+        if (batch == null) {
+            throw new IllegalArgumentException("batch 不能为 null");
+        }
+        if (batch.comparator() != null) {
+            throw new IllegalArgumentException("batch 必须按照 key 的自然顺序排序");
+        }
+        if (batch.isEmpty()) return;
 
-        // 首先将父节点的分隔节点复制到当前节点的末尾，由于这个位置可能未实例化，因此首先实例化
-        ++left.m;
-        if (left.children[left.m] == null)
-            left.children[left.m] = new Entry(null, null, null);
+        if ((long) batch.size() * MERGE_REBUILD >= size) {
+            Node first = root;
+            for (int h = 0; h < height; ++h)
+                first = first.children[0].next;
 
-        left.children[left.m].key = children[idx].key;
-        left.children[left.m].val = children[idx].val;
-        left.children[left.m].next = cur.children[0].next;
-        // 复制父节点的分隔节点结束。。。。
+            size = 0;
+            bulkLoad(merging(first, batch.entrySet().iterator()));
+            return;
+        }
 
-        // 再将当前节点的所有元素复制到左兄弟节点，由于位置 0 是一个哨兵元素，因此从元素 1 开始进行复制
-        for (int i = 1; i <= cur.m; ++i)
-            left.children[++left.m] = cur.children[i];
+        Node leaf = null;
+        K high = null; // leaf 的上界（不包含），为 null 时表示 leaf 是最右边的叶子节点
+        for (Map.Entry<K, ? extends V> e : batch.entrySet()) {
+            K key = e.getKey();
+            V val = e.getValue();
+            if (leaf == null || high != null && key.compareTo(high) >= 0) {
+                leaf = root;
+                high = null;
+                for (int h = 0; h < height; ++h) {
+                    int idx = childOf(leaf, key);
+                    if (idx < leaf.m) high = (K) leaf.children[idx + 1].key;
+                    leaf = leaf.children[idx].next;
+                }
+            }
+            if (modify(leaf, key, val)) continue;
 
-        // 合并之后，会出现一条多余的链接，这个链接是多余的
-        children[idx].next = null;
-        // 删除父节点的分隔元素之后，移动父节点的分隔元素列表，使得原有的父节点的元素依旧是有序的
-        if (parent.m + 1 - idx >= 0)
-            System.arraycopy(children, idx + 1, children, idx, parent.m + 1 - idx);
+            // 修改会改变树的结构，此时上一次的查找路径已经失效
+            if (val == null) delete(key);
+            else put(key, val);
+            leaf = null;
+        }
     }
 
     /**
-     * 当前处理的节点是一个索引节点<br />
-     * 由于当前处理的节点不存在左链接节点，因此如果该节点如果不是根节点（根节点的判断由调用该方法的程序检测），
-     * 那么一定存在右兄弟节点<br />
-     * 此时具体的做法为: <br />
-     * 1. 父节点中的分隔元素移动到当前处理节点的末尾<br />
-     * 2. 将该分隔元素的后继链接设置为右兄弟节点的最左链接 <br />
-     * 3. 将右兄弟节点中的所有非哨兵节点复制到当前的节点 <br />
-     * 4. 删除原有父节点中右兄弟节点的直接父节点元素<br />
+     * 直接在叶子节点 x 中执行一次修改，val 为 null 表示删除这个 key。如果修改会使得 x 分裂或者需要重平衡，那么不做任何处理
      *
-     * @param right : 当前处理的节点的右兄弟节点
-     * @param cur : 当前正在处理的节点
-     * @param parent : 当前处理的节点的父节点
-     * @param idx : 当前处理的节点的父节点中的直接练级元素，即分隔当前节点和右兄弟节点的元素的前一个元素所在的位置
+     * @return : 修改是否已经完成
      */
-    private void reBalanceIndexByRight(Node right, Node cur, Node parent, int idx) {
-        Entry[] children = parent.children;
+    private boolean modify(Node x, K key, V val) {
+        int idx = indexOf(x, key);
+        if (val == null) {
+            if (idx < 0) return true;
+            if (x.m <= M / 2 && x != root) return false;
+
+            removeAt(x, idx);
+            size--;
+            return true;
+        }
 
-        ++cur.m;
-        if (cur.children[cur.m] == null)
-            cur.children[cur.m] = new Entry(null, null, null);
-        cur.children[cur.m].key = children[idx + 1].key;
-        cur.children[cur.m].val = children[idx + 1].val;
-        cur.children[cur.m].next = right.children[0].next;
-        children[idx + 1].next = null;
+        if (idx > 0) {
+            x.children[idx].val = val;
+            return true;
+        }
+        if (x.m == M - 1) return false;
 
-        // 复制右兄弟节点的所有元素到当前的处理节点
-        for (int i = 1; i <= right.m; ++i)
-            cur.children[++cur.m] = right.children[i];
+        idx = -idx - 1;
+        K stored = encode(x, idx, key);
+        System.arraycopy(x.children, idx, x.children, idx + 1, x.m + 1 - idx);
+        x.children[idx] = new Entry(stored, val, null);
+        x.m++;
+        size++;
+        return true;
+    }
 
-        // 调整父节点的元素列表
-        if (parent.m + 1 - (idx + 1) >= 0)
-            System.arraycopy(children, idx + 1 + 1, children, idx + 1, parent.m + 1 - (idx + 1));
+    /**
+     * 从叶子节点 leaf 开始沿着链表遍历原有的元素，和 batch 进行有序的归并，key 相同时以 batch 为准，value 为 null 的 key 将被跳过
+     */
+    private Iterator<Map.Entry<K, V>> merging(Node leaf, Iterator<? extends Map.Entry<K, ? extends V>> batch) {
+        return new Iterator<Map.Entry<K, V>>() {
+            private Node x = leaf;
+            private int pos = 1;
+            private Map.Entry<K, ? extends V> pending = batch.hasNext() ? batch.next() : null;
+            private Map.Entry<K, V> next = advance();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Map.Entry<K, V> next() {
+                if (next == null) throw new NoSuchElementException();
+                Map.Entry<K, V> e = next;
+                next = advance();
+                return e;
+            }
+
+            private Map.Entry<K, V> advance() {
+                while (true) {
+                    while (x != null && pos > x.m) {
+                        x = x.suc;
+                        pos = 1;
+                    }
+                    K key = x == null ? null : keyOf(x, pos);
+                    if (key == null && pending == null) return null;
+
+                    int cmp = key == null ? 1 : pending == null ? -1 : key.compareTo(pending.getKey());
+                    if (cmp < 0) return new AbstractMap.SimpleImmutableEntry<>(key, (V) x.children[pos++].val);
+
+                    Map.Entry<K, ? extends V> e = pending;
+                    pending = batch.hasNext() ? batch.next() : null;
+                    if (cmp == 0) pos++;
+                    if (e.getValue() != null) return new AbstractMap.SimpleImmutableEntry<>(e.getKey(), e.getValue());
+                }
+            }
+        };
+    }
+
+    /**
+     * 删除 key 位于区间 [from, to] 中的所有键值对，from 或者 to 为 null 时表示对应的方向上不设边界
+     * <br />
+     * 和逐个调用 {@link #delete(Comparable)} 不同，完全位于区间中的子树会被整体地从父节点中移除，它们的叶子节点则通过一次
+     * 链接从叶子节点链表中摘除。只有区间两端所在的路径上的节点需要逐个删除元素，之后自底向上地对这两条路径进行一次修复，
+     * 因此时间复杂度为 O(log n + 被删除的叶子节点数)
+     *
+     * @param from : 区间的下界（包含）
+     * @param to   : 区间的上界（包含）
+     * @return : 被删除的键值对的数目
+     */
+    public int deleteRange(K from, K to) {
+        if (from != null && to != null && from.compareTo(to) > 0) return 0;
+        if (from == null && to == null) {
+            int removed = size;
+            root = last = new Node(0, M);
+            height = 0;
+            size = 0;
+            nodes = 1;
+            return removed;
+        }
+
+        // 区间两端所在的叶子节点会保留在树中，它们之间的叶子节点都将被移除
+        Node lower = root, upper = root;
+        for (int h = 0; h < height; ++h) {
+            if (from != null) lower = lower.children[childOf(lower, from)].next;
+            if (to != null) upper = upper.children[childOf(upper, to)].next;
+        }
+        if (from == null) {
+            upper.prev = null;
+        } else if (to == null) {
+            lower.suc = null;
+            last = lower;
+        } else if (lower != upper) {
+            lower.suc = upper;
+            upper.prev = lower;
+        }
+
+        int removed = deleteRange(root, 0, from, to);
+        size -= removed;
+
+        while (height > 0 && root.m == 0) {
+            root = root.children[0].next;
+            height--;
+            nodes--;
+        }
+        return removed;
+    }
+
+    /**
+     * 删除以 x 为根的子树中位于 [from, to] 中的键值对，from 为 null 时表示区间从子树的最左边开始，
+     * to 为 null 时表示区间一直到子树的最右边。因此进入区间两端所在的子节点时，另一端都可以视为没有边界
+     */
+    private int deleteRange(Node x, int h, K from, K to) {
+        Entry[] children = x.children;
+        if (h == height) {
+            int idx, lo, hi;
+            if (from == null) lo = 1;
+            else lo = (idx = indexOf(x, from)) > 0 ? idx : -idx - 1;
+            if (to == null) hi = x.m;
+            else hi = (idx = indexOf(x, to)) > 0 ? idx : -idx - 2;
+            if (hi < lo) return 0;
+
+            if (x.packed != null) x.packed.remove(lo, hi, x.m);
+            System.arraycopy(children, hi + 1, children, lo, x.m - hi);
+            for (int i = x.m - (hi - lo); i <= x.m; ++i) children[i] = null;
+            x.m -= hi - lo + 1;
+            resetIfEmpty(x);
+            return hi - lo + 1;
+        }
+
+        // lo 和 hi 为区间两端所在的子节点，没有边界时分别为 -1 和 x.m + 1，位于它们之间的子树都完全位于区间中
+        int lo = from == null ? -1 : childOf(x, from);
+        int hi = to == null ? x.m + 1 : childOf(x, to);
+
+        int removed = 0;
+        for (int i = Math.max(lo + 1, 0); i < Math.min(hi, x.m + 1); ++i)
+            removed += detach(children[i].next, h + 1);
+
+        // 整体移除位于两端之间的子树，以及它们在当前节点中对应的分隔元素
+        int level = height - h - 1, pos;
+        if (lo < 0) {
+            children[0].next = children[hi].next;
+            System.arraycopy(children, hi + 1, children, 1, x.m - hi);
+            for (int i = x.m - hi + 1; i <= x.m; ++i) children[i] = null;
+            x.m -= hi;
+
+            removed += deleteRange(children[0].next, h + 1, null, to);
+            pos = 0;
+        } else if (hi > x.m) {
+            for (int i = lo + 1; i <= x.m; ++i) children[i] = null;
+            x.m = lo;
+
+            removed += deleteRange(children[lo].next, h + 1, from, null);
+            pos = lo;
+        } else if (lo == hi) {
+            removed += deleteRange(children[lo].next, h + 1, from, to);
+            pos = lo;
+        } else {
+            System.arraycopy(children, hi, children, lo + 1, x.m - hi + 1);
+            for (int i = x.m - (hi - lo - 1) + 1; i <= x.m; ++i) children[i] = null;
+            x.m -= hi - lo - 1;
+
+            // 两端的子节点各自修复之后，右边的子节点可能已经和左边的子节点合并，此时只需要继续修复合并之后的节点
+            removed += deleteRange(children[lo].next, h + 1, from, null);
+            removed += deleteRange(children[lo + 1].next, h + 1, null, to);
+            pos = Math.min(lo, fixChild(x, lo + 1, level));
+        }
+
+        fixChild(x, pos, level);
+        return removed;
+    }
+
+    /**
+     * 从节点的计数中减去以 x 为根的子树中的所有节点，调用方负责将这棵子树从树中移除
+     *
+     * @return : 以 x 为根的子树中的键值对的数目
+     */
+    private int detach(Node x, int h) {
+        nodes--;
+        if (h == height) return x.m;
+
+        int n = 0;
+        for (int i = 0; i <= x.m; ++i)
+            n += detach(x.children[i].next, h + 1);
+        return n;
     }
 
-    private boolean eq(Comparable<K> key1, Comparable<K> key2) {
-        if (key1 == null || key2 == null) return false;
-        return key1.compareTo((K) key2) == 0;
+    /**
+     * 修复父节点中位置 pos 的子节点，和 {@link #reBalance(Node, int, Node, int)} 不同，子节点的元素个数可以远少于 M / 2，
+     * 因此需要重复地借用或者合并，直到它满足限制条件或者父节点只剩下这一个子节点
+     * <br />
+     * 父节点只剩下一个子节点时无法在这一层完成修复，只能等待上一层修复父节点之后再重新处理。
+     * 因此每次修复一个索引节点之前，首先修复它的子节点中元素不足的节点
+     *
+     * @param level : 子节点所在的层，叶子节点为 0
+     * @return : 修复之后原有的子节点所在的位置，和左兄弟节点合并之后它的位置会减少 1
+     */
+    private int fixChild(Node parent, int pos, int level) {
+        boolean leaf = level == 0;
+        while (true) {
+            Entry[] children = parent.children;
+            Node cur = children[pos].next;
+            if (!leaf) fixChildren(cur, level);
+            if (cur.m >= M / 2 || parent.m == 0) return pos;
+
+            Node left = pos > 0 ? children[pos - 1].next : null;
+            Node right = pos < parent.m ? children[pos + 1].next : null;
+            if (left != null && left.m > M / 2) {
+                reBalanceByLeft(left, cur, parent, pos, leaf);
+            } else if (right != null && right.m > M / 2) {
+                reBalanceByRight(right, cur, parent, pos, leaf);
+            } else if (left != null) {
+                if (leaf) mergeLeaf(parent, pos);
+                else mergeIndex(parent, pos);
+                pos--;
+            } else {
+                if (leaf) mergeLeaf(parent, pos + 1);
+                else mergeIndex(parent, pos + 1);
+            }
+        }
     }
 
-    private boolean less(Comparable<K> key1, Comparable<K> key2) {
-        if (key1 == null) return true;
-        if (key2 == null) return false;
-        return key1.compareTo((K) key2) < 0;
+    /**
+     * 修复索引节点 x 中所有元素不足的子节点，元素不足的节点只会出现在 deleteRange 或者 bulkLoad 修改过的路径上，
+     * 并且它们的父节点一定同样元素不足，因此只需要进入元素不足的子节点
+     */
+    private void fixChildren(Node x, int level) {
+        for (int i = 0; i <= x.m && x.m > 0; ++i)
+            if (x.children[i].next.m < M / 2) i = fixChild(x, i, level - 1);
+    }
+
+    /**
+     * 返回一个按照 key 递增的顺序遍历区间 [from, to] 的游标，from 或者 to 为 null 时表示对应的方向上不设边界
+     * <br />
+     * 游标只会从根节点向下查找一次起始的叶子节点，之后沿着叶子节点的 suc 链接遍历，因此遍历 k 个元素的时间复杂度为 O(log n + k)
+     *
+     * @param from : 区间的下界（包含）
+     * @param to   : 区间的上界（包含）
+     * @return : 位于区间中第一个元素之前的游标
+     */
+    public Cursor range(K from, K to) {
+        return new Cursor(from, true, to, true, false);
+    }
+
+    /**
+     * 返回一个按照 key 递减的顺序遍历区间 [from, to] 的游标，沿着叶子节点的 prev 链接遍历
+     *
+     * @param from : 区间的下界（包含）
+     * @param to   : 区间的上界（包含），遍历从这里开始
+     * @return : 位于区间中最大元素之前的游标
+     */
+    public Cursor descendingRange(K from, K to) {
+        return new Cursor(from, true, to, true, true);
+    }
+
+    /**
+     * 按照 key 递增的顺序遍历所有小于 to 的元素
+     */
+    public Cursor headMap(K to) {
+        if (to == null) throw new IllegalArgumentException("key 不能为 null");
+        return new Cursor(null, true, to, false, false);
+    }
+
+    /**
+     * 按照 key 递增的顺序遍历所有大于等于 from 的元素
+     */
+    public Cursor tailMap(K from) {
+        if (from == null) throw new IllegalArgumentException("key 不能为 null");
+        return new Cursor(from, true, null, true, false);
+    }
+
+    /**
+     * 返回一个按照 key 递增的顺序遍历所有键值对的流，见 {@link #stream(Comparable, Comparable)}
+     */
+    public Stream<Map.Entry<K, V>> stream() {
+        return stream(null, null);
+    }
+
+    /**
+     * 返回一个按照 key 递增的顺序遍历区间 [from, to] 的流，from 或者 to 为 null 时表示对应的方向上不设边界
+     * <br />
+     * 流的 {@link Spliterator} 按照索引节点中的分隔元素划分区间，因此在调用 parallel() 之后，
+     * 每个工作线程只会沿着叶子节点的链接遍历属于自己的一段连续的叶子节点
+     * <br />
+     * 注意：遍历的过程中不能修改树
+     *
+     * @param from : 区间的下界（包含）
+     * @param to   : 区间的上界（包含）
+     * @return : 区间中的键值对组成的有序的流
+     */
+    public Stream<Map.Entry<K, V>> stream(K from, K to) {
+        return StreamSupport.stream(new RangeSpliterator(from, to), false);
+    }
+
+    /**
+     * 按照索引节点的分隔元素划分的 Spliterator。每个 Spliterator 负责一个索引节点中连续的一段子节点 [first, last]，
+     * 以及对应的 key 区间 [lo, hi)（用户指定的上界 to 是包含的）
+     * <br />
+     * 划分时取这段子节点中间的分隔元素，左半部分作为新的 Spliterator 返回，当前的 Spliterator 保留右半部分；
+     * 如果只剩下一个子节点，那么进入这个子节点继续划分，直到到达叶子节点。开始遍历之后就不再划分
+     */
+    private final class RangeSpliterator implements Spliterator<Map.Entry<K, V>> {
+        private Node node; // 负责的子节点所在的节点
+        private int h;     // node 所在的层
+        private int first, last;
+
+        private K lo;               // 区间的下界（包含），为 null 时表示不存在下界
+        private K hi;               // 区间的上界，为 null 时表示不存在上界
+        private boolean hiInclusive;
+
+        private long est;
+
+        private Node leaf; // 遍历时当前所在的叶子节点，开始遍历之前为 null
+        private int pos;
+        private boolean started;
+
+        private RangeSpliterator(K from, K to) {
+            this(root, 0, 0, root.m, from, to, true, size);
+            if (height > 0) {
+                if (from != null) first = childOf(root, from);
+                if (to != null) last = childOf(root, to);
+            }
+        }
+
+        private RangeSpliterator(Node node, int h, int first, int last, K lo, K hi, boolean hiInclusive, long est) {
+            this.node = node;
+            this.h = h;
+            this.first = first;
+            this.last = last;
+            this.lo = lo;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.est = est;
+        }
+
+        @Override
+        public Spliterator<Map.Entry<K, V>> trySplit() {
+            if (started) return null;
+
+            // 只负责一个子节点时进入这个子节点，重新计算区间所覆盖的子节点
+            while (first == last && h < height) {
+                node = node.children[first].next;
+                h++;
+                if (h == height) break;
+                first = lo == null ? 0 : childOf(node, lo);
+                last = hi == null ? node.m : childOf(node, hi);
+            }
+            if (h == height || first >= last) return null;
+
+            int mid = (first + last + 1) >>> 1;
+            K sep = (K) node.children[mid].key;
+            RangeSpliterator prefix = new RangeSpliterator(node, h, first, mid - 1, lo, sep, false, est >>>= 1);
+            first = mid;
+            lo = sep;
+            return prefix;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Map.Entry<K, V>> action) {
+            Entry e = advance();
+            if (e == null) return false;
+
+            action.accept(new AbstractMap.SimpleImmutableEntry<>(keyOf(leaf, pos - 1), (V) e.val));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Map.Entry<K, V>> action) {
+            for (Entry e = advance(); e != null; e = advance())
+                action.accept(new AbstractMap.SimpleImmutableEntry<>(keyOf(leaf, pos - 1), (V) e.val));
+        }
+
+        /**
+         * 返回下一个位于区间中的元素，第一次调用时从负责的第一个子节点向下查找起始的叶子节点。
+         * 返回之后 leaf 仍然是这个元素所在的叶子节点，它的位置为 pos - 1
+         */
+        private Entry advance() {
+            if (!started) {
+                started = true;
+                Node x = node;
+                if (h < height) {
+                    x = x.children[first].next;
+                    for (int l = h + 1; l < height; ++l)
+                        x = x.children[lo == null ? 0 : childOf(x, lo)].next;
+                }
+
+                leaf = x;
+                if (lo == null) pos = 1;
+                else {
+                    int idx = indexOf(x, lo);
+                    pos = idx > 0 ? idx : -idx - 1;
+                }
+            }
+
+            while (leaf != null && pos > leaf.m) {
+                leaf = leaf.suc;
+                pos = 1;
+            }
+            if (leaf == null) return null;
+
+            if (hi != null) {
+                int cmp = compare(hi, leaf, pos);
+                if (cmp < 0 || cmp == 0 && !hiInclusive) {
+                    leaf = null;
+                    return null;
+                }
+            }
+            return leaf.children[pos++];
+        }
+
+        @Override
+        public long estimateSize() {
+            return est;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SORTED | DISTINCT | NONNULL;
+        }
+
+        @Override
+        public Comparator<? super Map.Entry<K, V>> getComparator() {
+            return Map.Entry.comparingByKey();
+        }
+    }
+
+    /**
+     * 沿着叶子节点链接遍历的游标，遍历的过程中不会复制任何元素
+     * <br />
+     * 注意：游标创建之后如果对树进行了修改，那么这个游标将会失效
+     */
+    public final class Cursor {
+        private final boolean descending;
+        private final K bound;           // 遍历方向上的终止边界，为 null 时表示不存在边界
+        private final boolean inclusive; // 终止边界是否包含在区间中
+
+        private Node leaf; // 当前所在的叶子节点
+        private int pos;   // 下一个待访问的元素在叶子节点中的位置
+        private Entry current;
+        private Node currentLeaf; // current 所在的叶子节点以及它在叶子节点中的位置，用于还原压缩之后的 key
+        private int currentPos;
+
+        private Cursor(K from, boolean fromInclusive, K to, boolean toInclusive, boolean descending) {
+            this.descending = descending;
+            this.bound = descending ? from : to;
+            this.inclusive = descending ? fromInclusive : toInclusive;
+
+            K start = descending ? to : from;
+            Node x = root;
+            for (int h = 0; h < height; ++h) {
+                int idx = start == null ? (descending ? x.m : 0) : childOf(x, start);
+                x = x.children[idx].next;
+            }
+            leaf = x;
+
+            if (start == null) {
+                pos = descending ? x.m : 1;
+                return;
+            }
+
+            // 正向遍历从第一个大于等于 start 的元素开始，反向遍历从最后一个小于等于 start 的元素开始
+            int idx = indexOf(x, start);
+            if (idx > 0) pos = idx;
+            else pos = descending ? -idx - 2 : -idx - 1;
+        }
+
+        /**
+         * 将游标移动到下一个元素
+         *
+         * @return : 如果存在下一个元素则返回 true；如果已经遍历完成或者超过了边界，则返回 false
+         */
+        public boolean next() {
+            // 当前叶子节点已经遍历完成，沿着链接进入相邻的叶子节点
+            while (leaf != null && (pos < 1 || pos > leaf.m)) {
+                leaf = descending ? leaf.prev : leaf.suc;
+                if (leaf != null) pos = descending ? leaf.m : 1;
+            }
+            if (leaf == null) {
+                current = null;
+                return false;
+            }
+
+            Entry e = leaf.children[pos];
+            if (bound != null) {
+                int cmp = compare(bound, leaf, pos);
+                if (descending ? (cmp > 0 || cmp == 0 && !inclusive) : (cmp < 0 || cmp == 0 && !inclusive)) {
+                    leaf = null;
+                    current = null;
+                    return false;
+                }
+            }
+
+            current = e;
+            currentLeaf = leaf;
+            currentPos = pos;
+            pos += descending ? -1 : 1;
+            return true;
+        }
+
+        public K key() {
+            if (current == null) throw new NoSuchElementException();
+            return keyOf(currentLeaf, currentPos);
+        }
+
+        public V value() {
+            if (current == null) throw new NoSuchElementException();
+            return (V) current.val;
+        }
     }
 
     public String toString() {
@@ -547,7 +1542,7 @@ public class BPlusTree<K extends Comparable<K>, V> {
         if (ht == 0) {
             for (int j = 0; j <= h.m; j++) {
                 if (children[j] == null) continue;
-                s.append(indent).append(children[j].key).append(" ").append(children[j].val).append("\n");
+                s.append(indent).append(keyOf(h, j)).append(" ").append(children[j].val).append("\n");
             }
         } else {
             for (int j = 0; j <= h.m; j++) {
@@ -596,8 +1591,11 @@ public class BPlusTree<K extends Comparable<K>, V> {
         System.out.println();
 
         BPlusTree<Integer, Integer> tree = new BPlusTree<>(5);
+        TreeMetrics metrics = tree.enableMetrics();
         for (int i = 1; i <= 22; ++i)
             tree.put(i, i);
+        for (int i = 1; i <= 22; ++i)
+            tree.get(i);
 
         for (int i = 1; i <= 15; ++i)
             tree.delete(i);
@@ -605,6 +1603,28 @@ public class BPlusTree<K extends Comparable<K>, V> {
         System.out.println("size:    " + tree.size());
         System.out.println("height:  " + tree.height());
         System.out.println(tree);
+        System.out.println(metrics);
         System.out.println();
+
+        BPlusTree<Integer, Integer>.Cursor cursor = tree.range(17, 20);
+        while (cursor.next())
+            System.out.print(cursor.key() + " ");
+        System.out.println();
+
+        cursor = tree.descendingRange(null, 19);
+        while (cursor.next())
+            System.out.print(cursor.key() + " ");
+        System.out.println();
+
+        // 批量加载 10 万个键值对，然后整体删除其中的一段区间
+        Map<Integer, Integer> sorted = new TreeMap<>();
+        for (int i = 1; i <= 100000; ++i)
+            sorted.put(i, i);
+        BPlusTree<Integer, Integer> large = new BPlusTree<>(31);
+        large.bulkLoad(sorted.entrySet().iterator());
+        System.out.println("height:  " + large.height());
+        System.out.println("fill:    " + String.format("%.2f", large.fillFactor()));
+        System.out.println("removed: " + large.deleteRange(20000, 29999));
+        System.out.println("sum:     " + large.stream(1000, 90000).parallel().mapToLong(Map.Entry::getValue).sum());
     }
 }
@@ -1,3 +1,14 @@
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
 * B 树的 Java 实现
@@ -53,11 +64,46 @@ public class BTree<Key extends Comparable<Key>, Value> {
         }
     }
 
+    /**
+     * 默认的阶数，在使用二分查找定位节点内的元素之后，较宽的节点不会再带来线性的比较开销，
+     * 因此默认选择一个较大的阶数以降低树的高度
+     */
+    public static final int DEFAULT_ORDER = 127;
+
+    /**
+     * 批量加载时默认的节点填充因子，为每个节点预留少量的空间，避免加载之后的插入立即引起节点的分裂
+     */
+    public static final double DEFAULT_FILL_FACTOR = 0.9;
+
     private Node root; // B- 的根节点
 
     private int height; // 当前树的高度，有些操作必须依赖于树的高度来进行
 
-    private int size; // 当前树中元素的个数
+    private int size; // 当前树中元素的个数，不包括墓碑元素
+
+    private int nodes = 1; // 当前树中节点的个数，由分裂、合并以及根节点的变化维护，用于计算填充因子
+
+    /*
+        延迟删除模式下，被删除的元素只会将 value 标记为 TOMBSTONE，之后再由 compact 批量地从树中移除。
+        pending 记录了被标记的 key，标记之后又被重新插入的 key 在压缩时将会被跳过
+     */
+    private static final Object TOMBSTONE = new Object();
+    private boolean lazyDelete;
+    private int tombstones;
+    private final ArrayDeque<Key> pending = new ArrayDeque<>();
+
+    private TreeMetrics metrics; // 为 null 时表示没有开启指标
+
+    /*
+        put 和 delete 共用的查找路径，path[h] 为第 h 层的节点，path[h + 1] 为 path[h].children[pathPos[h]].next。
+        只有树的高度增加时才会重新分配，因此稳定状态下的修改操作除了新的元素以及分裂产生的节点之外不会再分配对象
+     */
+    private Node[] path = new Node[1];
+    private int[] pathPos = new int[1];
+
+    public BTree() {
+        this(DEFAULT_ORDER);
+    }
 
     public BTree(int m) {
         /*
@@ -69,8 +115,8 @@ public class BTree<Key extends Comparable<Key>, Value> {
 
             同时，将 M 强制设置为奇数，对于实现来讲更加简单
          */
-        if (m % 2 == 0) {
-            throw new IllegalArgumentException("阶数 M 只能是奇数");
+        if (m % 2 == 0 || m < 2) {
+            throw new IllegalArgumentException("阶数 M 只能是大于 1 的奇数");
         }
 
         M = m;
@@ -85,6 +131,47 @@ public class BTree<Key extends Comparable<Key>, Value> {
         return this.height;
     }
 
+    public int order() {
+        return this.M;
+    }
+
+    /**
+     * 开启结构指标的记录，之后的分裂、合并、借用、比较次数以及 get、put、delete 的延迟都会被记录，重复调用返回同一个对象
+     *
+     * @return : 记录指标的对象，可以直接读取或者通过 {@link TreeMetrics#register(String)} 注册到 JMX
+     */
+    public TreeMetrics enableMetrics() {
+        if (metrics == null) metrics = new TreeMetrics(this::fillFactor, this::height, this::size);
+        return metrics;
+    }
+
+    /**
+     * 所有节点的平均填充因子，即元素的个数和所有节点的容量之比。墓碑元素同样占据节点的位置，因此也被计入元素的个数
+     */
+    double fillFactor() {
+        return (double) (size + tombstones) / ((long) nodes * (M - 1));
+    }
+
+    /**
+     * 当前树中还没有被压缩的墓碑元素的个数
+     */
+    public int tombstones() {
+        return this.tombstones;
+    }
+
+    /**
+     * 开启或者关闭延迟删除模式。开启之后 {@link #delete(Comparable)} 只会将元素标记为墓碑，不会立即进行合并或者借用，
+     * 读取操作会跳过这些墓碑元素，标记的元素之后通过 {@link #compact(int)} 或者 {@link #startCompactor(int, long)}
+     * 批量地从树中移除
+     * <br />
+     * 关闭延迟删除模式时已经存在的墓碑元素不会被立即移除，它们依旧需要通过压缩来移除
+     *
+     * @param lazyDelete : 是否开启延迟删除模式
+     */
+    public void setLazyDelete(boolean lazyDelete) {
+        this.lazyDelete = lazyDelete;
+    }
+
     /**
      * 提供给客户端的 API，通过传入的 key 查找对应的 Value
      *
@@ -96,13 +183,19 @@ public class BTree<Key extends Comparable<Key>, Value> {
             throw new IllegalArgumentException("key 不能为 null");
         }
 
-        return search(root, key);
+        TreeMetrics metrics = this.metrics;
+        if (metrics == null) return search(root, key);
+
+        long start = System.nanoTime(), comparisons = metrics.comparisons;
+        Value value = search(root, key);
+        metrics.recordLookup(metrics.comparisons - comparisons, System.nanoTime() - start);
+        return value;
     }
 
     /**
      * 一般常规化的搜索，如果在当前的搜索节点 x 查找到了指定的 key，则直接返回当前元素对应的 value
      * <br />
-     * 如果无法再当前节点搜索到元素 key，那么将在对应的区间向下递归地进行搜索
+     * 如果无法再当前节点搜索到元素 key，那么将在对应的区间向下继续进行搜索
      *
      * @param x   ：当前待搜索的节点 x
      * @param key ：待查找的 key
@@ -110,18 +203,57 @@ public class BTree<Key extends Comparable<Key>, Value> {
      */
     @SuppressWarnings("unchecked")
     public Value search(Node x, Key key) {
-        if (x == null) return null;
-        Entry[] entries = x.children;
-        for (int i = 1; i <= x.m; ++i) {
-            if (eq(entries[i].key, key))
-                return (Value) entries[i].value;
+        while (x != null) {
+            int idx = indexOf(x, key);
+            if (idx > 0) return valueOf(x.children[idx]);
 
-            if (less(entries[i - 1].key, key) && less(key, entries[i].key))
-                return search(entries[i - 1].next, key);
+            // 未找到时 -idx - 1 为第一个大于 key 的元素位置，因此需要进入它前一个元素的区间
+            x = x.children[-idx - 2].next;
         }
 
-        // 尝试搜索最后一个节点的后一个区间
-        return search(entries[x.m].next, key);
+        return null;
+    }
+
+    /**
+     * 元素的 value，墓碑元素返回 null
+     */
+    @SuppressWarnings("unchecked")
+    private Value valueOf(Entry e) {
+        return e.value == TOMBSTONE ? null : (Value) e.value;
+    }
+
+    /**
+     * 在节点 x 的有效元素 [1, x.m] 中二分查找 key，返回值的约定和 {@link java.util.Arrays#binarySearch} 一致：
+     * 如果查找到了 key，返回它所在的位置；否则返回 -(插入位置) - 1，其中插入位置为第一个大于 key 的元素位置
+     * <br />
+     * 由于有效元素从 1 开始计数，因此查找到的位置一定大于 0，而插入位置的取值范围为 [1, x.m + 1]
+     *
+     * @param x   : 待查找的节点
+     * @param key : 待查找的 key
+     * @return : key 在节点中的位置，或者经过编码之后的插入位置
+     */
+    private int indexOf(Node x, Key key) {
+        return indexOf(x, key, 1);
+    }
+
+    /**
+     * 和 {@link #indexOf(Node, Comparable)} 一致，但是只在 [lo, x.m] 中查找，调用方需要保证 lo 之前的元素都小于 key
+     */
+    @SuppressWarnings("unchecked")
+    private int indexOf(Node x, Key key, int lo) {
+        TreeMetrics metrics = this.metrics;
+        Entry[] entries = x.children;
+        int hi = x.m;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = key.compareTo((Key) entries[mid].key);
+            if (metrics != null) metrics.comparisons++;
+            if (cmp < 0) hi = mid - 1;
+            else if (cmp > 0) lo = mid + 1;
+            else return mid;
+        }
+
+        return -lo - 1;
     }
 
     /**
@@ -136,180 +268,429 @@ public class BTree<Key extends Comparable<Key>, Value> {
             throw new IllegalArgumentException("argument key fot put() is null");
         }
 
-        Node res = insert(root, key, value, 0);
-        size++;
+        if (metrics == null) {
+            insert(key, value);
+            return;
+        }
 
-        if (res == null) return;
-        /*
-            插入之后形成了分裂节点，此时树的高度增加，同时需要修改 root 节点指向的对象
-         */
-        root = res;
-        height++;
+        long start = System.nanoTime();
+        insert(key, value);
+        metrics.record(TreeMetrics.Op.PUT, System.nanoTime() - start);
     }
 
     /**
-     * 在指定的一个节点中插入对应的键值对，首先会递归向下查找，在叶子节点中执行插入操作
-     * 当插入之后可能会导致节点中元素个数 “溢出”，此时需要对该节点进行重平衡以维护节点
-     * 的平衡性，重平衡之后可能也会使得父节点不再满足条件，因此同样地也需要对父节点进行
-     * 重平衡，直到满足条件或者到达根节点
+     * 沿着查找路径向下查找 key，在叶子节点中执行插入操作，插入之后节点溢出时沿着路径向上分裂
+     */
+    private void insert(Key key, Value value) {
+        ensurePath();
+        Node x = root;
+        for (int h = 0; ; ++h) {
+            path[h] = x;
+            int idx = indexOf(x, key);
+
+            // 键值对已经存在，使用当前的键值对覆盖原有的键值对
+            if (idx > 0) {
+                overwrite(x.children[idx], value);
+                return;
+            }
+
+            // idx 表示第一个大于 key 的元素位置，也就是新的元素应当插入的位置，它的前一个元素的区间就是下一层的节点
+            idx = -idx - 1;
+            if (h == height) {
+                insertAt(x, idx, new Entry(key, value, null));
+                size++;
+                // 插入之后节点溢出，沿着查找路径向上分裂
+                if (x.m == M) splitPath(path, pathPos, h);
+                return;
+            }
+
+            pathPos[h] = idx - 1;
+            x = x.children[idx - 1].next;
+        }
+    }
+
+    /**
+     * 批量查找多个 key 对应的 value，返回结果的顺序和传入的 key 的顺序一致
+     * <br />
+     * 首先将 key 排序，之后每个 key 都从上一个 key 的查找路径上向上回溯，直到所在节点的区间能够包含这个 key，
+     * 再从这个节点开始向下查找。相邻的 key 通常位于同一个节点或者同一棵子树中，因此大部分查找都不需要再从根节点开始，
+     * 位于同一个节点中的 key 也只需要在上一个 key 的位置之后继续二分查找
      *
-     * @param x     : 当前插入的目标节点
-     * @param key   : 待插入的键值对的 key
-     * @param value : 待插入键值对的 value
-     * @param h     : 当前节点所在的树的高度，如果 h 达到了树的高度，说明已经到达了叶子节点
-     * @return : 插入成功之后，如果重平衡了节点，那么返回重平衡之后的根节点；否则，返回 null
+     * @param keys : 待查找的 key 列表，不能包含 null
+     * @return : 每个 key 对应的 value，不存在的 key 对应的位置为 null
      */
     @SuppressWarnings("unchecked")
-    private Node insert(Node x, Key key, Value value, int h) {
-        int idx;
-        Entry t = new Entry(key, value, null);
-        Entry[] entries = x.children;
-        // 已经到达了叶子节点，直接进行插入
-        if (h == height) {
-            for (idx = 1; idx <= x.m; ++idx) {
-                // 键值对已经存在，使用当前的键值对覆盖原有的键值对
-                if (eq(key, entries[idx].key)) {
-                    entries[idx].value = value;
-                    size--;
-                    return null;
+    public List<Value> getAll(Key[] keys) {
+        Integer[] order = sortedOrder(keys);
+        Object[] values = new Object[keys.length];
+
+        Node[] nodes = new Node[height + 1];
+        Object[] upper = new Object[height + 1];
+        int depth = -1, last = 1;
+        for (int i : order) {
+            Key key = keys[i];
+            int h = climb(upper, depth, key);
+            int lo = h >= 0 && h == depth ? last : 1;
+            if (h < 0) nodes[h = 0] = root;
+
+            for (Node x = nodes[h]; ; x = nodes[++h] = x.children[last - 1].next, lo = 1) {
+                int idx = indexOf(x, key, lo);
+                if (idx > 0) {
+                    values[i] = valueOf(x.children[idx]);
+                    last = idx;
+                    break;
                 }
 
-                /*
-                    找到待插入的位置，如果小于中间的某个节点说明插入位置在中间，
-                    否则将会插入到该节点元素列表的末尾
-                 */
-                if (less(key, entries[idx].key)) break;
+                last = -idx - 1;
+                if (h == height) break;
+                // 下一层节点的上界为 children[last] 的 key，如果不存在则继承当前节点的上界
+                upper[h + 1] = last <= x.m ? x.children[last].key : upper[h];
             }
-        } else {
-            for (idx = 1; idx <= x.m; ++idx) {
-                // 如果 key 对应当前节点中的某个元素，则替换掉它
-                if (eq(key, entries[idx].key)) {
-                    entries[idx].value = value;
-                    size--;
-                    return null;
+            depth = h;
+        }
+
+        return (List<Value>) Arrays.asList(values);
+    }
+
+    /**
+     * 批量插入键值对，keys[i] 和 values[i] 组成一个键值对，重复的 key 以最后出现的为准
+     * <br />
+     * 和 {@link #getAll(Comparable[])} 一样，排序之后的 key 共享上一个 key 的查找路径，连续落在同一个叶子节点中的
+     * key 将会在一次访问中依次插入。叶子节点分裂之后路径上的节点会发生变化，此时下一个 key 将会重新从根节点开始查找
+     *
+     * @param keys   : 键值对的 key 列表，不能包含 null
+     * @param values : 键值对的 value 列表，长度必须和 keys 一致
+     */
+    public void putAll(Key[] keys, Value[] values) {
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException("keys 和 values 的长度不一致");
+        }
+
+        Integer[] order = sortedOrder(keys);
+
+        Node[] nodes = new Node[height + 1];
+        int[] pos = new int[height + 1];
+        Object[] upper = new Object[height + 1];
+        int depth = -1, last = 1;
+        for (int i : order) {
+            Key key = keys[i];
+            int h = climb(upper, depth, key);
+            int lo = h >= 0 && h == depth ? last : 1;
+            if (h < 0) nodes[h = 0] = root;
+
+            for (Node x = nodes[h]; ; x = nodes[++h] = x.children[last - 1].next, lo = 1) {
+                Entry[] entries = x.children;
+                int idx = indexOf(x, key, lo);
+                if (idx > 0) {
+                    overwrite(entries[idx], values[i]);
+                    last = idx;
+                    break;
                 }
 
-                if (less(entries[idx].key, key)) continue;
-                break;
+                last = -idx - 1;
+                if (h == height) {
+                    insertAt(x, last, new Entry(key, values[i], null));
+                    size++;
+                    break;
+                }
+
+                pos[h] = last - 1;
+                upper[h + 1] = last <= x.m ? entries[last].key : upper[h];
+            }
+            depth = h;
+
+            if (nodes[h].m == M) {
+                splitPath(nodes, pos, h);
+                depth = -1;
+                if (nodes.length <= height) {
+                    nodes = new Node[height + 1];
+                    pos = new int[height + 1];
+                    upper = new Object[height + 1];
+                }
             }
+        }
+    }
 
-            // 插入到前一个区间元素中，因为此时的元素已经大于现有的 key 了
-            Node u = insert(entries[idx - 1].next, key, value, h + 1);
-            // 插入结果为 null 说明没有发生节点分裂，正常返回即可
-            if (u == null) return null;
+    /**
+     * 覆盖已经存在的元素的 value，如果这个元素是墓碑元素，那么它将重新成为有效的元素
+     */
+    private void overwrite(Entry e, Value value) {
+        if (e.value == TOMBSTONE) {
+            tombstones--;
+            size++;
+        }
+        e.value = value;
+    }
 
-            /*
-                由于此时发生了节点分裂，需要将分裂后的节点的根节点插入到当前的节点中，
-                首先需要找到根节点的插入位置
-            */
-            for (idx = 1; idx <= x.m; ++idx)
-                if (less(u.children[1].key, entries[idx].key)) break;
+    /**
+     * 按照 key 的顺序对 keys 的下标进行排序，相同的 key 保持原有的顺序。如果 keys 本身已经有序，那么不再进行排序
+     */
+    private Integer[] sortedOrder(Key[] keys) {
+        Integer[] order = new Integer[keys.length];
+        boolean sorted = true;
+        for (int i = 0; i < keys.length; ++i) {
+            if (keys[i] == null) {
+                throw new IllegalArgumentException("key 不能为 null");
+            }
+            order[i] = i;
+            if (i > 0 && sorted && keys[i - 1].compareTo(keys[i]) > 0) sorted = false;
+        }
 
-            /*
-                分裂后的节点将通过一个根节点和两个子节点的形式返回，为了调整这个根节点，应当将根节点的元素插入到
-                当前节点，首先需要将根节点的左区间链接放入到插入的位置的节点
+        if (!sorted) Arrays.sort(order, (a, b) -> keys[a].compareTo(keys[b]));
+        return order;
+    }
 
-                idx 表示第一个大于分裂的根节点的位置，因此需要调整的是前面的区间链接节点
-             */
-            entries[idx - 1].next = u.children[0].next;
-            t = u.children[1]; // t 表示待插入的节点
-        }
+    /**
+     * 从上一次查找路径的第 depth 层向上回溯，直到该层节点的区间能够包含 key。由于 key 是按照顺序访问的，
+     * 因此只需要比较每一层的上界，upper[h] 为 null 表示第 h 层的节点不存在上界
+     *
+     * @return : 能够包含 key 的最深的一层，如果不存在上一次的查找路径则返回 -1
+     */
+    @SuppressWarnings("unchecked")
+    private int climb(Object[] upper, int depth, Key key) {
+        int h = depth;
+        while (h > 0 && upper[h] != null && key.compareTo((Key) upper[h]) >= 0) h--;
+        return h;
+    }
 
-        /*
-            需要将 idx 之后的所有 children 元素向后移动一位，为新插入的键值对提供空间
-         */
-        if (M - idx >= 0)
-            System.arraycopy(x.children, idx, x.children, idx + 1, M - idx);
+    /**
+     * 沿着查找路径从第 h 层开始向上分裂溢出的节点，nodes[l + 1] 为 nodes[l].children[pos[l]].next
+     * <br />
+     * 分裂得到的中间元素直接插入到父节点的 pos[h - 1] + 1 位置，它一定位于 (children[pos], children[pos + 1]) 这个区间内，
+     * 因此不需要再重新查找。只有根节点分裂时才会创建新的根节点，此时树的高度 +1
+     */
+    private void splitPath(Node[] nodes, int[] pos, int h) {
+        for (; h >= 0 && nodes[h].m == M; --h) {
+            Entry mid = split(nodes[h]);
+            if (metrics != null) metrics.splits++;
+            if (h == 0) {
+                Node p = new Node(1, M);
+                p.children[0].next = nodes[0];
+                p.children[1] = mid;
+                root = p;
+                height++;
+                this.nodes++;
+                return;
+            }
 
-        // 插入键值对
-        x.children[idx] = t;
-        x.m++;
+            insertAt(nodes[h - 1], pos[h - 1] + 1, mid);
+        }
+    }
 
-        /*
-            如果当前节点插入之后依旧满足限制条件，则正常执行;
-            否则，需要对当前的节点进行分裂的操作
-         */
-        if (x.m < M) return null;
-        return split(x);
+    /**
+     * 将元素 e 插入到节点 x 的 idx 位置，idx 之后的所有元素向后移动一位
+     */
+    private void insertAt(Node x, int idx, Entry e) {
+        System.arraycopy(x.children, idx, x.children, idx + 1, x.m + 1 - idx);
+        x.children[idx] = e;
+        x.m++;
     }
 
     /**
      * 通过传入的 key 删除对应的键值对，如果树中不存在这样的 key，则返回 null
      * 在删除的过程中依旧需要保持树的平衡性
+     * <br />
+     * 延迟删除模式下只会将元素标记为墓碑，此时返回的是一个包含原有键值对的新对象
      *
      * @param key : 待删除的键值对的 key
      * @return : 如果删除成功，则返回该 key 对应的键值对; 否则，返回 null
      */
     public Entry delete(Key key) {
-        Entry entry = delete(null, root, key, 0);
-        if (entry != null) size--;
+        if (key == null) {
+            throw new IllegalArgumentException("待删除的 key 不能为 null");
+        }
 
+        if (metrics == null) return deleteEntry(key);
+
+        long start = System.nanoTime();
+        Entry entry = deleteEntry(key);
+        metrics.record(TreeMetrics.Op.DELETE, System.nanoTime() - start);
         return entry;
     }
 
     /**
-     * 通过传入的父节点和当前处理的节点，按照传入的 key 对对应的键值对进行删除
+     * 删除的具体实现，延迟删除模式下只标记墓碑，否则直接从树中移除
+     */
+    private Entry deleteEntry(Key key) {
+        if (lazyDelete) {
+            Entry e = find(key);
+            if (e == null || e.value == TOMBSTONE) return null;
+
+            Entry old = new Entry(e.key, e.value, null);
+            e.value = TOMBSTONE;
+            size--;
+            tombstones++;
+            pending.add(key);
+            return old;
+        }
+
+        Entry entry = remove(key);
+        if (entry == null) return null;
+        if (entry.value != TOMBSTONE) {
+            size--;
+            return entry;
+        }
+
+        // 直接移除了一个还没有被压缩的墓碑元素，对于调用方来说这个 key 已经不存在
+        tombstones--;
+        return null;
+    }
+
+    /**
+     * 批量地从树中移除最多 batch 个墓碑元素，移除的过程和普通的删除一致，会对不满足条件的节点进行合并或者借用
      *
-     * @param parent : 当前处理的节点的父节点，特别地，根节点的父节点为 null
-     * @param cur    : 当前处理的节点
-     * @param key    : 待删除的 key
-     * @param h      : 当前处理的节点的树的高度
-     * @return : 如果删除成功，返回 key 在树中对应的键值对对象
+     * @param batch : 本次最多移除的墓碑元素的个数
+     * @return : 实际移除的墓碑元素的个数，小于 batch 时说明已经没有待压缩的墓碑元素
      */
-    @SuppressWarnings("unchecked")
-    private Entry delete(Node parent, Node cur, Key key, int h) {
+    public int compact(int batch) {
+        int n = 0;
+        while (n < batch && !pending.isEmpty()) {
+            Key key = pending.poll();
+            // 标记之后又被重新插入，或者已经被移除的 key 直接跳过
+            Entry e = find(key);
+            if (e == null || e.value != TOMBSTONE) continue;
+
+            remove(key);
+            tombstones--;
+            n++;
+        }
+
+        return n;
+    }
+
+    /**
+     * 启动一个后台线程，每隔 periodMillis 毫秒压缩一次墓碑元素。每次压缩以 batch 个元素为一批，
+     * 每一批都在树的对象锁中完成，批与批之间会释放锁，因此写入操作最多只需要等待一批元素的压缩
+     * <br />
+     * 注意：B 树本身不是线程安全的，启动后台压缩之后，所有对树的访问都必须在树的对象锁中进行，即 synchronized (tree)
+     *
+     * @param batch        : 每一批压缩的墓碑元素的个数
+     * @param periodMillis : 两次压缩之间的间隔
+     * @return : 后台压缩的句柄，关闭之后停止压缩
+     */
+    public Compactor startCompactor(int batch, long periodMillis) {
+        if (batch <= 0 || periodMillis <= 0) {
+            throw new IllegalArgumentException("batch 以及 periodMillis 都必须大于 0");
+        }
+
+        return new Compactor(batch, periodMillis);
+    }
+
+    /**
+     * 后台压缩墓碑元素的句柄
+     */
+    public final class Compactor implements Closeable {
+        private final ScheduledExecutorService executor;
+
+        private Compactor(int batch, long periodMillis) {
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "btree-compactor");
+                t.setDaemon(true);
+                return t;
+            });
+            executor.scheduleWithFixedDelay(() -> {
+                int n;
+                do {
+                    synchronized (BTree.this) {
+                        n = compact(batch);
+                    }
+                } while (n == batch);
+            }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void close() {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 查找 key 所在的元素，包括墓碑元素
+     */
+    private Entry find(Key key) {
+        Node x = root;
+        while (x != null) {
+            int idx = indexOf(x, key);
+            if (idx > 0) return x.children[idx];
+            x = x.children[-idx - 2].next;
+        }
+
+        return null;
+    }
+
+    /**
+     * 从树中移除 key 所在的元素，移除之后自底向上地重平衡查找路径上的节点，size 以及墓碑的计数由调用方维护
+     *
+     * @param key : 待移除的 key
+     * @return : 被移除的元素，不存在时返回 null
+     */
+    private Entry remove(Key key) {
+        ensurePath();
         Entry entry;
-        int idx;
-        // 待删除的节点是一个叶子节点，直接进行删除
-        if (h == height) {
-            for (idx = 1; idx <= cur.m; ++idx)
-                if (eq(cur.children[idx].key, key)) break;
-
-            // 如果当前叶子节点不存在这样的键值对元素，则跳过
-            if (idx > cur.m) return null;
-            entry = cur.children[idx];
-
-            // 移动节点元素列表，删除元素
-            if (cur.m + 1 - idx >= 0)
-                System.arraycopy(cur.children, idx + 1, cur.children, idx, cur.m + 1 - idx);
-            cur.m--;
-        } else {
-            /*
-                待删除的节点不是叶子节点，那么需要从元素的所有后继节点中找到最小的元素（或者从前驱节点中找到最大的元素）
-                覆盖掉当前 key 所在的元素，然后在后继节点中删除该最小元素
-             */
-            for (idx = 1; idx <= cur.m; ++idx) {
-                if (eq(cur.children[idx].key, key)) break;
-
-                // 当前节点在该节点的后继节点中，递归进行删除
-                if (less(key, cur.children[idx].key)) {
-                    entry = delete(cur, cur.children[idx - 1].next, key, h + 1);
-                    if (cur.m < M / 2) reBalance(parent, cur, h);
-                    return entry;
-                }
+        Node x = root;
+        int h = 0;
+        for (; ; ++h) {
+            path[h] = x;
+            Entry[] entries = x.children;
+            int idx = indexOf(x, key);
+
+            if (h == height) {
+                // 如果当前叶子节点不存在这样的键值对元素，则跳过
+                if (idx < 0) return null;
+                entry = entries[idx];
+
+                // 移动节点元素列表，删除元素
+                System.arraycopy(entries, idx + 1, entries, idx, x.m - idx);
+                entries[x.m--] = null;
+                break;
             }
 
-            // idx > cur.m 说明待删除的节点在最后的一个区间内，同样地，通过递归的方式进行删除
-            if (idx > cur.m) {
-                entry = delete(cur, cur.children[cur.m].next, key, h + 1);
-                if (cur.m < M / 2) reBalance(parent, cur, h);
-                return entry;
+            if (idx < 0) {
+                // 待删除的 key 位于前一个元素的区间中
+                idx = -idx - 2;
+            } else {
+                /*
+                    待删除的节点不是叶子节点，那么需要从元素的所有后继节点中找到最小的元素，将它和当前 key 所在的元素交换键值对，
+                    然后在后继节点中删除交换之后的元素。由于待删除的 key 小于后继节点中的所有元素，交换之后后继子树中
+                    的元素依旧是有序的，它一定位于后继子树最左边的叶子节点中，之后每一层的查找都会进入最左边的区间
+                 */
+                Entry target = entries[idx];
+                swap(target, min(target.next));
             }
 
-            // 删除内部节点元素
-            Entry min = min(cur);
-            cur.children[idx].key = min.key;
-            cur.children[idx].value = min.value;
-
-            entry = delete(cur, cur.children[idx].next, (Key) min.key, h + 1);
+            pathPos[h] = idx;
+            x = entries[idx].next;
         }
 
-        // 如果删除节点之后该节点不满足条件，需要对该节点进行重平衡
-        if (cur.m < M / 2) reBalance(parent, cur, h);
+        /*
+            自底向上地重平衡不满足条件的节点，只有合并会使得父节点的元素减少，
+            因此一旦某一层的节点满足条件，它的所有祖先节点都不需要再处理
+         */
+        for (; h > 0 && path[h].m < M / 2; --h)
+            reBalance(path[h - 1], pathPos[h - 1], path[h]);
+
+        /*
+            根节点的元素全部被合并到子节点之后，根节点只剩下哨兵元素的链接，
+            此时将它唯一的子节点作为新的根节点，同时将树的高度 -1
+         */
+        if (root.m == 0 && height > 0) {
+            root = root.children[0].next;
+            height--;
+            nodes--;
+        }
 
         return entry;
     }
 
+    /**
+     * 保证查找路径能够容纳当前树的高度
+     */
+    private void ensurePath() {
+        if (path.length > height) return;
+        path = new Node[height + 1];
+        pathPos = new int[height + 1];
+    }
+
     /**
      * 对传入的节点进行重平衡，具体的做法为: <br />
      *  1. 如果当前处理的节点的兄弟节点存在多余的元素，则将父节点的分隔节点移动到当前节点中，
@@ -317,58 +698,28 @@ public class BTree<Key extends Comparable<Key>, Value> {
      *  2. 如果兄弟节点都不存在多余的元素，则将父节点和当前处理节点结合左兄弟节点（或右兄弟节点）
      *     成为一个新的节点，然后在父节点中移除这个分隔元素 <br />
      *  3. 由于合并之后会使得父节点的元素数目减少，此时父节点可能会不满足 B 树节点的限制条件，
-     *     此时需要递归地重平衡父节点。如果此时的父节点是根节点，那么需要重新修改根节点，
-     *     同时将树的高度 -1<br />
+     *     此时需要递归地重平衡父节点。如果此时的父节点是根节点，那么由 {@link #delete(Comparable)}
+     *     重新修改根节点，同时将树的高度 -1<br />
      *
-     * @param parent : 当前处理的节点的父节点
-     * @param cur : 当前的处理节点，父节点为 null 表示当前处理的是根节点
-     * @param h : 当前处理的节点的树的高度
+     * @param parent : 当前处理的节点的父节点，父节点为 null 表示当前处理的是根节点
+     * @param pos : 当前处理的节点在父节点中的链接位置
+     * @param cur : 当前的处理节点
      */
-    @SuppressWarnings("unchecked")
-    private void reBalance(Node parent, Node cur, int h) {
+    private void reBalance(Node parent, int pos, Node cur) {
         // parent 为 null 表示当前处理的节点是 root 节点，root 节点不需要重平衡
         if (parent == null) return;
-        int idx;
         Entry[] children = parent.children;
-        // 首先找到当前处理节点所在的区间元素
-        for (idx = 1; idx <= parent.m; ++idx)
-            if (less(cur.children[cur.m].key, children[idx].key))
-                break;
-        idx -= 1;
 
-        // 找到该叶子节点的左右兄弟节点
+        // 找到该节点的左右兄弟节点
         Node left = null, right = null;
-        if (idx > 0) left = children[idx - 1].next;
-        if (idx < parent.m) right = children[idx + 1].next;
-
-        if (left == null && right == null) return;
+        if (pos > 0) left = children[pos - 1].next;
+        if (pos < parent.m) right = children[pos + 1].next;
 
         /*
             左子节点存在多余的元素，从左子节点借用一个元素，使得节点最终满足 B 树的条件
          */
         if (left != null && left.m > M / 2) {
-            // 移动当前节点的元素，为新加入的元素腾出位置
-            for (int i = cur.m + 1; i > idx; --i) {
-                if (cur.children[i] == null)
-                    cur.children[i] = new Entry(null, null, null);
-                cur.children[i].key = cur.children[i - 1].key;
-                cur.children[i].value = cur.children[i - 1].value;
-            }
-
-            // 复制属性到当前节点的第一个元素（从 1 开始计数）
-            cur.children[1].key = children[idx].key;
-            cur.children[1].value = children[idx].value;
-            cur.children[1].next = cur.children[0].next;
-            cur.children[0].next = left.children[left.m].next;
-            cur.m++;
-
-            // 将从左子节点借用到的元素的属性复制到父节点的分隔元素，使得树最终是有序的
-            children[idx].key = left.children[left.m].key;
-            children[idx].value = left.children[left.m].value;
-
-            // 删除左子节点的最大元素
-            left.children[left.m] = null;
-            left.m--;
+            reBalanceByLeft(left, cur, parent, pos);
             return;
         }
 
@@ -377,136 +728,418 @@ public class BTree<Key extends Comparable<Key>, Value> {
             同时将原有的旧分隔元素移动到到当前的节点，使得它维持 B 树的结构
         */
         if (right != null && right.m > M / 2) {
-            ++cur.m;
-            // 如果此时这个位置的对象未实例化，那么首先实例化该位置的对象
-            if (cur.children[cur.m] == null)
-                cur.children[cur.m] = new Entry(null, null, null);
-
-            // 单纯地复制属性到当前的节点，如果使用引用复制的话会导致出现冗余的链接，甚至出现环
-            cur.children[cur.m].key = children[idx + 1].key;
-            cur.children[cur.m].value = children[idx + 1].value;
-            cur.children[cur.m].next = right.children[0].next;
-            right.children[0].next = right.children[1].next;
-
-            // 更新父节点的分隔元素
-            children[idx + 1].key = right.children[1].key;
-            children[idx + 1].value = right.children[1].value;
-
-            // 由于右子节点被借用了一个元素，因此需要移动右子节点的元素列表使得其依旧是有序的
-            if (right.m >= 0)
-                System.arraycopy(right.children, 2, right.children, 1, right.m);
-            right.m--;
+            reBalanceByRight(right, cur, parent, pos);
             return;
         }
 
         /*
             由于左右兄弟节点都不存在多余的元素，因此需要从父节点借用一个元素，合并成为一个节点
             一般会优先选择左兄弟节点作为合并后的节点，因为这样就不需要移动前半部分元素
-         */
-        if (left != null) {
-            // 首先将父节点的分隔节点复制到当前节点的末尾，由于这个位置可能未实例化，因此首先实例化
-            ++left.m;
-            if (left.children[left.m] == null)
-                left.children[left.m] = new Entry(null, null, null);
-
-            left.children[left.m].key = children[idx].key;
-            left.children[left.m].value = children[idx].value;
-            left.children[left.m].next = cur.children[0].next;
-            // 复制父节点的分隔节点结束。。。。
-
-            // 再将当前节点的所有元素复制到左兄弟节点，由于位置 0 是一个哨兵元素，因此从元素 1 开始进行复制
-            for (int i = 1; i <= cur.m; ++i)
-                left.children[++left.m] = cur.children[i];
-
-            // 合并之后，会出现一条多余的链接，这个链接是多余的
-            children[idx].next = null;
-            // 删除父节点的分隔元素之后，移动父节点的分隔元素列表，使得原有的父节点的元素依旧是有序的
-            if (parent.m + 1 - idx >= 0)
-                System.arraycopy(children, idx + 1, children, idx, parent.m + 1 - idx);
-            parent.m--;
-            return;
-        }
 
-        /*
-            由于不存在左兄弟节点，因此只能选择右边的兄弟节点，将右兄弟节点的元素复制到当前节点
             Hint：根据 B 树的定义，不可能存在既不含有左兄弟节点，也不含有右兄弟节点的节点
          */
-        ++cur.m;
-        if (cur.children[cur.m] == null)
-            cur.children[cur.m] = new Entry(null, null, null);
-        cur.children[cur.m].key = children[idx + 1].key;
-        cur.children[cur.m].value = children[idx + 1].value;
-        cur.children[cur.m].next = right.children[0].next;
-        children[idx + 1].next = null;
-
-        // 复制右兄弟节点的所有元素到当前的处理节点
-        for (int i = 1; i <= right.m; ++i)
-            cur.children[++cur.m] = right.children[i];
-
-        // 调整父节点的元素列表
-        if (parent.m + 1 - (idx + 1) >= 0)
-            System.arraycopy(children, idx + 1 + 1, children, idx + 1, parent.m + 1 - (idx + 1));
-        parent.m--;
+        if (left != null) merge(parent, pos);
+        else merge(parent, pos + 1);
+    }
+
+    /**
+     * 从左兄弟节点借用一个元素：左兄弟节点的最大元素上移成为新的分隔元素，原有的分隔元素下移成为当前节点的最小元素
+     *
+     * @param left   : 当前处理节点的左兄弟节点
+     * @param cur    : 当前正在被处理的节点
+     * @param parent : 当前处理的节点的父节点
+     * @param idx    : 当前处理的节点在父节点中的链接位置，即分隔左兄弟节点和当前节点的元素所在的位置
+     */
+    private void reBalanceByLeft(Node left, Node cur, Node parent, int idx) {
+        if (metrics != null) metrics.borrowsFromLeft++;
+        Entry sep = parent.children[idx], last = left.children[left.m];
+        left.children[left.m--] = null;
+
+        // 移动当前节点的元素，为新加入的元素腾出位置
+        System.arraycopy(cur.children, 1, cur.children, 2, cur.m);
+
+        // 左兄弟节点的最大元素的右区间成为当前节点的最左区间，而原有的最左区间则链接到下移的分隔元素
+        Node first = cur.children[0].next;
+        cur.children[0].next = last.next;
+        last.next = first;
+
+        // 分隔元素和借用到的元素交换属性，借用的元素对象则作为当前节点的第一个元素
+        swap(sep, last);
+        cur.children[1] = last;
+        cur.m++;
+    }
+
+    /**
+     * 从右兄弟节点借用一个元素：右兄弟节点的最小元素上移成为新的分隔元素，原有的分隔元素下移成为当前节点的最大元素
+     *
+     * @param right  : 当前处理节点的右兄弟节点
+     * @param cur    : 当前正在被处理的节点
+     * @param parent : 当前处理的节点的父节点
+     * @param idx    : 当前处理的节点在父节点中的链接位置，分隔当前节点和右兄弟节点的元素位于 idx + 1
+     */
+    private void reBalanceByRight(Node right, Node cur, Node parent, int idx) {
+        if (metrics != null) metrics.borrowsFromRight++;
+        Entry sep = parent.children[idx + 1], first = right.children[1];
+
+        // 由于右子节点被借用了一个元素，因此需要移动右子节点的元素列表使得其依旧是有序的
+        System.arraycopy(right.children, 2, right.children, 1, right.m - 1);
+        right.children[right.m--] = null;
+
+        Node next = right.children[0].next;
+        right.children[0].next = first.next;
+        first.next = next;
+
+        swap(sep, first);
+        cur.children[++cur.m] = first;
+    }
+
+    /**
+     * 将父节点中位置 idx 的分隔元素，以及它两侧的子节点合并成为一个节点，合并之后的节点为左边的子节点
+     *
+     * @param parent : 待合并的两个节点的父节点
+     * @param idx    : 父节点中分隔元素的位置，需要满足 idx >= 1
+     */
+    private void merge(Node parent, int idx) {
+        if (metrics != null) metrics.merges++;
+        nodes--;
+        Entry[] children = parent.children;
+        Entry sep = children[idx];
+        Node left = children[idx - 1].next, right = sep.next;
+
+        // 首先将父节点的分隔元素移动到左节点的末尾，它的后继链接为右节点的最左区间
+        sep.next = right.children[0].next;
+        left.children[++left.m] = sep;
+
+        // 再将右节点的所有元素复制到左节点，由于位置 0 是一个哨兵元素，因此从元素 1 开始进行复制
+        System.arraycopy(right.children, 1, left.children, left.m + 1, right.m);
+        left.m += right.m;
+
+        // 删除父节点的分隔元素之后，移动父节点的分隔元素列表，使得原有的父节点的元素依旧是有序的
+        System.arraycopy(children, idx + 1, children, idx, parent.m - idx);
+        children[parent.m--] = null;
+    }
+
+    /**
+     * 交换两个元素的键值对，元素的链接保持不变
+     */
+    @SuppressWarnings("unchecked")
+    private void swap(Entry a, Entry b) {
+        Key k = (Key) a.key;
+        Object v = a.value;
+        a.key = b.key;
+        a.value = b.value;
+        b.key = k;
+        b.value = v;
+    }
+
+    /**
+     * 查找以 x 为根的子树中的最小元素，最小元素一定位于最左边的叶子节点的第一个位置
+     */
+    private Entry min(Node x) {
+        while (x.children[0].next != null)
+            x = x.children[0].next;
+
+        return x.children[1];
+    }
+
+    /**
+     * 以默认的填充因子批量加载有序的键值对，见 {@link #bulkLoad(Iterator, double)}
+     *
+     * @param entries : 按照 key 严格递增的键值对
+     */
+    public void bulkLoad(Iterator<Entry> entries) {
+        bulkLoad(entries, DEFAULT_FILL_FACTOR);
+    }
+
+    /**
+     * 自底向上地批量加载按照 key 严格递增的键值对，只能在空树上调用
+     * <br />
+     * 和逐个调用 {@link #put(Comparable, Object)} 不同，批量加载的过程中不会发生节点的分裂：对于每一层，
+     * 只维护最右边的一个节点，当这个节点的元素个数达到了填充因子对应的数目时，新到达的元素将会作为分隔元素
+     * 进入上一层，同时在当前层创建一个新的节点。因此整个加载过程只需要遍历一次输入，时间复杂度为 O(n)，
+     * 传入的 Entry 对象将会直接作为树中的元素，不会再额外复制
+     * <br />
+     * 加载完成之后，每一层最右边的节点的元素可能少于 M / 2，此时通过和左兄弟节点的借用或者合并来恢复 B 树的限制条件，
+     * 这样之后的 {@link #delete(Comparable)} 等操作依旧能够正常地工作
+     *
+     * @param entries    : 按照 key 严格递增的键值对
+     * @param fillFactor : 每个节点的填充因子，取值范围为 (0, 1]，实际的元素个数不会低于 M / 2
+     */
+    @SuppressWarnings("unchecked")
+    public void bulkLoad(Iterator<Entry> entries, double fillFactor) {
+        if (entries == null) {
+            throw new IllegalArgumentException("entries 不能为 null");
+        }
+        if (!(fillFactor > 0 && fillFactor <= 1)) {
+            throw new IllegalArgumentException("填充因子的取值范围为 (0, 1]");
+        }
+        if (root.m != 0) {
+            throw new IllegalStateException("只能在空树上进行批量加载");
+        }
+
+        int fill = Math.max(M / 2, (int) (fillFactor * (M - 1)));
+        // spine 记录了每一层最右边的节点，下标 0 为叶子节点所在的层
+        List<Node> spine = new ArrayList<>();
+        spine.add(root);
+
+        Key prev = null;
+        while (entries.hasNext()) {
+            Entry e = entries.next();
+            if (e == null || e.key == null) {
+                throw new IllegalArgumentException("待加载的键值对以及它的 key 不能为 null");
+            }
+            if (prev != null && prev.compareTo((Key) e.key) >= 0) {
+                throw new IllegalArgumentException("批量加载的键值对必须按照 key 严格递增");
+            }
+            prev = (Key) e.key;
+            e.next = null;
+
+            for (int level = 0; ; ++level) {
+                Node x = spine.get(level);
+                if (x.m < fill) {
+                    x.children[++x.m] = e;
+                    break;
+                }
+
+                /*
+                    当前层最右边的节点已经填满，e 将会作为分隔元素进入上一层，e 原有的右区间则作为新节点的最左区间
+                 */
+                Node t = new Node(0, M);
+                t.children[0].next = e.next;
+                e.next = t;
+                spine.set(level, t);
+                nodes++;
+
+                if (level + 1 == spine.size()) {
+                    Node p = new Node(0, M);
+                    p.children[0].next = x;
+                    spine.add(p);
+                    nodes++;
+                }
+            }
+            size++;
+        }
 
         /*
-            只有当处理节点所在的树的高度为 1 时，
-            才有机会转变成为新的根节点，同时将树的高度 -1
+            修复每一层最右边的节点，在合并之后父节点的元素会减少，因此需要自底向上地进行处理。
+            如果父节点暂时还没有元素，那么需要等到更上层的处理使得父节点拥有元素之后，再重新处理当前的层
          */
-        if (parent.m == 0 && h == 1) {
-            root = cur;
-            height--;
+        boolean pending = true;
+        while (pending) {
+            pending = false;
+            for (int level = 0; level + 1 < spine.size(); ++level) {
+                Node x = spine.get(level), p = spine.get(level + 1);
+                if (x.m >= M / 2) continue;
+                if (p.m == 0) {
+                    pending = true;
+                    continue;
+                }
+
+                Node left = p.children[p.m - 1].next;
+                if (left.m + x.m < M - 1) {
+                    merge(p, p.m);
+                    spine.set(level, left);
+                } else {
+                    while (x.m < M / 2)
+                        reBalanceByLeft(left, x, p, p.m);
+                }
+            }
+
+            // 根节点只剩下哨兵元素的链接时，它唯一的子节点成为新的根节点
+            while (spine.size() > 1 && spine.get(spine.size() - 1).m == 0) {
+                spine.remove(spine.size() - 1);
+                nodes--;
+            }
         }
+
+        root = spine.get(spine.size() - 1);
+        height = spine.size() - 1;
     }
 
-    private Entry min(Node x) {
-        if (x.children[1].next == null)
-            return x.children[1];
+    /**
+     * 通过按照 key 严格递增的键值对构建一棵阶数为 m 的 B 树
+     *
+     * @param m      : B 树的阶数
+     * @param source : 按照 key 严格递增的键值对
+     * @return : 批量加载得到的 B 树
+     */
+    public static <Key extends Comparable<Key>, Value> BTree<Key, Value>
+    fromSorted(int m, Iterator<? extends Map.Entry<Key, ? extends Value>> source) {
+        BTree<Key, Value> tree = new BTree<>(m);
+        tree.bulkLoad(new Iterator<Entry>() {
+            @Override
+            public boolean hasNext() {
+                return source.hasNext();
+            }
 
-        return min(x.children[1].next);
+            @Override
+            public Entry next() {
+                Map.Entry<Key, ? extends Value> e = source.next();
+                return new Entry(e.getKey(), e.getValue(), null);
+            }
+        });
+        return tree;
     }
 
     /**
-     * 对传入的节点 x 进行分裂操作，具体的行为:
-     * 由于 M 是奇数，因此达到上限时元素的个数一定也是奇数，这个时候就会取这个节点中的
-     * 中位数作为根节点来维护 B 树节点的有序性; 之后，再将 x 中两边的元素平分到两个子节点中，
-     * 调整对应的 next 链接，返回分裂之后的根节点
+     * 返回一个位于树中最小元素之前的游标，通过 {@link Cursor#next()} 按照 key 的顺序遍历所有的键值对
      *
-     * @param x : 待分裂的节点 x
-     * @return : 分裂之后的子树的根节点
+     * @return : 遍历整棵树的游标
      */
-    private Node split(Node x) {
-        Node t = new Node(M / 2, M);
-        x.m = M / 2;
+    public Cursor cursor() {
+        return range(null, null);
+    }
 
-        // 将 x 中的后半部分的节点放入 t 中
-        for (int i = 1; i <= M / 2; ++i) {
-            t.children[i] = x.children[M / 2 + i + 1];
-            x.children[M / 2 + i + 1] = null;
+    /**
+     * 返回一个遍历区间 [from, to] 中所有键值对的游标，from 或者 to 为 null 时表示对应的方向上不设边界
+     * <br />
+     * 遍历的过程中不会复制任何元素，客户端可以在任意时刻停止调用 {@link Cursor#next()} 来提前终止遍历
+     *
+     * @param from : 区间的下界（包含）
+     * @param to   : 区间的上界（包含）
+     * @return : 位于区间中第一个元素之前的游标
+     */
+    public Cursor range(Key from, Key to) {
+        Cursor cursor = new Cursor(to);
+        if (from == null) cursor.seekFirst();
+        else cursor.seek(from);
+        return cursor;
+    }
+
+    /**
+     * 按照 key 的顺序遍历树中元素的游标，使用显式的栈来记录从根节点到当前位置的路径，因此遍历时不需要递归
+     * <br />
+     * 栈中的每一层记录了该层的节点，以及该节点中下一个待访问的元素的位置。对于非叶子节点，
+     * 位置 i 表示 children[i - 1].next 这个区间已经在下层中处理，下一个待访问的元素为 children[i]
+     * <br />
+     * 注意：游标创建之后如果对树进行了修改，那么这个游标将会失效
+     */
+    public final class Cursor {
+        private final Node[] nodes = new Node[height + 1];
+        private final int[] pos = new int[height + 1];
+        private final Key to; // 遍历的上界，为 null 时表示不存在上界
+
+        private int top = -1; // 栈顶所在的层，-1 表示遍历已经结束
+        private Entry current;
+
+        private Cursor(Key to) {
+            this.to = to;
         }
 
-        Node p = new Node(1, M); // 分裂后形成的根节点
-        Entry mid = x.children[M / 2 + 1]; // x 的中间节点，它的属性将会被作为根节点的属性
+        /**
+         * 将游标移动到第一个大于等于 key 的元素之前，之后的 {@link #next()} 将会访问该元素
+         *
+         * @param key : 待定位的 key
+         */
+        public void seek(Key key) {
+            if (key == null) {
+                throw new IllegalArgumentException("key 不能为 null");
+            }
 
-        // 调整相关的链接
-        t.children[0].next = mid.next;
-        x.children[M / 2 + 1] = null; // clear mid
-        p.children[0].next = x;
-        p.children[1] = new Entry(mid.key, mid.value, t);
+            current = null;
+            Node x = root;
+            for (int h = 0; ; ++h) {
+                nodes[h] = x;
+                top = h;
+                int idx = indexOf(x, key);
+                // 查找到了 key，那么它的左区间中的元素都小于 key，下一个访问的元素就是它本身
+                if (idx > 0) {
+                    pos[h] = idx;
+                    return;
+                }
 
-        return p;
-    }
+                pos[h] = -idx - 1;
+                if (h == height) return;
+                x = x.children[-idx - 2].next;
+            }
+        }
 
-    @SuppressWarnings("unchecked")
-    private boolean less(Comparable<Key> key1, Comparable<Key> key2) {
-        if (key1 == null) return true;
-        if (key2 == null) return false;
-        return key1.compareTo((Key) key2) < 0;
+        /**
+         * 将游标移动到树中最小元素之前
+         */
+        public void seekFirst() {
+            current = null;
+            top = -1;
+            pushLeftmost(root);
+        }
+
+        /**
+         * 将游标移动到下一个元素
+         *
+         * @return : 如果存在下一个元素则返回 true；如果已经遍历完成或者超过了上界，则返回 false
+         */
+        @SuppressWarnings("unchecked")
+        public boolean next() {
+            while (true) {
+                while (top >= 0 && pos[top] > nodes[top].m) top--;
+                if (top < 0) {
+                    current = null;
+                    return false;
+                }
+
+                Entry e = nodes[top].children[pos[top]++];
+                if (to != null && to.compareTo((Key) e.key) < 0) {
+                    top = -1;
+                    current = null;
+                    return false;
+                }
+
+                // 访问完当前元素之后，下一个待访问的是它的右区间中的最小元素，墓碑元素直接跳过
+                pushLeftmost(e.next);
+                if (e.value == TOMBSTONE) continue;
+
+                current = e;
+                return true;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        public Key key() {
+            if (current == null) throw new NoSuchElementException();
+            return (Key) current.key;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Value value() {
+            if (current == null) throw new NoSuchElementException();
+            return (Value) current.value;
+        }
+
+        /**
+         * 将以 x 为根的子树的最左路径压入栈中
+         */
+        private void pushLeftmost(Node x) {
+            while (x != null) {
+                nodes[++top] = x;
+                pos[top] = 1;
+                x = x.children[0].next;
+            }
+        }
     }
 
-    @SuppressWarnings("unchecked")
-    private boolean eq(Comparable<Key> key1, Comparable<Key> key2) {
-        if (key1 == null || key2 == null) return false;
-        return key1.compareTo((Key) key2) == 0;
+    /**
+     * 对传入的节点 x 进行分裂操作，具体的行为:
+     * 由于 M 是奇数，因此达到上限时元素的个数一定也是奇数，这个时候就会取这个节点中的
+     * 中位数作为分隔元素来维护 B 树节点的有序性; 之后，再将 x 中后半部分的元素移动到新的节点中
+     * <br />
+     * 中间元素对象本身将会作为父节点中的分隔元素，它的右区间链接到新的节点，因此分裂时除了新的节点之外不会再分配对象
+     *
+     * @param x : 待分裂的节点 x
+     * @return : 分裂之后的中间元素，它的 next 为分裂得到的右节点
+     */
+    private Entry split(Node x) {
+        Node t = new Node(M / 2, M);
+        nodes++;
+        Entry mid = x.children[M / 2 + 1];
+
+        // 将 x 中的后半部分的节点放入 t 中，中间元素原有的右区间成为 t 的最左区间
+        System.arraycopy(x.children, M / 2 + 2, t.children, 1, M / 2);
+        Arrays.fill(x.children, M / 2 + 1, M + 1, null);
+        t.children[0].next = mid.next;
+        x.m = M / 2;
+
+        mid.next = t;
+        return mid;
     }
 
     public String toString() {
@@ -574,6 +1207,27 @@ public class BTree<Key extends Comparable<Key>, Value> {
             bTree.put(i, i);
         for (int i = 1; i <= 250; ++i)
             bTree.delete(i);
+        BTree<Integer, Integer>.Cursor cursor = bTree.range(260, 270);
+        while (cursor.next())
+            System.out.print(cursor.key() + " ");
+        System.out.println();
+        System.out.println(bTree.getAll(new Integer[]{265, 100, 300, 251}));
+
+        bTree.setLazyDelete(true);
+        for (int i = 251; i <= 280; ++i)
+            bTree.delete(i);
+        System.out.println("tombstones: " + bTree.tombstones() + ", compacted: " + bTree.compact(100));
+
+        BTree<Integer, Integer> measured = new BTree<>(31);
+        TreeMetrics metrics = measured.enableMetrics();
+        for (int i = 1; i <= 10000; ++i)
+            measured.put(i, i);
+        for (int i = 1; i <= 10000; ++i)
+            measured.get(i);
+        for (int i = 1; i <= 5000; ++i)
+            measured.delete(i);
+        System.out.println(metrics);
+
         System.out.println("B-Tree size  :   " + bTree.size());
         System.out.println("B-Tres height:   " + bTree.height());
         System.out.println(bTree);
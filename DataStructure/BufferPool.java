@@ -0,0 +1,223 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 位于树的算法和文件之间的页缓冲池，缓冲池预先分配固定数目的页帧，因此缓存占用的内存是固定的
+ * <br />
+ * 1. 访问一个页之前需要首先通过 {@link #pin(int)} 固定这个页，访问完成之后再通过 {@link #unpin(int)} 解除固定，
+ *    被固定的页不会被换出 <br />
+ * 2. 修改过的页需要通过 {@link #markDirty(int)} 标记，只有脏页在被换出或者 {@link #flush()} 时才会写回文件 <br />
+ * 3. 页帧的换出采用 CLOCK 算法：每个页帧都有一个访问位，每次访问都会设置访问位，时钟指针扫描时跳过被固定的页帧，
+ *    并且清除已经设置的访问位，第一个既没有被固定、访问位也没有被设置的页帧将会被换出。因此经常访问的页
+ *    （例如树的上层节点）总是能够留在缓冲池中
+ * <br />
+ * 缓冲池不是线程安全的
+ *
+ * @author : xhliu
+ */
+public class BufferPool {
+    private static final int EMPTY = -1;
+
+    private final FileChannel channel;
+    private final int pageSize;
+
+    private final ByteBuffer[] frames;
+    private final int[] pageOf;      // 页帧中存放的页号，EMPTY 表示页帧还没有被使用
+    private final int[] pinCount;    // 页帧被固定的次数
+    private final boolean[] referenced;
+    private final boolean[] dirty;
+    private final Map<Integer, Integer> frameOf = new HashMap<>(); // 页号到页帧的映射
+
+    private int hand; // 时钟指针
+
+    private long hits, misses, evictions, writeBacks;
+
+    /**
+     * @param channel  : 页所在的文件
+     * @param pageSize : 页的大小
+     * @param capacity : 缓冲池中页帧的数目，必须不少于同时被固定的页的数目
+     */
+    public BufferPool(FileChannel channel, int pageSize, int capacity) {
+        if (pageSize <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("页的大小以及缓冲池的容量都必须大于 0");
+        }
+
+        this.channel = channel;
+        this.pageSize = pageSize;
+        this.frames = new ByteBuffer[capacity];
+        this.pageOf = new int[capacity];
+        this.pinCount = new int[capacity];
+        this.referenced = new boolean[capacity];
+        this.dirty = new boolean[capacity];
+
+        for (int i = 0; i < capacity; ++i) {
+            frames[i] = ByteBuffer.allocateDirect(pageSize);
+            pageOf[i] = EMPTY;
+        }
+    }
+
+    public int capacity() {
+        return frames.length;
+    }
+
+    public int pageSize() {
+        return pageSize;
+    }
+
+    public long hits() {
+        return hits;
+    }
+
+    public long misses() {
+        return misses;
+    }
+
+    public long evictions() {
+        return evictions;
+    }
+
+    public long writeBacks() {
+        return writeBacks;
+    }
+
+    /**
+     * 命中率，还没有访问过任何页时返回 0
+     */
+    public double hitRatio() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * 固定对应的页，如果这个页不在缓冲池中，那么首先通过 CLOCK 算法换出一个页帧，再从文件中读取这个页。
+     * 超出文件末尾的页将会被读取为全 0
+     *
+     * @param page : 待固定的页号
+     * @return : 页所在的页帧，页的数据从位置 0 开始
+     */
+    public ByteBuffer pin(int page) {
+        Integer frame = frameOf.get(page);
+        if (frame != null) {
+            hits++;
+        } else {
+            misses++;
+            frame = evict();
+            load(frame, page);
+        }
+
+        pinCount[frame]++;
+        referenced[frame] = true;
+        return frames[frame];
+    }
+
+    /**
+     * 解除对应页的一次固定，固定次数为 0 的页才能够被换出
+     */
+    public void unpin(int page) {
+        Integer frame = frameOf.get(page);
+        if (frame == null || pinCount[frame] == 0) {
+            throw new IllegalStateException("页 " + page + " 没有被固定");
+        }
+
+        pinCount[frame]--;
+    }
+
+    /**
+     * 将对应的页标记为脏页，这个页必须已经被固定
+     */
+    public void markDirty(int page) {
+        Integer frame = frameOf.get(page);
+        if (frame == null || pinCount[frame] == 0) {
+            throw new IllegalStateException("页 " + page + " 没有被固定");
+        }
+
+        dirty[frame] = true;
+    }
+
+    /**
+     * 将所有的脏页写回到文件中，并且将文件的修改刷新到磁盘
+     */
+    public void flush() {
+        for (int i = 0; i < frames.length; ++i)
+            if (dirty[i]) writeBack(i);
+
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 通过 CLOCK 算法找到一个可以使用的页帧，如果页帧中存在脏页，那么首先将它写回文件
+     */
+    private int evict() {
+        // 每个页帧最多被扫描两次：第一次清除访问位，第二次就能够被选中
+        for (int i = 0; i < 2 * frames.length; ++i) {
+            int frame = hand;
+            hand = (hand + 1) % frames.length;
+
+            if (pageOf[frame] == EMPTY) return frame;
+            if (pinCount[frame] > 0) continue;
+            if (referenced[frame]) {
+                referenced[frame] = false;
+                continue;
+            }
+
+            if (dirty[frame]) writeBack(frame);
+            frameOf.remove(pageOf[frame]);
+            pageOf[frame] = EMPTY;
+            evictions++;
+            return frame;
+        }
+
+        throw new IllegalStateException("缓冲池中所有的页帧都已经被固定，容量 " + frames.length + " 太小");
+    }
+
+    private void load(int frame, int page) {
+        ByteBuffer buf = frames[frame];
+        buf.clear();
+        try {
+            long position = (long) page * pageSize;
+            while (buf.hasRemaining()) {
+                int n = channel.read(buf, position + buf.position());
+                if (n < 0) break;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // 超出文件末尾的部分补 0
+        while (buf.hasRemaining()) buf.put((byte) 0);
+        buf.clear();
+
+        pageOf[frame] = page;
+        frameOf.put(page, frame);
+        dirty[frame] = false;
+    }
+
+    private void writeBack(int frame) {
+        ByteBuffer buf = frames[frame].duplicate();
+        buf.clear();
+        try {
+            long position = (long) pageOf[frame] * pageSize;
+            while (buf.hasRemaining())
+                channel.write(buf, position + buf.position());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        dirty[frame] = false;
+        writeBacks++;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BufferPool[capacity=%d, hits=%d, misses=%d, evictions=%d, writeBacks=%d, hitRatio=%.2f]",
+                frames.length, hits, misses, evictions, writeBacks, hitRatio());
+    }
+}
@@ -0,0 +1,235 @@
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * 在 {@link BPlusTree} 之前加入一个内存中的有序写缓冲区（memtable），类似于 LSM 树的写入方式
+ * <br />
+ * put 和 delete 只会修改缓冲区，删除的 key 在缓冲区中以 value 为 null 的墓碑记录，缓冲区满了之后再通过
+ * {@link BPlusTree#merge(java.util.SortedMap)} 按照 key 的顺序一次性地合并到树中。随机的写入因此变成了有序的批量合并，
+ * 连续落在同一个叶子节点中的 key 只需要从根节点查找一次，较大的批次则直接和树进行归并并重新构建，
+ * 不会在每次写入时都触发节点的分裂和重平衡
+ * <br />
+ * 读取时首先查找缓冲区，缓冲区中不存在这个 key 时再查找树；范围查询同时遍历缓冲区和树，key 相同时以缓冲区为准
+ *
+ * @author : xhliu
+ * @param <K> : 键值对的 key
+ * @param <V> : 键值对的 value
+ */
+public class BufferedBPlusTree<K extends Comparable<K>, V> {
+    public static final int DEFAULT_BUFFER_SIZE = 16384;
+
+    private final BPlusTree<K, V> tree;
+
+    private final TreeMap<K, V> buffer = new TreeMap<>(); // value 为 null 表示这个 key 已经被删除
+
+    private final int capacity; // 缓冲区中最多保存的修改的数目，达到之后合并到树中
+
+    public BufferedBPlusTree(int m) {
+        this(m, DEFAULT_BUFFER_SIZE);
+    }
+
+    public BufferedBPlusTree(int m, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("缓冲区的容量必须大于 0");
+        }
+
+        this.tree = new BPlusTree<>(m);
+        this.capacity = capacity;
+    }
+
+    /**
+     * 键值对的数目，需要首先将缓冲区合并到树中
+     */
+    public int size() {
+        flush();
+        return tree.size();
+    }
+
+    /**
+     * 缓冲区中还没有合并到树中的修改的数目
+     */
+    public int buffered() {
+        return buffer.size();
+    }
+
+    int height() {
+        return tree.height();
+    }
+
+    public V get(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("key 不能为 null");
+        }
+
+        V value = buffer.get(key);
+        if (value != null || buffer.containsKey(key)) return value;
+        return tree.get(key);
+    }
+
+    public void put(K key, V val) {
+        if (key == null || val == null) {
+            throw new IllegalArgumentException("key 和 value 都不能为 null");
+        }
+
+        buffer.put(key, val);
+        if (buffer.size() >= capacity) flush();
+    }
+
+    /**
+     * 在缓冲区中记录 key 的删除，不会检查 key 是否存在
+     */
+    public void delete(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("待删除的 key 不能为 null");
+        }
+
+        buffer.put(key, null);
+        if (buffer.size() >= capacity) flush();
+    }
+
+    /**
+     * 将缓冲区中的所有修改按照 key 的顺序合并到树中，然后清空缓冲区
+     */
+    public void flush() {
+        if (buffer.isEmpty()) return;
+
+        tree.merge(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * 返回一个按照 key 递增的顺序遍历区间 [from, to] 的游标，from 或者 to 为 null 时表示对应的方向上不设边界
+     */
+    public Cursor range(K from, K to) {
+        return new Cursor(view(from, to), tree.range(from, to), false);
+    }
+
+    /**
+     * 返回一个按照 key 递减的顺序遍历区间 [from, to] 的游标
+     */
+    public Cursor descendingRange(K from, K to) {
+        return new Cursor(view(from, to).descendingMap(), tree.descendingRange(from, to), true);
+    }
+
+    /**
+     * 缓冲区中位于区间 [from, to] 的部分
+     */
+    private NavigableMap<K, V> view(K from, K to) {
+        if (from != null && to != null && from.compareTo(to) > 0) return Collections.emptyNavigableMap();
+        if (from == null) return to == null ? buffer : buffer.headMap(to, true);
+        return to == null ? buffer.tailMap(from, true) : buffer.subMap(from, true, to, true);
+    }
+
+    /**
+     * 同时遍历缓冲区和树的游标，两者的 key 相同时以缓冲区为准，缓冲区中被删除的 key 将被跳过
+     * <br />
+     * 注意：游标创建之后如果进行了修改，那么这个游标将会失效
+     */
+    public final class Cursor {
+        private final Iterator<Map.Entry<K, V>> pending;
+        private final BPlusTree<K, V>.Cursor base;
+        private final boolean descending;
+
+        private Map.Entry<K, V> buffered; // 缓冲区中下一个待访问的修改
+        private K treeKey;                // 树中下一个待访问的 key，为 null 时表示已经遍历完成
+
+        private K key;
+        private V value;
+
+        private Cursor(NavigableMap<K, V> view, BPlusTree<K, V>.Cursor base, boolean descending) {
+            this.pending = view.entrySet().iterator();
+            this.base = base;
+            this.descending = descending;
+            this.buffered = pending.hasNext() ? pending.next() : null;
+            this.treeKey = base.next() ? base.key() : null;
+        }
+
+        /**
+         * 将游标移动到下一个元素
+         *
+         * @return : 如果存在下一个元素则返回 true；如果已经遍历完成，则返回 false
+         */
+        public boolean next() {
+            while (treeKey != null || buffered != null) {
+                // cmp < 0 表示树中的 key 在遍历方向上位于缓冲区中的 key 之前
+                int cmp;
+                if (treeKey == null) cmp = 1;
+                else if (buffered == null) cmp = -1;
+                else if (descending) cmp = buffered.getKey().compareTo(treeKey);
+                else cmp = treeKey.compareTo(buffered.getKey());
+
+                if (cmp < 0) {
+                    key = treeKey;
+                    value = base.value();
+                    treeKey = base.next() ? base.key() : null;
+                    return true;
+                }
+
+                // 缓冲区中的修改覆盖树中相同的 key
+                Map.Entry<K, V> e = buffered;
+                buffered = pending.hasNext() ? pending.next() : null;
+                if (cmp == 0) treeKey = base.next() ? base.key() : null;
+                if (e.getValue() == null) continue;
+
+                key = e.getKey();
+                value = e.getValue();
+                return true;
+            }
+
+            key = null;
+            value = null;
+            return false;
+        }
+
+        public K key() {
+            if (key == null) throw new NoSuchElementException();
+            return key;
+        }
+
+        public V value() {
+            if (key == null) throw new NoSuchElementException();
+            return value;
+        }
+    }
+
+    public static void main(String[] args) {
+        int n = 1000000;
+        int[] keys = new int[n];
+        Random random = new Random(17);
+        for (int i = 0; i < n; ++i)
+            keys[i] = random.nextInt();
+
+        long start = System.nanoTime();
+        BPlusTree<Integer, Integer> plain = new BPlusTree<>(63);
+        for (int key : keys)
+            plain.put(key, key);
+        System.out.printf("plain:    %d ms, height %d, fill %.2f%n",
+                (System.nanoTime() - start) / 1000000, plain.height(), plain.fillFactor());
+
+        start = System.nanoTime();
+        BufferedBPlusTree<Integer, Integer> buffered = new BufferedBPlusTree<>(63, 65536);
+        for (int key : keys)
+            buffered.put(key, key);
+        buffered.flush();
+        System.out.printf("buffered: %d ms, height %d, fill %.2f%n",
+                (System.nanoTime() - start) / 1000000, buffered.height(), buffered.tree.fillFactor());
+
+        // 缓冲区中的删除和覆盖对读取立即可见
+        buffered.delete(keys[0]);
+        buffered.put(keys[1], -1);
+        System.out.println("deleted:  " + buffered.get(keys[0]));
+        System.out.println("updated:  " + buffered.get(keys[1]));
+        System.out.println("buffered: " + buffered.buffered());
+
+        BufferedBPlusTree<Integer, Integer>.Cursor cursor = buffered.range(0, 10000);
+        while (cursor.next())
+            System.out.print(cursor.key() + " ");
+        System.out.println();
+        System.out.println("size:     " + buffered.size());
+    }
+}
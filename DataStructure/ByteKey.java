@@ -0,0 +1,243 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 保持顺序的字节编码 key，long、String 以及由它们组成的元组都会被编码成为一个字节数组，
+ * 编码之后按照无符号字节的字典序比较的结果和原有的 key 的顺序一致
+ * <br />
+ * 作为 {@link BTree} 或者 {@link BPlusTree} 的 key 使用时，树中所有的比较都会调用同一个 final 类的
+ * {@link #compareTo(ByteKey)}，不再需要经过多种 Comparable 实现之间的虚方法分派，也不需要对基本类型进行装箱。
+ * 每个 key 会缓存编码的前 8 个字节组成的 long 前缀，大部分的比较只需要一次无符号 long 比较就能够得到结果
+ * <br />
+ * 各个字段的编码方式：<br />
+ * 1. long：翻转符号位之后按照大端序写入 8 个字节，这样负数就会排在正数之前 <br />
+ * 2. int：和 long 一致，写入 4 个字节 <br />
+ * 3. String：写入 UTF-8 编码，其中的 0x00 转义为 0x00 0xFF，最后写入 0x00 0x01 作为结束标记。
+ *    结束标记小于任何有效的字节，因此较短的前缀字符串排在前面，同时也不会和元组中后面的字段混淆。
+ *    UTF-8 的字节顺序就是码点的顺序，它和 {@link String#compareTo} 只在代理对和 U+E000 之后的字符之间存在差异
+ * <br />
+ * 元组的编码就是各个字段的编码按照顺序拼接，因此元组首先按照第一个字段比较，相同时再比较下一个字段
+ *
+ * @author : xhliu
+ */
+public final class ByteKey implements Comparable<ByteKey> {
+    private static final byte ESCAPE = (byte) 0xFF, TERMINATOR = 0x01;
+
+    private final byte[] bytes;
+    private final long prefix; // 前 8 个字节组成的大端序 long，不足 8 个字节的部分补 0
+
+    private ByteKey(byte[] bytes) {
+        this.bytes = bytes;
+
+        long p = 0;
+        for (int i = 0; i < Long.BYTES; ++i)
+            p = p << 8 | (i < bytes.length ? bytes[i] & 0xFF : 0);
+        this.prefix = p;
+    }
+
+    public static ByteKey of(long v) {
+        return builder().add(v).build();
+    }
+
+    public static ByteKey of(int v) {
+        return builder().add(v).build();
+    }
+
+    public static ByteKey of(String s) {
+        return builder().add(s).build();
+    }
+
+    /**
+     * 直接使用已经编码好的字节作为 key，调用方需要保证这些字节的无符号字典序就是期望的顺序
+     */
+    public static ByteKey wrap(byte[] bytes) {
+        return new ByteKey(bytes.clone());
+    }
+
+    /**
+     * 创建一个编码元组的构造器，各个字段按照添加的顺序进行比较
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 编码的前 8 个字节组成的 long，按照无符号的方式比较两个前缀的结果和比较完整的 key 的结果一致或者相等，
+     * 因此可以直接将前缀作为 {@link LongBTree} 之类的基本类型索引的 key（需要翻转符号位转换为有符号的顺序）
+     */
+    public long prefix() {
+        return prefix;
+    }
+
+    public int length() {
+        return bytes.length;
+    }
+
+    public byte[] toByteArray() {
+        return bytes.clone();
+    }
+
+    /**
+     * 按照字段添加的顺序解码这个 key，读取的类型需要和编码时的类型一致
+     */
+    public Reader reader() {
+        return new Reader(bytes);
+    }
+
+    /**
+     * 首先比较前缀，前缀相同时再从第 8 个字节开始按照无符号字节的字典序比较，较短的 key 是较长的 key 的前缀时排在前面
+     */
+    @Override
+    public int compareTo(ByteKey o) {
+        if (prefix != o.prefix) return Long.compareUnsigned(prefix, o.prefix);
+
+        byte[] a = bytes, b = o.bytes;
+        int n = Math.min(a.length, b.length);
+        for (int i = Long.BYTES; i < n; ++i) {
+            int cmp = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (cmp != 0) return cmp;
+        }
+
+        return a.length - b.length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ByteKey)) return false;
+        ByteKey k = (ByteKey) o;
+        return prefix == k.prefix && Arrays.equals(bytes, k.bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(bytes);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder("ByteKey[");
+        for (byte b : bytes)
+            s.append(String.format("%02x", b & 0xFF));
+        return s.append("]").toString();
+    }
+
+    /**
+     * 元组编码的构造器，构造器本身会被复用为写入缓冲区，因此不是线程安全的
+     */
+    public static final class Builder {
+        private byte[] buf = new byte[16];
+        private int len;
+
+        private Builder() {
+        }
+
+        public Builder add(long v) {
+            ensure(Long.BYTES);
+            v ^= Long.MIN_VALUE;
+            for (int i = Long.BYTES - 1; i >= 0; --i)
+                buf[len++] = (byte) (v >>> (i * 8));
+            return this;
+        }
+
+        public Builder add(int v) {
+            ensure(Integer.BYTES);
+            v ^= Integer.MIN_VALUE;
+            for (int i = Integer.BYTES - 1; i >= 0; --i)
+                buf[len++] = (byte) (v >>> (i * 8));
+            return this;
+        }
+
+        public Builder add(String s) {
+            if (s == null) {
+                throw new IllegalArgumentException("key 的字段不能为 null");
+            }
+
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            ensure(2 * utf8.length + 2);
+            for (byte b : utf8) {
+                buf[len++] = b;
+                if (b == 0) buf[len++] = ESCAPE;
+            }
+            buf[len++] = 0;
+            buf[len++] = TERMINATOR;
+            return this;
+        }
+
+        public ByteKey build() {
+            return new ByteKey(Arrays.copyOf(buf, len));
+        }
+
+        private void ensure(int n) {
+            if (len + n > buf.length)
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + n));
+        }
+    }
+
+    /**
+     * 按照编码的顺序读取元组中的各个字段
+     */
+    public static final class Reader {
+        private final byte[] bytes;
+        private int pos;
+
+        private Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        public boolean hasRemaining() {
+            return pos < bytes.length;
+        }
+
+        public long readLong() {
+            long v = 0;
+            for (int i = 0; i < Long.BYTES; ++i)
+                v = v << 8 | (bytes[pos++] & 0xFF);
+            return v ^ Long.MIN_VALUE;
+        }
+
+        public int readInt() {
+            int v = 0;
+            for (int i = 0; i < Integer.BYTES; ++i)
+                v = v << 8 | (bytes[pos++] & 0xFF);
+            return v ^ Integer.MIN_VALUE;
+        }
+
+        public String readString() {
+            byte[] out = new byte[bytes.length - pos];
+            int n = 0;
+            while (true) {
+                byte b = bytes[pos++];
+                if (b != 0) {
+                    out[n++] = b;
+                    continue;
+                }
+
+                // 0x00 之后是 0xFF 表示转义的 0x00，是 0x01 表示字符串结束
+                if (bytes[pos++] == TERMINATOR) break;
+                out[n++] = 0;
+            }
+            return new String(out, 0, n, StandardCharsets.UTF_8);
+        }
+    }
+
+    public static void main(String[] args) {
+        BTree<ByteKey, String> st = new BTree<>(5);
+        String[] hosts = {"www.cs.princeton.edu", "www.princeton.edu", "www.yale.edu", "www.simpsons.com",
+                "www.apple.com", "www.amazon.com", "www.ebay.com", "www.cnn.com", "www.google.com"};
+        for (String host : hosts)
+            st.put(ByteKey.of(host), host);
+
+        System.out.println("apple.com:         " + st.get(ByteKey.of("www.apple.com")));
+        System.out.println("hardvardsucks.com: " + st.get(ByteKey.of("www.harvardsucks.com")));
+
+        // 元组 (用户 id, 时间戳) 作为 key，同一个用户的记录按照时间戳有序地排列在一起
+        BPlusTree<ByteKey, Integer> tree = new BPlusTree<>(5);
+        for (int i = 1; i <= 30; ++i)
+            tree.put(ByteKey.builder().add((long) (i % 3 - 1)).add(1000L - i).build(), i);
+
+        ByteKey key = ByteKey.builder().add(-1L).add(1000L - 27).build();
+        ByteKey.Reader reader = key.reader();
+        System.out.println("(" + reader.readLong() + ", " + reader.readLong() + ") -> " + tree.get(key));
+    }
+}
@@ -0,0 +1,439 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 基于 Lehman 和 Yao 提出的 B-link 树实现的线程安全的 B+ 树
+ * <br />
+ * 和 {@link BPlusTree} 的叶子节点一样，每一层的节点都通过 suc 链接连接到它右边的兄弟节点，同时每个节点额外记录一个 high key，
+ * 即这个节点（以及它的子树）中所有 key 的上界（不包含），最右边的节点的 high key 为 null，表示没有上界：
+ * <br />
+ * 1. 节点分裂时，首先创建右边的新节点，再将原节点的 high key 修改为分隔 key、suc 指向新节点，最后才将分隔 key 插入到父节点中。
+ *    在父节点更新之前，从父节点到达原节点的线程会发现 key 大于等于 high key，于是沿着 suc 链接向右移动，依旧能够找到正确的节点 <br />
+ * 2. 因此读操作不需要任何锁，也不需要在版本号发生变化时重新开始：节点中的数据保存在一个不可变的 {@link Page} 中，
+ *    写操作在节点的锁的保护下创建新的 Page，然后通过 volatile 字段发布，读操作读取到的总是某一个完整的版本 <br />
+ * 3. 写操作向下查找的过程同样不加锁，只记录每一层经过的节点。到达叶子节点之后才对它加锁，分裂时在持有子节点的锁的情况下
+ *    对父节点加锁，沿着 suc 向右移动时先锁住右边的节点再释放当前节点。加锁的顺序总是自底向上、从左到右，因此不会出现死锁，
+ *    同一时刻一个写操作最多只会持有 3 个节点的锁
+ * <br />
+ * 和原始的 B-link 树一样，删除操作只会从叶子节点中移除对应的 key，不会对节点进行合并，
+ * 因为合并需要同时修改相邻的节点以及父节点，会破坏读操作不需要加锁的前提。大量删除之后可以重新构建整棵树来回收空间
+ *
+ * @author : xhliu
+ * @param <K> : B+ 树中键值对存储元素索引的 key
+ * @param <V> : B+ 树中实际存储数据的载体
+ */
+@SuppressWarnings("unchecked")
+public class ConcurrentBPlusTree<K extends Comparable<K>, V> {
+    /**
+     * 节点在某一时刻的不可变的内容，keys 按照递增的顺序排列
+     */
+    static final class Page {
+        private final Object[] keys;
+        private final Object[] values;   // 叶子节点中和 keys 一一对应的 value
+        private final Node[] children;   // 索引节点中的子节点，children[i] 中的 key 位于 [keys[i - 1], keys[i]) 这个区间内
+        private final Object high;       // 这个节点中所有 key 的上界（不包含），为 null 时表示没有上界
+        private final Node suc;          // 同一层中右边的兄弟节点
+
+        private Page(Object[] keys, Object[] values, Node[] children, Object high, Node suc) {
+            this.keys = keys;
+            this.values = values;
+            this.children = children;
+            this.high = high;
+            this.suc = suc;
+        }
+    }
+
+    static final class Node {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final int level; // 节点所在的层，叶子节点为 0
+        private volatile Page page;
+
+        private Node(int level, Page page) {
+            this.level = level;
+            this.page = page;
+        }
+    }
+
+    private static final Object[] EMPTY = new Object[0];
+
+    private final int M;
+
+    private volatile Node root;
+
+    // 多个线程同时插入时，单个原子变量会成为所有线程竞争的热点，因此使用分段的计数器
+    private final LongAdder size = new LongAdder();
+
+    public ConcurrentBPlusTree(int m) {
+        if (m % 2 == 0 || m < 3) {
+            throw new IllegalArgumentException("阶数 M 只能是大于 1 的奇数");
+        }
+
+        this.M = m;
+        this.root = new Node(0, new Page(EMPTY, EMPTY, null, null, null));
+    }
+
+    /**
+     * 当前的元素个数，并发修改时只是一个近似值
+     */
+    public int size() {
+        return size.intValue();
+    }
+
+    public int height() {
+        return root.level;
+    }
+
+    /**
+     * 通过传入的 key 查找对应的 value，整个过程不会加锁，也不会重试
+     *
+     * @param key : 待搜索的 key
+     * @return : 如果能够查找到 key，那么直接返回对应的 value，否则返回 null
+     */
+    public V get(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("key 不能为 null");
+        }
+
+        Node x = root;
+        while (true) {
+            Page p = x.page;
+            if (beyond(p, key)) {
+                x = p.suc;
+                continue;
+            }
+
+            if (x.level == 0) {
+                int idx = indexOf(p, key);
+                return idx >= 0 ? (V) p.values[idx] : null;
+            }
+            x = p.children[childOf(p, key)];
+        }
+    }
+
+    /**
+     * 将对应的键值对 key-value 插入到树中，如果树中已经存在了 key，
+     * 那么将使用这个键值对覆盖树中原有的键值对
+     *
+     * @param key : 键值对对应的 key
+     * @param val : 键值对对应的 value，不能为 null
+     */
+    public void put(K key, V val) {
+        if (key == null || val == null) {
+            throw new IllegalArgumentException("key 和 value 都不能为 null");
+        }
+
+        // 不加锁地向下查找，记录每一层最后经过的节点，分裂时作为查找父节点的起点
+        Node x = root;
+        Node[] path = new Node[x.level + 1];
+        while (x.level > 0) {
+            Page p = x.page;
+            if (beyond(p, key)) {
+                x = p.suc;
+                continue;
+            }
+
+            if (x.level < path.length) path[x.level] = x;
+            x = p.children[childOf(p, key)];
+        }
+
+        x = lockCovering(x, key);
+        Page p = x.page;
+        int idx = indexOf(p, key);
+        if (idx >= 0) {
+            Object[] values = p.values.clone();
+            values[idx] = val;
+            x.page = new Page(p.keys, values, null, p.high, p.suc);
+            x.lock.unlock();
+            return;
+        }
+
+        idx = -idx - 1;
+        Object[] keys = insert(p.keys, idx, key), values = insert(p.values, idx, val);
+        size.increment();
+        if (keys.length < M) {
+            x.page = new Page(keys, values, null, p.high, p.suc);
+            x.lock.unlock();
+            return;
+        }
+
+        // 叶子节点分裂，右边的节点得到后一半的键值对，它的第一个 key 作为分隔 key
+        int mid = M / 2;
+        Node t = new Node(0, new Page(copy(keys, mid, M), copy(values, mid, M), null, p.high, p.suc));
+        x.page = new Page(copy(keys, 0, mid), copy(values, 0, mid), null, keys[mid], t);
+        insertParent(x, keys[mid], t, path);
+    }
+
+    /**
+     * 将节点 x 分裂得到的分隔 key 以及右节点 t 插入到父节点中，调用时持有 x 的锁，返回时所有的锁都已经释放
+     * <br />
+     * 如果父节点同样需要分裂，那么继续对上一层进行处理；如果 x 是根节点，那么创建一个新的根节点
+     */
+    private void insertParent(Node x, Object key, Node t, Node[] path) {
+        while (true) {
+            int level = x.level + 1;
+            Node parent = level < path.length ? path[level] : null;
+
+            if (parent == null) {
+                // x 依旧是根节点时，只有持有 x 的锁的线程才能够替换根节点
+                Node r = root;
+                if (r == x) {
+                    root = new Node(level, new Page(new Object[]{key}, null, new Node[]{x, t}, null, null));
+                    x.lock.unlock();
+                    return;
+                }
+
+                // 其它线程分裂了原来的根节点，但是还没有创建新的根节点，等待它完成
+                if (r.level < level) {
+                    Thread.yield();
+                    continue;
+                }
+
+                parent = descend(r, (K) key, level);
+            }
+
+            parent = lockCovering(parent, (K) key);
+            x.lock.unlock();
+
+            Page p = parent.page;
+            int idx = childOf(p, (K) key);
+            Object[] keys = insert(p.keys, idx, key);
+            Node[] children = insert(p.children, idx + 1, t);
+            if (keys.length < M) {
+                parent.page = new Page(keys, null, children, p.high, p.suc);
+                parent.lock.unlock();
+                return;
+            }
+
+            // 索引节点分裂，中间的 key 上移作为分隔 key，两侧的 key 和子节点平分到两个节点中
+            int mid = M / 2;
+            Node r = new Node(level, new Page(copy(keys, mid + 1, M), null, copy(children, mid + 1, M + 1), p.high, p.suc));
+            parent.page = new Page(copy(keys, 0, mid), null, copy(children, 0, mid + 1), keys[mid], r);
+
+            x = parent;
+            key = keys[mid];
+            t = r;
+        }
+    }
+
+    /**
+     * 通过传入的 key 删除对应的键值对，只会锁住 key 所在的叶子节点
+     *
+     * @param key : 待删除的键值对的 key
+     * @return : 如果删除成功，则返回该 key 对应的 value; 否则，返回 null
+     */
+    public V delete(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("待删除的 key 不能为 null");
+        }
+
+        Node x = lockCovering(descend(root, key, 0), key);
+        try {
+            Page p = x.page;
+            int idx = indexOf(p, key);
+            if (idx < 0) return null;
+
+            x.page = new Page(remove(p.keys, idx), remove(p.values, idx), null, p.high, p.suc);
+            size.decrement();
+            return (V) p.values[idx];
+        } finally {
+            x.lock.unlock();
+        }
+    }
+
+    /**
+     * 不加锁地从节点 x 向下查找到第 level 层中包含 key 的节点
+     */
+    private Node descend(Node x, K key, int level) {
+        while (true) {
+            Page p = x.page;
+            if (beyond(p, key)) x = p.suc;
+            else if (x.level == level) return x;
+            else x = p.children[childOf(p, key)];
+        }
+    }
+
+    /**
+     * 对节点 x 加锁，如果在加锁之前 x 已经分裂，那么沿着 suc 链接向右移动，直到找到包含 key 的节点
+     *
+     * @return : 包含 key 并且已经加锁的节点
+     */
+    private Node lockCovering(Node x, K key) {
+        x.lock.lock();
+        while (beyond(x.page, key)) {
+            Node next = x.page.suc;
+            next.lock.lock();
+            x.lock.unlock();
+            x = next;
+        }
+        return x;
+    }
+
+    /**
+     * key 是否超出了页 p 的范围，此时需要沿着 suc 链接向右查找
+     */
+    private boolean beyond(Page p, K key) {
+        return p.high != null && key.compareTo((K) p.high) >= 0;
+    }
+
+    private int indexOf(Page p, K key) {
+        Object[] keys = p.keys;
+        int lo = 0, hi = keys.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = key.compareTo((K) keys[mid]);
+            if (cmp < 0) hi = mid - 1;
+            else if (cmp > 0) lo = mid + 1;
+            else return mid;
+        }
+
+        return -lo - 1;
+    }
+
+    /**
+     * 索引节点中包含 key 的子节点的位置，即小于等于 key 的分隔 key 的个数
+     */
+    private int childOf(Page p, K key) {
+        int idx = indexOf(p, key);
+        return idx >= 0 ? idx + 1 : -idx - 1;
+    }
+
+    private static <T> T[] insert(T[] a, int idx, T e) {
+        T[] b = Arrays.copyOf(a, a.length + 1);
+        System.arraycopy(a, idx, b, idx + 1, a.length - idx);
+        b[idx] = e;
+        return b;
+    }
+
+    private static Object[] remove(Object[] a, int idx) {
+        Object[] b = new Object[a.length - 1];
+        System.arraycopy(a, 0, b, 0, idx);
+        System.arraycopy(a, idx + 1, b, idx, b.length - idx);
+        return b;
+    }
+
+    private static <T> T[] copy(T[] a, int from, int to) {
+        return Arrays.copyOfRange(a, from, to);
+    }
+
+    /**
+     * 返回一个按照 key 递增的顺序遍历区间 [from, to] 的游标，from 或者 to 为 null 时表示对应的方向上不设边界
+     * <br />
+     * 游标沿着叶子节点的 suc 链接遍历，每次进入一个叶子节点时读取它当前的版本，因此遍历过程中不会加锁，
+     * 也不会抛出并发修改的异常，但是遍历的结果不一定对应某一时刻的完整快照
+     */
+    public Cursor range(K from, K to) {
+        return new Cursor(from, to);
+    }
+
+    public final class Cursor {
+        private final K to;
+        private Page page;
+        private int pos;
+        private Object lastKey; // 已经返回的最大的 key，叶子节点在遍历过程中分裂时用来跳过已经访问过的元素
+        private Object key, value;
+
+        private Cursor(K from, K to) {
+            this.to = to;
+
+            Node x = root;
+            while (true) {
+                Page p = x.page;
+                if (from != null && beyond(p, from)) x = p.suc;
+                else if (x.level == 0) break;
+                else x = p.children[from == null ? 0 : childOf(p, from)];
+            }
+
+            page = x.page;
+            if (from != null) {
+                int idx = indexOf(page, from);
+                pos = idx >= 0 ? idx : -idx - 1;
+            }
+        }
+
+        /**
+         * 将游标移动到下一个元素
+         *
+         * @return : 如果存在下一个元素则返回 true；如果已经遍历完成或者超过了边界，则返回 false
+         */
+        public boolean next() {
+            key = value = null;
+            while (page != null) {
+                if (pos >= page.keys.length) {
+                    page = page.suc == null ? null : page.suc.page;
+                    pos = 0;
+                    continue;
+                }
+
+                Object k = page.keys[pos];
+                if (lastKey != null && ((K) k).compareTo((K) lastKey) <= 0) {
+                    pos++;
+                    continue;
+                }
+                if (to != null && to.compareTo((K) k) < 0) {
+                    page = null;
+                    return false;
+                }
+
+                key = lastKey = k;
+                value = page.values[pos++];
+                return true;
+            }
+
+            return false;
+        }
+
+        public K key() {
+            if (key == null) throw new NoSuchElementException();
+            return (K) key;
+        }
+
+        public V value() {
+            if (key == null) throw new NoSuchElementException();
+            return (V) value;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        final ConcurrentBPlusTree<Integer, Integer> tree = new ConcurrentBPlusTree<>(63);
+        final int n = 1_000_000;
+
+        for (int threads = 1; threads <= Runtime.getRuntime().availableProcessors() * 2; threads *= 2) {
+            final ConcurrentBPlusTree<Integer, Integer> st = new ConcurrentBPlusTree<>(63);
+            final int nThreads = threads;
+            List<Thread> workers = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; ++t) {
+                final int id = t;
+                Thread worker = new Thread(() -> {
+                    Random random = new Random(id);
+                    for (int i = id; i < n; i += nThreads) {
+                        int key = random.nextInt();
+                        st.put(key, key);
+                        st.get(key);
+                    }
+                });
+                workers.add(worker);
+                worker.start();
+            }
+            for (Thread worker : workers) worker.join();
+
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("threads: %2d, size: %d, height: %d, %d ms%n", threads, st.size(), st.height(), millis);
+        }
+
+        for (int i = 1; i <= 100; ++i)
+            tree.put(i, i * i);
+        for (int i = 1; i <= 100; i += 2)
+            tree.delete(i);
+
+        ConcurrentBPlusTree<Integer, Integer>.Cursor cursor = tree.range(90, null);
+        while (cursor.next())
+            System.out.print(cursor.key() + "=" + cursor.value() + " ");
+        System.out.println();
+    }
+}
@@ -0,0 +1,550 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 线程安全的 B 树，每个节点都有一个带版本号的锁（这里直接使用 {@link StampedLock}），通过乐观锁耦合的方式来访问节点：
+ * <br />
+ * 1. 读取节点之前首先获取节点的版本号（乐观读），读取完成之后再检查版本号是否发生了变化，如果发生了变化则从根节点重新开始。
+ *    从父节点进入子节点时，首先获取子节点的版本号，再检查父节点的版本号，这样就保证了读取到的子节点依旧是父节点的子节点 <br />
+ * 2. 写操作同样乐观地向下查找，只有在需要修改节点时，才会将之前获取到的版本号升级为写锁。因此插入只会锁住叶子节点，
+ *    只有在节点分裂、借用或者合并时，才会同时锁住父节点、当前节点以及兄弟节点 <br />
+ * 3. 插入时会在向下查找的过程中预先分裂已经满了的节点，删除时会预先对元素个数达到下限的节点进行重平衡，处理完成之后从根节点重新开始，
+ *    因此分裂、借用和合并只涉及相邻的两层节点。例外是删除内部节点的元素：后继元素从叶子节点上移到内部节点时，
+ *    内部节点到叶子节点之间的整条最左路径都需要加写锁。所有的加锁操作都是非阻塞的，失败时同样从根节点重新开始，因此不会出现死锁
+ * <br />
+ * 由于采用了自顶向下的预先分裂，满节点（M - 1 个元素）在分裂时不包含新插入的元素，分裂得到的两个节点的元素个数分别为
+ * M / 2 和 M / 2 - 1，因此这里的非根节点最少只需要包含 M / 2 - 1 个元素，比 {@link BTree} 少一个
+ *
+ * @author : xhliu
+ * @param <Key> : B 树中键值对存储元素索引的 key
+ * @param <Value> : B 树中实际存储数据的载体
+ */
+@SuppressWarnings("unchecked")
+public class ConcurrentBTree<Key extends Comparable<Key>, Value> {
+    /**
+     * 乐观读取到的节点数据不一致时的返回值，表示需要重新开始
+     */
+    private static final int INCONSISTENT = Integer.MIN_VALUE;
+
+    private static final Object RESTART = new Object();
+
+    private final int M;
+
+    private final int MIN; // 非根节点的最少元素个数
+
+    static final class Node {
+        private final StampedLock latch = new StampedLock();
+        private final boolean leaf;
+
+        private int m; // 当前有效元素的数量
+        private final Object[] keys;
+        private final Object[] values;
+        private final Node[] children;
+
+        private Node(int M, boolean leaf) {
+            this.leaf = leaf;
+            this.keys = new Object[M - 1];
+            this.values = new Object[M - 1];
+            this.children = leaf ? null : new Node[M];
+        }
+    }
+
+    private volatile Node root;
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    public ConcurrentBTree(int m) {
+        if (m % 2 == 0 || m < 5) {
+            throw new IllegalArgumentException("阶数 M 只能是大于 3 的奇数");
+        }
+
+        M = m;
+        MIN = M / 2 - 1;
+        root = new Node(M, true);
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * 树的高度，由于所有的叶子节点都位于同一层，因此只需要沿着最左边的路径查找即可，并发修改时只是一个近似值
+     */
+    public int height() {
+        int h = 0;
+        for (Node x = root; !x.leaf; x = x.children[0]) h++;
+        return h;
+    }
+
+    /**
+     * 通过传入的 key 查找对应的 value，整个过程不会加锁
+     *
+     * @param key : 待搜索的 key
+     * @return : 如果能够查找到 key，那么直接返回对应的 value，否则返回 null
+     */
+    public Value get(Key key) {
+        if (key == null) {
+            throw new IllegalArgumentException("key 不能为 null");
+        }
+
+        restart:
+        while (true) {
+            Node x = root;
+            long s = x.latch.tryOptimisticRead();
+            if (s == 0 || x != root) continue;
+
+            while (true) {
+                int idx = indexOf(x, key);
+                if (idx == INCONSISTENT) continue restart;
+
+                if (idx >= 0) {
+                    Object value = x.values[idx];
+                    if (!x.latch.validate(s)) continue restart;
+                    return (Value) value;
+                }
+
+                if (x.leaf) {
+                    if (!x.latch.validate(s)) continue restart;
+                    return null;
+                }
+
+                Node child = x.children[-idx - 1];
+                if (child == null) continue restart;
+                long cs = child.latch.tryOptimisticRead();
+                if (cs == 0 || !x.latch.validate(s)) continue restart;
+
+                x = child;
+                s = cs;
+            }
+        }
+    }
+
+    /**
+     * 将对应的键值对 key-value 插入到树中，如果树中已经存在了 key，
+     * 那么将使用这个键值对覆盖树中原有的键值对
+     *
+     * @param key   : 键值对对应的 key
+     * @param value : 键值对对应的 value
+     */
+    public void put(Key key, Value value) {
+        if (key == null) {
+            throw new IllegalArgumentException("argument key fot put() is null");
+        }
+
+        restart:
+        while (true) {
+            Node parent = null, x = root;
+            long ps = 0, s = x.latch.tryOptimisticRead();
+            if (s == 0 || x != root) continue;
+
+            while (true) {
+                // 预先分裂已经满了的节点，分裂完成之后重新开始
+                if (x.m == M - 1) {
+                    split(parent, ps, x, s);
+                    continue restart;
+                }
+
+                int idx = indexOf(x, key);
+                if (idx == INCONSISTENT) continue restart;
+
+                // 键值对已经存在，使用当前的键值对覆盖原有的键值对
+                if (idx >= 0) {
+                    long ws = x.latch.tryConvertToWriteLock(s);
+                    if (ws == 0) continue restart;
+                    x.values[idx] = value;
+                    x.latch.unlockWrite(ws);
+                    return;
+                }
+
+                idx = -idx - 1;
+                if (x.leaf) {
+                    long ws = x.latch.tryConvertToWriteLock(s);
+                    if (ws == 0) continue restart;
+                    insertAt(x, idx, key, value, null);
+                    x.latch.unlockWrite(ws);
+                    size.incrementAndGet();
+                    return;
+                }
+
+                Node child = x.children[idx];
+                if (child == null) continue restart;
+                long cs = child.latch.tryOptimisticRead();
+                if (cs == 0 || !x.latch.validate(s)) continue restart;
+
+                parent = x;
+                ps = s;
+                x = child;
+                s = cs;
+            }
+        }
+    }
+
+    /**
+     * 分裂已经满了的节点 x，中间元素插入到父节点中。如果 x 是根节点，则创建一个新的根节点
+     * <br />
+     * 由于父节点在向下查找时没有满，并且加锁时版本号没有发生变化，因此父节点一定能够容纳中间元素
+     *
+     * @param parent : x 的父节点，为 null 时表示 x 是根节点
+     * @param ps     : 读取父节点时获取到的版本号
+     * @param x      : 待分裂的节点
+     * @param s      : 读取 x 时获取到的版本号
+     */
+    private void split(Node parent, long ps, Node x, long s) {
+        long pw = 0;
+        if (parent != null && (pw = parent.latch.tryConvertToWriteLock(ps)) == 0) return;
+
+        long xw = x.latch.tryConvertToWriteLock(s);
+        if (xw == 0) {
+            if (parent != null) parent.latch.unlockWrite(pw);
+            return;
+        }
+
+        int mid = M / 2, n = M - 2 - mid;
+        Node t = new Node(M, x.leaf);
+        System.arraycopy(x.keys, mid + 1, t.keys, 0, n);
+        System.arraycopy(x.values, mid + 1, t.values, 0, n);
+        if (!x.leaf) System.arraycopy(x.children, mid + 1, t.children, 0, n + 1);
+        t.m = n;
+
+        Object key = x.keys[mid], value = x.values[mid];
+        clear(x, mid);
+
+        if (parent == null) {
+            // 持有根节点的写锁时它不会被其它线程替换，因此可以直接修改根节点
+            Node r = new Node(M, false);
+            r.keys[0] = key;
+            r.values[0] = value;
+            r.children[0] = x;
+            r.children[1] = t;
+            r.m = 1;
+            root = r;
+        } else {
+            insertAt(parent, -indexOf(parent, (Key) key) - 1, key, value, t);
+            parent.latch.unlockWrite(pw);
+        }
+        x.latch.unlockWrite(xw);
+    }
+
+    /**
+     * 通过传入的 key 删除对应的键值对
+     *
+     * @param key : 待删除的键值对的 key
+     * @return : 如果删除成功，则返回该 key 对应的 value; 否则，返回 null
+     */
+    public Value delete(Key key) {
+        if (key == null) {
+            throw new IllegalArgumentException("待删除的 key 不能为 null");
+        }
+
+        restart:
+        while (true) {
+            Node parent = null, x = root;
+            long ps = 0, s = x.latch.tryOptimisticRead();
+            int pos = 0;
+            if (s == 0 || x != root) continue;
+
+            while (true) {
+                // 预先重平衡元素个数达到下限的节点，使得之后的删除不会再影响父节点
+                if (parent != null && x.m <= MIN) {
+                    reBalance(parent, ps, pos, x, s);
+                    continue restart;
+                }
+
+                int idx = indexOf(x, key);
+                if (idx == INCONSISTENT) continue restart;
+
+                if (x.leaf) {
+                    if (idx < 0) {
+                        if (!x.latch.validate(s)) continue restart;
+                        return null;
+                    }
+
+                    long ws = x.latch.tryConvertToWriteLock(s);
+                    if (ws == 0) continue restart;
+                    Object value = x.values[idx];
+                    removeAt(x, idx);
+                    x.latch.unlockWrite(ws);
+                    size.decrementAndGet();
+                    return (Value) value;
+                }
+
+                if (idx >= 0) {
+                    Object value = deleteInternal(x, s, idx);
+                    if (value == RESTART) continue restart;
+                    return (Value) value;
+                }
+
+                idx = -idx - 1;
+                Node child = x.children[idx];
+                if (child == null) continue restart;
+                long cs = child.latch.tryOptimisticRead();
+                if (cs == 0 || !x.latch.validate(s)) continue restart;
+
+                parent = x;
+                ps = s;
+                pos = idx;
+                x = child;
+                s = cs;
+            }
+        }
+    }
+
+    /**
+     * 删除内部节点 x 中位置 idx 的元素：沿着后继子树的最左路径找到最小的元素，使用它覆盖待删除的元素，
+     * 然后在叶子节点中删除这个最小元素
+     * <br />
+     * 乐观锁耦合只会检查父节点到子节点的链接，如果只锁住 x 和叶子节点，那么在移动之前检查过 x、移动之后才到达叶子节点的线程
+     * 将无法找到这个后继元素。因此需要自顶向下地将 x 到叶子节点的路径上所有节点的版本号都升级为写锁，
+     * 这样在移动之前读取过路径上任意节点的线程都会在检查版本号时重新开始
+     *
+     * @return : 待删除的元素的 value，如果需要重新开始则返回 RESTART
+     */
+    private Object deleteInternal(Node x, long s, int idx) {
+        Node p = x, y = x.children[idx + 1];
+        int pos = idx + 1;
+        if (y == null) return RESTART;
+        long pst = s, ys = y.latch.tryOptimisticRead();
+        if (ys == 0 || !x.latch.validate(s)) return RESTART;
+
+        List<Node> path = new ArrayList<>();
+        List<Long> stamps = new ArrayList<>();
+        path.add(x);
+        stamps.add(s);
+
+        while (true) {
+            if (y.m <= MIN) {
+                reBalance(p, pst, pos, y, ys);
+                return RESTART;
+            }
+            if (y.leaf) break;
+
+            Node c = y.children[0];
+            if (c == null) return RESTART;
+            long cs = c.latch.tryOptimisticRead();
+            if (cs == 0 || !y.latch.validate(ys)) return RESTART;
+
+            path.add(y);
+            stamps.add(ys);
+            p = y;
+            pst = ys;
+            pos = 0;
+            y = c;
+            ys = cs;
+        }
+
+        path.add(y);
+        stamps.add(ys);
+
+        long[] locks = new long[path.size()];
+        for (int i = 0; i < locks.length; ++i) {
+            locks[i] = path.get(i).latch.tryConvertToWriteLock(stamps.get(i));
+            if (locks[i] == 0) {
+                unlockPath(path, locks, i);
+                return RESTART;
+            }
+        }
+
+        Object value = x.values[idx];
+        x.keys[idx] = y.keys[0];
+        x.values[idx] = y.values[0];
+        removeAt(y, 0);
+
+        unlockPath(path, locks, locks.length);
+        size.decrementAndGet();
+        return value;
+    }
+
+    /**
+     * 自底向上地释放 path 中前 n 个节点的写锁
+     */
+    private void unlockPath(List<Node> path, long[] locks, int n) {
+        for (int i = n - 1; i >= 0; --i)
+            path.get(i).latch.unlockWrite(locks[i]);
+    }
+
+    /**
+     * 对元素个数达到下限的节点 x 进行重平衡，需要同时锁住父节点、x 以及一个兄弟节点：
+     * 如果兄弟节点存在多余的元素，则从兄弟节点借用一个元素；否则，将父节点的分隔元素和两个节点合并成为一个节点。
+     * 如果合并之后根节点不再含有元素，那么合并之后的节点成为新的根节点
+     *
+     * @param parent : x 的父节点
+     * @param ps     : 读取父节点时获取到的版本号
+     * @param pos    : x 在父节点中的位置
+     * @param x      : 待重平衡的节点
+     * @param s      : 读取 x 时获取到的版本号
+     */
+    private void reBalance(Node parent, long ps, int pos, Node x, long s) {
+        long pw = parent.latch.tryConvertToWriteLock(ps);
+        if (pw == 0) return;
+        long xw = x.latch.tryConvertToWriteLock(s);
+        if (xw == 0) {
+            parent.latch.unlockWrite(pw);
+            return;
+        }
+
+        Node sibling = pos > 0 ? parent.children[pos - 1] : parent.children[pos + 1];
+        long sw = sibling.latch.tryWriteLock();
+        if (sw == 0) {
+            x.latch.unlockWrite(xw);
+            parent.latch.unlockWrite(pw);
+            return;
+        }
+
+        if (sibling.m > MIN) {
+            if (pos > 0) reBalanceByLeft(sibling, x, parent, pos);
+            else reBalanceByRight(sibling, x, parent, pos);
+        } else {
+            Node merged = pos > 0 ? sibling : x;
+            merge(parent, pos > 0 ? pos - 1 : pos);
+            if (parent.m == 0 && parent == root) root = merged;
+        }
+
+        sibling.latch.unlockWrite(sw);
+        x.latch.unlockWrite(xw);
+        parent.latch.unlockWrite(pw);
+    }
+
+    /**
+     * 左兄弟节点的最大元素上移成为分隔元素，原有的分隔元素下移成为当前节点的最小元素
+     */
+    private void reBalanceByLeft(Node left, Node cur, Node parent, int pos) {
+        Node child = left.leaf ? null : left.children[left.m];
+        insertAt(cur, 0, parent.keys[pos - 1], parent.values[pos - 1], null);
+        if (!cur.leaf) {
+            cur.children[1] = cur.children[0];
+            cur.children[0] = child;
+        }
+
+        parent.keys[pos - 1] = left.keys[left.m - 1];
+        parent.values[pos - 1] = left.values[left.m - 1];
+        clear(left, left.m - 1);
+    }
+
+    /**
+     * 右兄弟节点的最小元素上移成为分隔元素，原有的分隔元素下移成为当前节点的最大元素
+     */
+    private void reBalanceByRight(Node right, Node cur, Node parent, int pos) {
+        insertAt(cur, cur.m, parent.keys[pos], parent.values[pos], right.leaf ? null : right.children[0]);
+
+        parent.keys[pos] = right.keys[0];
+        parent.values[pos] = right.values[0];
+        if (!right.leaf) System.arraycopy(right.children, 1, right.children, 0, right.m);
+
+        int n = right.m - 1;
+        System.arraycopy(right.keys, 1, right.keys, 0, n);
+        System.arraycopy(right.values, 1, right.values, 0, n);
+        right.keys[n] = right.values[n] = null;
+        if (!right.leaf) right.children[n + 1] = null;
+        right.m = n;
+    }
+
+    /**
+     * 将父节点中位置 idx 的分隔元素，以及它两侧的子节点合并成为左边的子节点
+     */
+    private void merge(Node parent, int idx) {
+        Node left = parent.children[idx], right = parent.children[idx + 1];
+
+        left.keys[left.m] = parent.keys[idx];
+        left.values[left.m] = parent.values[idx];
+        System.arraycopy(right.keys, 0, left.keys, left.m + 1, right.m);
+        System.arraycopy(right.values, 0, left.values, left.m + 1, right.m);
+        if (!left.leaf) System.arraycopy(right.children, 0, left.children, left.m + 1, right.m + 1);
+        left.m += right.m + 1;
+
+        removeAt(parent, idx);
+    }
+
+    /**
+     * 在节点 x 的有效元素 [0, x.m) 中二分查找 key，返回值的约定和 {@link java.util.Arrays#binarySearch} 一致
+     * <br />
+     * 由于乐观读取时节点可能正在被修改，如果读取到了不一致的数据，则返回 INCONSISTENT
+     */
+    private int indexOf(Node x, Key key) {
+        Object[] keys = x.keys;
+        int lo = 0, hi = Math.min(x.m, keys.length) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            Object k = keys[mid];
+            if (k == null) return INCONSISTENT;
+
+            int cmp = key.compareTo((Key) k);
+            if (cmp < 0) hi = mid - 1;
+            else if (cmp > 0) lo = mid + 1;
+            else return mid;
+        }
+
+        return -lo - 1;
+    }
+
+    /**
+     * 在节点 x 的位置 idx 插入一个元素，right 为这个元素右边的子节点
+     */
+    private void insertAt(Node x, int idx, Object key, Object value, Node right) {
+        int n = x.m - idx;
+        System.arraycopy(x.keys, idx, x.keys, idx + 1, n);
+        System.arraycopy(x.values, idx, x.values, idx + 1, n);
+        x.keys[idx] = key;
+        x.values[idx] = value;
+
+        if (!x.leaf) {
+            System.arraycopy(x.children, idx + 1, x.children, idx + 2, n);
+            x.children[idx + 1] = right;
+        }
+        x.m++;
+    }
+
+    /**
+     * 删除节点 x 中位置 idx 的元素以及它右边的子节点
+     */
+    private void removeAt(Node x, int idx) {
+        int n = x.m - idx - 1;
+        System.arraycopy(x.keys, idx + 1, x.keys, idx, n);
+        System.arraycopy(x.values, idx + 1, x.values, idx, n);
+        x.keys[x.m - 1] = x.values[x.m - 1] = null;
+
+        if (!x.leaf) {
+            System.arraycopy(x.children, idx + 2, x.children, idx + 1, n);
+            x.children[x.m] = null;
+        }
+        x.m--;
+    }
+
+    /**
+     * 将节点 x 截断为只包含前 m 个元素
+     */
+    private void clear(Node x, int m) {
+        for (int i = m; i < x.m; ++i)
+            x.keys[i] = x.values[i] = null;
+        if (!x.leaf)
+            for (int i = m + 1; i <= x.m; ++i)
+                x.children[i] = null;
+        x.m = m;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        final ConcurrentBTree<Integer, Integer> tree = new ConcurrentBTree<>(31);
+        final int threads = 8, n = 200_000;
+
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; ++t) {
+            final int id = t;
+            workers[t] = new Thread(() -> {
+                Random random = new Random(id);
+                // 90% 的读操作和 10% 的写操作，每个线程只写入属于自己的 key
+                for (int i = 0; i < n; ++i) {
+                    int key = random.nextInt(n);
+                    if (random.nextInt(10) > 0) tree.get(key);
+                    else if (key % threads == id) tree.put(key, key);
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) worker.join();
+
+        System.out.println("size:    " + tree.size());
+        System.out.println("height:  " + tree.height());
+    }
+}
@@ -0,0 +1,437 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+
+/**
+ * 通过预写日志（WAL）保证修改不会丢失的 {@link BTree}，树本身依旧完全位于内存中：
+ * <br />
+ * 1. 每次 put 或者 delete 都会首先向日志的末尾追加一条记录，然后再修改内存中的树。每条记录的末尾都有一个 CRC32 校验和，
+ *    恢复时遇到校验失败或者不完整的记录，说明这条记录在崩溃时没有被完整地写入，此时将日志截断到这个位置 <br />
+ * 2. 日志刷新到磁盘（fsync）的频率由 syncEvery 决定：为 1 时每次修改在返回之前都会等待日志刷新到磁盘，多个线程同时写入时，
+ *    由其中一个线程完成刷新，其它线程只需要等待它完成（组提交）；为 N 时每 N 条记录刷新一次，崩溃时最多丢失 N - 1 条记录；
+ *    为 0 时只在检查点以及关闭时刷新 <br />
+ * 3. 检查点会将整棵树按照 key 的顺序写入到一个新的快照文件中，然后清空日志。重新打开时首先通过 {@link BTree#bulkLoad}
+ *    从快照中加载整棵树，再重放日志中剩余的记录，因此恢复的时间只和快照的大小以及日志的长度有关
+ * <br />
+ * key 和 value 通过 {@link PagedBTree.Codec} 编码成为固定长度的字节
+ *
+ * @author : xhliu
+ * @param <Key> : B 树中键值对存储元素索引的 key
+ * @param <Value> : B 树中实际存储数据的载体
+ */
+public class DurableBTree<Key extends Comparable<Key>, Value> implements Closeable {
+    private static final String WAL = "wal.log", CHECKPOINT = "checkpoint.dat", CHECKPOINT_TMP = "checkpoint.tmp";
+
+    private static final int CHECKPOINT_MAGIC = 0x42544350;
+
+    private static final byte PUT = 1, DELETE = 2;
+
+    private final Path dir;
+    private final BTree<Key, Value> tree;
+    private final PagedBTree.Codec<Key> keyCodec;
+    private final PagedBTree.Codec<Value> valueCodec;
+
+    private final int syncEvery;       // 每多少条记录刷新一次日志，0 表示只在检查点以及关闭时刷新
+    private final int checkpointEvery; // 每多少条记录进行一次检查点，0 表示只能手动进行检查点
+
+    private final FileChannel wal;
+    private final ByteBuffer record;  // 编码单条记录的缓冲区
+    private final ByteBuffer pending; // 已经追加但是还没有写入文件的记录
+    private final CRC32 crc = new CRC32();
+
+    private long appended;        // 已经追加的记录数，由对象锁保护
+    private long sinceCheckpoint; // 上一次检查点之后追加的记录数，由对象锁保护
+
+    /*
+        组提交的状态，由 syncLock 保护。加锁的顺序只能是先对象锁再 syncLock，刷新日志的线程在获取对象锁之前必须释放 syncLock
+     */
+    private final Object syncLock = new Object();
+    private long durable;   // 已经刷新到磁盘的记录数
+    private boolean syncing; // 是否已经有线程正在刷新日志
+
+    private DurableBTree(Path dir, int m, PagedBTree.Codec<Key> keyCodec, PagedBTree.Codec<Value> valueCodec,
+                         int syncEvery, int checkpointEvery) throws IOException {
+        this.dir = dir;
+        this.tree = new BTree<>(m);
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.syncEvery = syncEvery;
+        this.checkpointEvery = checkpointEvery;
+
+        this.record = ByteBuffer.allocate(1 + keyCodec.size() + valueCodec.size() + Integer.BYTES);
+        this.pending = ByteBuffer.allocate(Math.max(64 * 1024, record.capacity()));
+        this.wal = FileChannel.open(dir.resolve(WAL), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * 打开 dir 目录下的树，如果目录中存在快照以及日志，那么首先加载快照，再重放日志
+     *
+     * @param dir             : 快照以及日志所在的目录
+     * @param m               : B 树的阶数
+     * @param keyCodec        : key 的编解码器
+     * @param valueCodec      : value 的编解码器
+     * @param syncEvery       : 每多少条记录刷新一次日志，为 1 时每次修改都会等待日志刷新到磁盘，为 0 时只在检查点以及关闭时刷新
+     * @param checkpointEvery : 每多少条记录自动进行一次检查点，为 0 时只能通过 {@link #checkpoint()} 手动进行
+     * @return : 恢复完成之后的树，使用完成之后需要调用 {@link #close()}
+     */
+    public static <Key extends Comparable<Key>, Value> DurableBTree<Key, Value>
+    open(Path dir, int m, PagedBTree.Codec<Key> keyCodec, PagedBTree.Codec<Value> valueCodec,
+         int syncEvery, int checkpointEvery) throws IOException {
+        if (syncEvery < 0 || checkpointEvery < 0) {
+            throw new IllegalArgumentException("syncEvery 以及 checkpointEvery 不能为负数");
+        }
+
+        Files.createDirectories(dir);
+        DurableBTree<Key, Value> t = new DurableBTree<>(dir, m, keyCodec, valueCodec, syncEvery, checkpointEvery);
+        try {
+            t.recover();
+            return t;
+        } catch (IOException | RuntimeException e) {
+            t.wal.close();
+            throw e;
+        }
+    }
+
+    public synchronized int size() {
+        return tree.size();
+    }
+
+    public synchronized Value get(Key key) {
+        return tree.get(key);
+    }
+
+    /**
+     * 将对应的键值对 key-value 插入到树中，如果树中已经存在了 key，那么将使用这个键值对覆盖树中原有的键值对
+     * <br />
+     * 如果 syncEvery 为 1，那么方法返回时这次修改已经刷新到了磁盘
+     *
+     * @param key   : 键值对对应的 key
+     * @param value : 键值对对应的 value，不能为 null
+     */
+    public void put(Key key, Value value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("key 和 value 都不能为 null");
+        }
+
+        long lsn;
+        synchronized (this) {
+            lsn = append(PUT, key, value);
+            tree.put(key, value);
+            maybeCheckpoint();
+        }
+        maybeSync(lsn);
+    }
+
+    /**
+     * 通过传入的 key 删除对应的键值对，只有 key 存在时才会写入日志
+     *
+     * @param key : 待删除的键值对的 key
+     * @return : 如果删除成功，则返回该 key 对应的 value; 否则，返回 null
+     */
+    public Value delete(Key key) {
+        if (key == null) {
+            throw new IllegalArgumentException("待删除的 key 不能为 null");
+        }
+
+        long lsn;
+        Value value;
+        synchronized (this) {
+            value = tree.get(key);
+            if (value == null) return null;
+
+            lsn = append(DELETE, key, null);
+            tree.delete(key);
+            maybeCheckpoint();
+        }
+        maybeSync(lsn);
+        return value;
+    }
+
+    /**
+     * 将所有已经追加的记录刷新到磁盘
+     */
+    public void sync() {
+        long lsn;
+        synchronized (this) {
+            lsn = appended;
+        }
+        awaitDurable(lsn);
+    }
+
+    /**
+     * 将整棵树写入到新的快照文件中，然后清空日志。快照首先写入临时文件，刷新到磁盘之后再原子地替换原有的快照，
+     * 替换之后同样需要刷新所在的目录，确认重命名已经持久化之后才能清空日志
+     * <br />
+     * 如果在替换快照之后、清空日志之前发生了崩溃，那么恢复时会在新的快照上重放旧的日志。由于日志中只有覆盖写入的 put
+     * 和 delete，按照顺序重放之后每个 key 的状态都由它的最后一条记录决定，而快照中已经包含了这些记录的结果，因此重放是安全的
+     */
+    public synchronized void checkpoint() {
+        try {
+            Path tmp = dir.resolve(CHECKPOINT_TMP);
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                OutputStream os = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+                DataOutputStream out = new DataOutputStream(os);
+                out.writeInt(CHECKPOINT_MAGIC);
+                out.writeInt(tree.size());
+
+                CRC32 sum = new CRC32();
+                byte[] bytes = new byte[keyCodec.size() + valueCodec.size()];
+                ByteBuffer buf = ByteBuffer.wrap(bytes);
+                BTree<Key, Value>.Cursor cursor = tree.cursor();
+                while (cursor.next()) {
+                    keyCodec.encode(cursor.key(), buf, 0);
+                    valueCodec.encode(cursor.value(), buf, keyCodec.size());
+                    sum.update(bytes, 0, bytes.length);
+                    out.write(bytes);
+                }
+                out.writeInt((int) sum.getValue());
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(tmp, dir.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            // 重命名只修改了目录项，必须在清空日志之前将目录刷新到磁盘，否则崩溃之后可能只保留了清空的日志和旧的快照
+            syncDirectory();
+
+            // 快照中已经包含了所有的记录，清空日志以及还没有写入的缓冲区
+            pending.clear();
+            wal.truncate(0);
+            wal.position(0);
+            wal.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        sinceCheckpoint = 0;
+        synchronized (syncLock) {
+            durable = Math.max(durable, appended);
+            syncLock.notifyAll();
+        }
+    }
+
+    /**
+     * 将快照和日志所在的目录刷新到磁盘，使得其中的文件重命名持久化
+     */
+    private void syncDirectory() throws IOException {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        sync();
+        wal.close();
+    }
+
+    /**
+     * 将一条记录追加到缓冲区中，缓冲区满了之后写入文件
+     *
+     * @return : 这条记录的序号
+     */
+    private long append(byte type, Key key, Value value) {
+        record.clear();
+        record.put(0, type);
+        keyCodec.encode(key, record, 1);
+        int len = 1 + keyCodec.size();
+        if (type == PUT) {
+            valueCodec.encode(value, record, len);
+            len += valueCodec.size();
+        }
+
+        crc.reset();
+        crc.update(record.array(), 0, len);
+        record.putInt(len, (int) crc.getValue());
+        len += Integer.BYTES;
+
+        if (pending.remaining() < len) drain();
+        pending.put(record.array(), 0, len);
+
+        sinceCheckpoint++;
+        return ++appended;
+    }
+
+    /**
+     * 将缓冲区中的记录写入文件，调用方需要持有对象锁
+     */
+    private void drain() {
+        pending.flip();
+        try {
+            while (pending.hasRemaining()) wal.write(pending);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            pending.clear();
+        }
+    }
+
+    private void maybeCheckpoint() {
+        if (checkpointEvery > 0 && sinceCheckpoint >= checkpointEvery) checkpoint();
+    }
+
+    private void maybeSync(long lsn) {
+        if (syncEvery > 0 && lsn % syncEvery == 0) awaitDurable(lsn);
+    }
+
+    /**
+     * 等待序号为 lsn 的记录刷新到磁盘。同一时刻只有一个线程负责刷新，它会将刷新开始时已经追加的所有记录一起刷新，
+     * 其它等待的线程只需要等待它完成，如果它们的记录已经包含在这次刷新中，那么就不需要再单独刷新
+     */
+    private void awaitDurable(long lsn) {
+        while (true) {
+            synchronized (syncLock) {
+                while (syncing && durable < lsn) {
+                    try {
+                        syncLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("等待日志刷新时被中断", e);
+                    }
+                }
+                if (durable >= lsn) return;
+                syncing = true;
+            }
+
+            long target = -1;
+            try {
+                synchronized (this) {
+                    drain();
+                    target = appended;
+                }
+                wal.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                synchronized (syncLock) {
+                    if (target >= 0) durable = Math.max(durable, target);
+                    syncing = false;
+                    syncLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * 加载快照并且重放日志，日志末尾不完整或者校验失败的记录将会被截断
+     */
+    private void recover() throws IOException {
+        Path checkpoint = dir.resolve(CHECKPOINT);
+        if (Files.exists(checkpoint)) loadCheckpoint(checkpoint);
+
+        int ks = keyCodec.size(), vs = valueCodec.size();
+        long valid = 0;
+        byte[] bytes = new byte[record.capacity()];
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        CRC32 sum = new CRC32();
+
+        // 通过单独的输入流读取日志，关闭它不会影响之后追加记录使用的 wal
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(dir.resolve(WAL)), 64 * 1024))) {
+            while (true) {
+                int type = in.read();
+                if (type != PUT && type != DELETE) break;
+
+                int len = type == PUT ? 1 + ks + vs : 1 + ks;
+                bytes[0] = (byte) type;
+                try {
+                    in.readFully(bytes, 1, len - 1 + Integer.BYTES);
+                } catch (EOFException e) {
+                    break;
+                }
+
+                sum.reset();
+                sum.update(bytes, 0, len);
+                if ((int) sum.getValue() != buf.getInt(len)) break;
+
+                Key key = keyCodec.decode(buf, 1);
+                if (type == PUT) tree.put(key, valueCodec.decode(buf, 1 + ks));
+                else tree.delete(key);
+
+                valid += len + Integer.BYTES;
+                sinceCheckpoint++;
+            }
+        }
+
+        // 截断末尾不完整的记录，之后的记录从这里开始追加
+        if (wal.size() > valid) {
+            wal.truncate(valid);
+            wal.force(true);
+        }
+        wal.position(valid);
+    }
+
+    private void loadCheckpoint(Path checkpoint) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(checkpoint), 64 * 1024))) {
+            if (in.readInt() != CHECKPOINT_MAGIC) {
+                throw new IOException("快照文件的格式不正确");
+            }
+
+            final int count = in.readInt();
+            final int ks = keyCodec.size();
+            final byte[] bytes = new byte[ks + valueCodec.size()];
+            final ByteBuffer buf = ByteBuffer.wrap(bytes);
+            final CRC32 sum = new CRC32();
+
+            tree.bulkLoad(new Iterator<BTree.Entry>() {
+                private int read;
+
+                @Override
+                public boolean hasNext() {
+                    return read < count;
+                }
+
+                @Override
+                public BTree.Entry next() {
+                    if (read >= count) throw new NoSuchElementException();
+                    try {
+                        in.readFully(bytes);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    sum.update(bytes, 0, bytes.length);
+                    read++;
+                    return new BTree.Entry(keyCodec.decode(buf, 0), valueCodec.decode(buf, ks), null);
+                }
+            });
+
+            if (in.readInt() != (int) sum.getValue()) {
+                throw new IOException("快照文件的校验和不正确");
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path dir = Files.createTempDirectory("durable-btree");
+
+        try (DurableBTree<Long, Long> tree = open(dir, 31, PagedBTree.LONG, PagedBTree.LONG, 64, 5000)) {
+            for (long i = 1; i <= 12000; ++i)
+                tree.put(i, i * i);
+            for (long i = 1; i <= 3000; ++i)
+                tree.delete(i);
+        }
+
+        // 重新打开时从快照中加载，再重放日志中剩余的记录
+        try (DurableBTree<Long, Long> tree = open(dir, 31, PagedBTree.LONG, PagedBTree.LONG, 64, 5000)) {
+            System.out.println("size:    " + tree.size());
+            System.out.println("100:     " + tree.get(100L));
+            System.out.println("9000:    " + tree.get(9000L));
+        }
+    }
+}
@@ -0,0 +1,407 @@
+import java.util.Arrays;
+
+/**
+ * key 为 long 类型的 B 树，和 {@link BTree} 的结构一致，区别在于每个节点通过几个平行的数组来存储元素，
+ * 而不是为每个键值对单独创建一个 Entry 对象：
+ * <br />
+ * 1. keys 存储节点中有序的 key，key 直接以 long 的形式存储，不需要装箱，比较时也不需要通过 Comparable 进行调用 <br />
+ * 2. values 存储和 key 位于同一位置的 value <br />
+ * 3. children 存储节点的子节点，children[i] 为小于 keys[i] 的区间，children[m] 为大于 keys[m - 1] 的区间，
+ *    叶子节点不存在子节点，因此叶子节点的 children 为 null
+ * <br />
+ * 节点中的有效元素从 0 开始计数，由于不再需要哨兵元素，所以每个位置都对应一个实际的 key
+ *
+ * @author : xhliu
+ * @param <Value> : B 树中实际存储数据的载体
+ */
+@SuppressWarnings("unchecked")
+public class LongBTree<Value> {
+    /**
+     * 删除时用于表示 key 不存在的标记，因为 value 本身可以为 null，所以不能直接使用 null 来表示
+     */
+    private static final Object ABSENT = new Object();
+
+    /**
+     * 默认的阶数，和 BTree 的默认阶数保持一致
+     */
+    public static final int DEFAULT_ORDER = 127;
+
+    private final int M;
+
+    static final class Node {
+        private int m; // 当前有效元素的数量
+
+        /*
+            和 BTree 一样，在处理的过程中允许节点的元素暂时地溢出 M - 1 的上限，因此 keys 和 values 的大小为 M，
+            children 的大小为 M + 1
+         */
+        private final long[] keys;
+        private final Object[] values;
+        private final Node[] children;
+
+        private Node(int M, boolean leaf) {
+            this.keys = new long[M];
+            this.values = new Object[M];
+            this.children = leaf ? null : new Node[M + 1];
+        }
+    }
+
+    private Node root;
+
+    private int height;
+
+    private int size;
+
+    public LongBTree() {
+        this(DEFAULT_ORDER);
+    }
+
+    public LongBTree(int m) {
+        // 和 BTree 一致，强制阶数 M 只能为奇数
+        if (m % 2 == 0 || m < 2) {
+            throw new IllegalArgumentException("阶数 M 只能是大于 1 的奇数");
+        }
+
+        M = m;
+        root = new Node(M, true);
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public int height() {
+        return this.height;
+    }
+
+    /**
+     * 通过传入的 key 查找对应的 value
+     *
+     * @param key : 待搜索的 key
+     * @return : 如果能够查找到 key，那么直接返回对应的 value，否则返回 null
+     */
+    public Value get(long key) {
+        Node x = root;
+        while (true) {
+            int idx = indexOf(x, key);
+            if (idx >= 0) return (Value) x.values[idx];
+            if (x.children == null) return null;
+
+            x = x.children[-idx - 1];
+        }
+    }
+
+    public boolean contains(long key) {
+        Node x = root;
+        while (true) {
+            int idx = indexOf(x, key);
+            if (idx >= 0) return true;
+            if (x.children == null) return false;
+
+            x = x.children[-idx - 1];
+        }
+    }
+
+    /**
+     * 在节点 x 的有效元素 [0, x.m) 中二分查找 key，返回值的约定和 {@link Arrays#binarySearch} 一致：
+     * 如果查找到了 key，返回它所在的位置；否则返回 -(插入位置) - 1，插入位置同时也是 key 所在区间的子节点位置
+     */
+    private int indexOf(Node x, long key) {
+        long[] keys = x.keys;
+        int lo = 0, hi = x.m - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long k = keys[mid];
+            if (key < k) hi = mid - 1;
+            else if (key > k) lo = mid + 1;
+            else return mid;
+        }
+
+        return -lo - 1;
+    }
+
+    /**
+     * 将对应的键值对 key-value 插入到树中，如果树中已经存在了 key，
+     * 那么将使用这个键值对覆盖树中原有的键值对
+     *
+     * @param key   : 键值对对应的 key
+     * @param value : 键值对对应的 value
+     */
+    public void put(long key, Value value) {
+        Node res = insert(root, key, value);
+        size++;
+
+        if (res == null) return;
+        // 插入之后形成了分裂节点，此时树的高度增加，同时需要修改 root 节点指向的对象
+        root = res;
+        height++;
+    }
+
+    /**
+     * 在以 x 为根的子树中插入键值对，插入之后如果节点溢出则对节点进行分裂
+     *
+     * @return : 如果发生了分裂，返回分裂之后只含有一个元素的根节点；否则，返回 null
+     */
+    private Node insert(Node x, long key, Value value) {
+        int idx = indexOf(x, key);
+        // 键值对已经存在，使用当前的键值对覆盖原有的键值对
+        if (idx >= 0) {
+            x.values[idx] = value;
+            size--;
+            return null;
+        }
+
+        idx = -idx - 1;
+        if (x.children == null) {
+            insertAt(x, idx, key, value, null);
+        } else {
+            Node u = insert(x.children[idx], key, value);
+            if (u == null) return null;
+
+            // 分裂得到的左节点依旧位于原来的位置，中间元素和右节点则插入到当前节点的 idx 位置
+            x.children[idx] = u.children[0];
+            insertAt(x, idx, u.keys[0], u.values[0], u.children[1]);
+        }
+
+        if (x.m < M) return null;
+        return split(x);
+    }
+
+    /**
+     * 在节点 x 的位置 idx 插入一个元素，right 为这个元素右边的子节点
+     */
+    private void insertAt(Node x, int idx, long key, Object value, Node right) {
+        int n = x.m - idx;
+        System.arraycopy(x.keys, idx, x.keys, idx + 1, n);
+        System.arraycopy(x.values, idx, x.values, idx + 1, n);
+        x.keys[idx] = key;
+        x.values[idx] = value;
+
+        if (x.children != null) {
+            System.arraycopy(x.children, idx + 1, x.children, idx + 2, n);
+            x.children[idx + 1] = right;
+        }
+        x.m++;
+    }
+
+    /**
+     * 删除节点 x 中位置 idx 的元素以及它右边的子节点
+     */
+    private void removeAt(Node x, int idx) {
+        int n = x.m - idx - 1;
+        System.arraycopy(x.keys, idx + 1, x.keys, idx, n);
+        System.arraycopy(x.values, idx + 1, x.values, idx, n);
+        x.values[x.m - 1] = null;
+
+        if (x.children != null) {
+            System.arraycopy(x.children, idx + 2, x.children, idx + 1, n);
+            x.children[x.m] = null;
+        }
+        x.m--;
+    }
+
+    /**
+     * 对溢出的节点 x 进行分裂，由于 M 是奇数，因此中间的元素将会作为分裂之后的根节点的元素，
+     * 两边的元素则平分到两个子节点中
+     *
+     * @param x : 待分裂的节点 x
+     * @return : 分裂之后的子树的根节点
+     */
+    private Node split(Node x) {
+        int mid = M / 2;
+        Node t = new Node(M, x.children == null);
+        t.m = M - mid - 1;
+
+        // 将 x 中的后半部分的元素放入 t 中
+        System.arraycopy(x.keys, mid + 1, t.keys, 0, t.m);
+        System.arraycopy(x.values, mid + 1, t.values, 0, t.m);
+        if (x.children != null) {
+            System.arraycopy(x.children, mid + 1, t.children, 0, t.m + 1);
+            Arrays.fill(x.children, mid + 1, M + 1, null);
+        }
+
+        Node p = new Node(M, false); // 分裂后形成的根节点
+        p.m = 1;
+        p.keys[0] = x.keys[mid];
+        p.values[0] = x.values[mid];
+        p.children[0] = x;
+        p.children[1] = t;
+
+        Arrays.fill(x.values, mid, M, null);
+        x.m = mid;
+
+        return p;
+    }
+
+    /**
+     * 通过传入的 key 删除对应的键值对
+     *
+     * @param key : 待删除的键值对的 key
+     * @return : 如果删除成功，则返回该 key 对应的 value; 否则，返回 null
+     */
+    public Value delete(long key) {
+        Object value = delete(null, 0, root, key);
+        if (value == ABSENT) return null;
+        size--;
+
+        // 根节点的元素全部被合并到子节点之后，它唯一的子节点成为新的根节点
+        if (root.m == 0 && root.children != null) {
+            root = root.children[0];
+            height--;
+        }
+
+        return (Value) value;
+    }
+
+    /**
+     * 通过传入的父节点和当前处理的节点，按照传入的 key 对对应的键值对进行删除
+     *
+     * @param parent : 当前处理的节点的父节点，特别地，根节点的父节点为 null
+     * @param pos    : 当前处理的节点在父节点中的位置，即 parent.children[pos] == cur
+     * @param cur    : 当前处理的节点
+     * @param key    : 待删除的 key
+     * @return : 如果删除成功，返回 key 对应的 value；否则，返回 ABSENT
+     */
+    private Object delete(Node parent, int pos, Node cur, long key) {
+        Object value;
+        int idx = indexOf(cur, key);
+
+        if (cur.children == null) {
+            if (idx < 0) return ABSENT;
+            value = cur.values[idx];
+            removeAt(cur, idx);
+        } else if (idx < 0) {
+            idx = -idx - 1;
+            value = delete(cur, idx, cur.children[idx], key);
+        } else {
+            /*
+                和 BTree 一样，将待删除的元素和后继子树中的最小元素交换，交换之后后继子树依旧是有序的，
+                待删除的元素一定位于后继子树最左边的叶子节点中
+             */
+            Node min = cur.children[idx + 1];
+            while (min.children != null) min = min.children[0];
+            swap(cur, idx, min, 0);
+
+            value = delete(cur, idx + 1, cur.children[idx + 1], key);
+        }
+
+        if (cur.m < M / 2) reBalance(parent, pos, cur);
+
+        return value;
+    }
+
+    /**
+     * 对元素个数少于 M / 2 的节点进行重平衡，优先从兄弟节点借用一个元素；如果兄弟节点都不存在多余的元素，
+     * 则将父节点的分隔元素和两个节点合并成为一个节点
+     *
+     * @param parent : 当前处理的节点的父节点，父节点为 null 表示当前处理的是根节点
+     * @param pos    : 当前处理的节点在父节点中的位置
+     * @param cur    : 当前的处理节点
+     */
+    private void reBalance(Node parent, int pos, Node cur) {
+        if (parent == null) return;
+
+        Node left = null, right = null;
+        if (pos > 0) left = parent.children[pos - 1];
+        if (pos < parent.m) right = parent.children[pos + 1];
+
+        // 左兄弟节点的最大元素上移成为分隔元素，原有的分隔元素下移成为当前节点的最小元素
+        if (left != null && left.m > M / 2) {
+            Node child = left.children == null ? null : left.children[left.m];
+            insertAt(cur, 0, parent.keys[pos - 1], parent.values[pos - 1], null);
+            if (cur.children != null) {
+                // insertAt 将新元素的右子节点放在位置 1，这里需要的是将原有的子节点整体右移，再放入借用的最左子节点
+                cur.children[1] = cur.children[0];
+                cur.children[0] = child;
+                left.children[left.m] = null;
+            }
+
+            parent.keys[pos - 1] = left.keys[left.m - 1];
+            parent.values[pos - 1] = left.values[left.m - 1];
+            left.values[--left.m] = null;
+            return;
+        }
+
+        // 右兄弟节点的最小元素上移成为分隔元素，原有的分隔元素下移成为当前节点的最大元素
+        if (right != null && right.m > M / 2) {
+            Node child = right.children == null ? null : right.children[0];
+            insertAt(cur, cur.m, parent.keys[pos], parent.values[pos], child);
+
+            parent.keys[pos] = right.keys[0];
+            parent.values[pos] = right.values[0];
+
+            // 由于右兄弟节点被借用了一个元素，因此需要移动右兄弟节点的元素列表以及子节点列表
+            int n = right.m - 1;
+            System.arraycopy(right.keys, 1, right.keys, 0, n);
+            System.arraycopy(right.values, 1, right.values, 0, n);
+            right.values[n] = null;
+            if (right.children != null) {
+                System.arraycopy(right.children, 1, right.children, 0, n + 1);
+                right.children[n + 1] = null;
+            }
+            right.m--;
+            return;
+        }
+
+        if (left != null) merge(parent, pos - 1);
+        else merge(parent, pos);
+    }
+
+    /**
+     * 将父节点中位置 idx 的分隔元素，以及它两侧的子节点合并成为一个节点，合并之后的节点为左边的子节点
+     */
+    private void merge(Node parent, int idx) {
+        Node left = parent.children[idx], right = parent.children[idx + 1];
+
+        left.keys[left.m] = parent.keys[idx];
+        left.values[left.m] = parent.values[idx];
+        System.arraycopy(right.keys, 0, left.keys, left.m + 1, right.m);
+        System.arraycopy(right.values, 0, left.values, left.m + 1, right.m);
+        if (left.children != null)
+            System.arraycopy(right.children, 0, left.children, left.m + 1, right.m + 1);
+        left.m += right.m + 1;
+
+        removeAt(parent, idx);
+    }
+
+    private void swap(Node a, int i, Node b, int j) {
+        long k = a.keys[i];
+        Object v = a.values[i];
+        a.keys[i] = b.keys[j];
+        a.values[i] = b.values[j];
+        b.keys[j] = k;
+        b.values[j] = v;
+    }
+
+    public String toString() {
+        return toString(root, "") + "\n";
+    }
+
+    private String toString(Node h, String indent) {
+        StringBuilder s = new StringBuilder();
+        if (h.children == null) {
+            for (int j = 0; j < h.m; j++)
+                s.append(indent).append(h.keys[j]).append(" ").append(h.values[j]).append("\n");
+        } else {
+            for (int j = 0; j <= h.m; j++) {
+                if (j > 0) s.append(indent).append("(").append(h.keys[j - 1]).append(")\n");
+                s.append(toString(h.children[j], indent + "     "));
+            }
+        }
+        return s.toString();
+    }
+
+    public static void main(String[] args) {
+        LongBTree<String> tree = new LongBTree<>(5);
+        for (long i = 1; i <= 300; ++i)
+            tree.put(i * 1_000_000_007L, "id-" + i);
+        for (long i = 1; i <= 250; ++i)
+            tree.delete(i * 1_000_000_007L);
+
+        System.out.println("id 260:  " + tree.get(260 * 1_000_000_007L));
+        System.out.println("id 100:  " + tree.get(100 * 1_000_000_007L));
+        System.out.println("size:    " + tree.size());
+        System.out.println("height:  " + tree.height());
+        System.out.println(tree);
+    }
+}
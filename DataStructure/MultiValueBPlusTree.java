@@ -0,0 +1,368 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * 一个 key 对应多个 long 类型 id 的 B+ 树，适合作为二级索引：key 为被索引的列，id 为对应的行号
+ * <br />
+ * 每个 key 只会在 {@link BPlusTree} 中存放一个键值对，它的 value 是一个 {@link PostingList}，
+ * 其中的 id 递增地排列，只保存相邻 id 之间的差值，并且使用变长编码，因此相邻的 id 通常只需要 1 到 2 个字节。
+ * 和使用 (key, id) 组合成为复合 key 的方式相比，key 只需要存储一次，也不需要为每个 id 创建一个 Entry
+ *
+ * @author : xhliu
+ * @param <K> : 被索引的 key
+ */
+public class MultiValueBPlusTree<K extends Comparable<K>> {
+    private final BPlusTree<K, PostingList> tree;
+
+    private long entries; // 所有 key 对应的 id 的总数
+
+    public MultiValueBPlusTree(int m) {
+        this.tree = new BPlusTree<>(m);
+    }
+
+    /**
+     * 不同的 key 的数目
+     */
+    public int size() {
+        return tree.size();
+    }
+
+    /**
+     * 所有 (key, id) 对的数目
+     */
+    public long entries() {
+        return entries;
+    }
+
+    /**
+     * 将 id 添加到 key 对应的列表中，id 大于列表中所有的 id 时只需要在末尾追加
+     *
+     * @return : 如果 id 已经存在，返回 false
+     */
+    public boolean add(K key, long id) {
+        if (key == null) {
+            throw new IllegalArgumentException("key 不能为 null");
+        }
+
+        PostingList list = tree.get(key);
+        if (list == null) {
+            list = new PostingList();
+            tree.put(key, list);
+        }
+
+        if (!list.add(id)) return false;
+        entries++;
+        return true;
+    }
+
+    /**
+     * 从 key 对应的列表中移除 id，列表为空时同时删除这个 key
+     *
+     * @return : 如果 id 不存在，返回 false
+     */
+    public boolean remove(K key, long id) {
+        if (key == null) {
+            throw new IllegalArgumentException("待删除的 key 不能为 null");
+        }
+
+        PostingList list = tree.get(key);
+        if (list == null || !list.remove(id)) return false;
+
+        entries--;
+        if (list.size() == 0) tree.delete(key);
+        return true;
+    }
+
+    /**
+     * 删除 key 以及它对应的所有 id
+     *
+     * @return : 被删除的 id 的个数
+     */
+    public int removeAll(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("待删除的 key 不能为 null");
+        }
+
+        PostingList list = tree.get(key);
+        if (list == null) return 0;
+
+        tree.delete(key);
+        entries -= list.size();
+        return list.size();
+    }
+
+    public boolean contains(K key, long id) {
+        PostingList list = tree.get(key);
+        return list != null && list.contains(id);
+    }
+
+    /**
+     * key 对应的 id 的个数
+     */
+    public int count(K key) {
+        PostingList list = tree.get(key);
+        return list == null ? 0 : list.size();
+    }
+
+    /**
+     * 按照递增的顺序遍历 key 对应的所有 id，遍历时直接对编码之后的字节进行解码，不会创建额外的数组
+     */
+    public PrimitiveIterator.OfLong get(K key) {
+        PostingList list = tree.get(key);
+        return list == null ? new PostingList().iterator() : list.iterator();
+    }
+
+    /**
+     * 返回一个按照 key 递增的顺序遍历区间 [from, to] 的游标，见 {@link BPlusTree#range(Comparable, Comparable)}
+     */
+    public Cursor range(K from, K to) {
+        return new Cursor(tree.range(from, to));
+    }
+
+    /**
+     * 按照 key 的顺序遍历的游标，key 对应的 id 只能通过只读的迭代器访问，不会暴露树中保存的 {@link PostingList}，
+     * 因此调用方无法绕过 {@link #add(Comparable, long)} 和 {@link #remove(Comparable, long)} 修改 id 的列表
+     * <br />
+     * 注意：游标创建之后如果进行了修改，那么这个游标将会失效
+     */
+    public final class Cursor {
+        private final BPlusTree<K, PostingList>.Cursor base;
+
+        private Cursor(BPlusTree<K, PostingList>.Cursor base) {
+            this.base = base;
+        }
+
+        /**
+         * 将游标移动到下一个 key
+         *
+         * @return : 如果存在下一个 key 则返回 true；如果已经遍历完成，则返回 false
+         */
+        public boolean next() {
+            return base.next();
+        }
+
+        public K key() {
+            return base.key();
+        }
+
+        /**
+         * 按照递增的顺序遍历当前 key 对应的所有 id
+         */
+        public PrimitiveIterator.OfLong ids() {
+            return base.value().iterator();
+        }
+
+        /**
+         * 当前 key 对应的 id 的个数
+         */
+        public int count() {
+            return base.value().size();
+        }
+
+        /**
+         * 当前 key 对应的 id 编码之后占用的字节数
+         */
+        public int bytes() {
+            return base.value().bytes();
+        }
+    }
+
+    /**
+     * 递增排列的不重复的 long 列表，第一个元素保存它和 Long.MIN_VALUE 的差值，之后的每个元素保存它和前一个元素的差值，
+     * 差值都是正数，按照无符号数进行变长编码：每个字节的低 7 位存放数据，最高位表示后面是否还有字节
+     * <br />
+     * 由于 id 通常是递增分配的，因此添加时大部分情况都是在末尾追加，只需要 O(1) 的时间；
+     * 在中间插入或者删除时只需要修改相邻的两个差值，然后移动后面的字节
+     */
+    private static final class PostingList {
+        private byte[] data = new byte[8];
+        private int length; // data 中有效的字节数
+        private int size;
+        private long last;  // 最后一个元素，用于在末尾追加时计算差值
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * 编码之后占用的字节数
+         */
+        public int bytes() {
+            return length;
+        }
+
+        public long last() {
+            if (size == 0) throw new NoSuchElementException();
+            return last;
+        }
+
+        public boolean add(long id) {
+            if (size == 0 || id > last) {
+                ensure(10);
+                length = write(data, length, id - (size == 0 ? Long.MIN_VALUE : last));
+                last = id;
+                size++;
+                return true;
+            }
+
+            // 找到第一个大于等于 id 的元素 next，将 next - prev 替换为 id - prev 和 next - id
+            int pos = 0;
+            long prev = Long.MIN_VALUE;
+            while (true) {
+                long delta = read(data, pos);
+                long next = prev + delta;
+                if (next == id) return false;
+                if (next > id) {
+                    splice(pos, pos + width(delta), id - prev, next - id);
+                    size++;
+                    return true;
+                }
+
+                pos += width(delta);
+                prev = next;
+            }
+        }
+
+        public boolean remove(long id) {
+            if (size == 0 || id > last) return false;
+
+            // 找到等于 id 的元素，将 id - prev 和 next - id 合并为 next - prev
+            int pos = 0;
+            long prev = Long.MIN_VALUE;
+            while (true) {
+                long delta = read(data, pos);
+                long cur = prev + delta;
+                if (cur > id) return false;
+
+                int end = pos + width(delta);
+                if (cur == id) {
+                    if (end == length) {
+                        length = pos;
+                        last = prev;
+                    } else {
+                        long d = read(data, end);
+                        splice(pos, end + width(d), d + delta);
+                    }
+                    size--;
+                    return true;
+                }
+
+                pos = end;
+                prev = cur;
+            }
+        }
+
+        public boolean contains(long id) {
+            if (size == 0 || id > last) return false;
+            if (id == last) return true;
+
+            PrimitiveIterator.OfLong it = iterator();
+            while (it.hasNext()) {
+                long cur = it.nextLong();
+                if (cur >= id) return cur == id;
+            }
+            return false;
+        }
+
+        public PrimitiveIterator.OfLong iterator() {
+            return new PrimitiveIterator.OfLong() {
+                private int pos;
+                private long prev = Long.MIN_VALUE;
+
+                @Override
+                public boolean hasNext() {
+                    return pos < length;
+                }
+
+                @Override
+                public long nextLong() {
+                    if (pos >= length) throw new NoSuchElementException();
+                    long delta = read(data, pos);
+                    pos += width(delta);
+                    return prev += delta;
+                }
+            };
+        }
+
+        public long[] toArray() {
+            long[] ids = new long[size];
+            PrimitiveIterator.OfLong it = iterator();
+            for (int i = 0; i < size; ++i)
+                ids[i] = it.nextLong();
+            return ids;
+        }
+
+        /**
+         * 将 data[from, to) 替换为 deltas 的编码
+         */
+        private void splice(int from, int to, long... deltas) {
+            int n = 0, removed = to - from;
+            for (long d : deltas) n += width(d);
+
+            ensure(n - removed);
+            System.arraycopy(data, to, data, from + n, length - to);
+            for (long d : deltas) from = write(data, from, d);
+            length += n - removed;
+        }
+
+        private void ensure(int n) {
+            if (length + n > data.length)
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + n));
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(toArray());
+        }
+    }
+
+    /*
+        无符号的变长编码
+     */
+    private static int write(byte[] buf, int pos, long v) {
+        while ((v & ~0x7FL) != 0) {
+            buf[pos++] = (byte) (v & 0x7F | 0x80);
+            v >>>= 7;
+        }
+        buf[pos++] = (byte) v;
+        return pos;
+    }
+
+    private static long read(byte[] buf, int pos) {
+        long v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buf[pos++];
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return v;
+        }
+    }
+
+    private static int width(long v) {
+        return v == 0 ? 1 : (63 - Long.numberOfLeadingZeros(v)) / 7 + 1;
+    }
+
+    public static void main(String[] args) {
+        // 以城市作为二级索引，id 为行号
+        String[] cities = {"Beijing", "Shanghai", "Guangzhou", "Shenzhen", "Hangzhou"};
+        MultiValueBPlusTree<String> index = new MultiValueBPlusTree<>(5);
+        for (long row = 1; row <= 1000000; ++row)
+            index.add(cities[(int) (row % cities.length)], row);
+
+        index.remove("Beijing", 500000);
+        index.add("Beijing", 3);
+
+        System.out.println("keys:     " + index.size());
+        System.out.println("entries:  " + index.entries());
+        System.out.println("Beijing:  " + index.count("Beijing"));
+
+        PrimitiveIterator.OfLong ids = index.get("Beijing");
+        for (int i = 0; i < 5; ++i)
+            System.out.print(ids.nextLong() + " ");
+        System.out.println();
+
+        MultiValueBPlusTree<String>.Cursor cursor = index.range("G", "I");
+        while (cursor.next())
+            System.out.println(cursor.key() + ": " + cursor.count() + " ids in " + cursor.bytes() + " bytes, first " + cursor.ids().nextLong());
+    }
+}
@@ -0,0 +1,570 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * 节点存储在堆外内存中的 B+ 树，key 和 value 通过 {@link PagedBTree.Codec} 编码为固定长度的字节
+ * <br />
+ * 所有的节点都位于若干个较大的直接内存缓冲区（slab）中，每个节点占用固定大小的一段空间，通过 int 类型的节点编号访问。
+ * 因此无论树中有多少元素，垃圾回收器能够看到的只有这些缓冲区对象，不会再有大量长期存活的 Node 和 Entry 对象进入老年代
+ * <br />
+ * 节点的布局为: m | leaf | prev | suc | children[0..M] | keys[0..M) | values[0..M)，其中：<br />
+ * 1. 叶子节点的 keys[i] 和 values[i] 组成一个键值对，prev 和 suc 为相邻的叶子节点 <br />
+ * 2. 索引节点的 children[i] 中的 key 位于 [keys[i - 1], keys[i]) 这个区间内 <br />
+ * 3. 每个节点最多存放 M - 1 个 key，插入时允许暂时地达到 M 个，之后立即进行分裂
+ * <br />
+ * 变长的 key 或者 value 可以使用 {@link PagedBTree#string(int)} 这种带长度前缀的编解码器，存放在最大长度的槽位中
+ * <br />
+ * 被合并的节点会进入空闲链表，之后分裂时优先复用这些节点的空间
+ *
+ * @author : xhliu
+ * @param <K> : B+ 树中键值对存储元素索引的 key
+ * @param <V> : B+ 树中实际存储数据的载体
+ */
+public class OffHeapBPlusTree<K extends Comparable<K>, V> {
+    private static final int NIL = -1;
+
+    private static final int SLAB_BYTES = 4 << 20; // 每个 slab 的目标大小
+
+    private static final int M_OFFSET = 0, LEAF_OFFSET = 4, PREV_OFFSET = 8, SUC_OFFSET = 12, CHILDREN_OFFSET = 16;
+
+    private final int M;
+    private final PagedBTree.Codec<K> keyCodec;
+    private final PagedBTree.Codec<V> valueCodec;
+    private final int keySize, valueSize;
+    private final int keysOffset, valuesOffset, nodeSize;
+
+    private final int slabShift, slabMask; // 节点编号的高位为 slab 的下标，低位为节点在 slab 中的位置
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+    private final byte[] scratch;
+    private final byte[] encoded; // put 时预先编码的 key 和 value，编码失败时不会修改任何节点
+
+    private int allocated; // 已经分配过的节点编号的上界
+    private int freeHead = NIL; // 空闲节点链表，链表的 next 存放在节点的 m 字段中
+    private int nodes;
+
+    private int root;
+    private int height;
+    private int size;
+
+    // 分裂时产生的分隔 key 编码之后的字节，由 insert 返回给上一层
+    private final byte[] splitKey;
+    private boolean replaced;
+
+    public OffHeapBPlusTree(int m, PagedBTree.Codec<K> keyCodec, PagedBTree.Codec<V> valueCodec) {
+        if (m % 2 == 0 || m < 3) {
+            throw new IllegalArgumentException("阶数 M 只能是大于 1 的奇数");
+        }
+
+        this.M = m;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.keySize = keyCodec.size();
+        this.valueSize = valueCodec.size();
+        this.keysOffset = CHILDREN_OFFSET + Integer.BYTES * (M + 1);
+        this.valuesOffset = keysOffset + keySize * M;
+        this.nodeSize = valuesOffset + valueSize * M;
+
+        int perSlab = Integer.highestOneBit(Math.max(1, SLAB_BYTES / nodeSize));
+        this.slabShift = Integer.numberOfTrailingZeros(perSlab);
+        this.slabMask = perSlab - 1;
+        this.scratch = new byte[nodeSize];
+        this.encoded = new byte[keySize + valueSize];
+        this.splitKey = new byte[keySize];
+
+        this.root = allocate(true);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    /**
+     * 当前正在使用的节点的个数
+     */
+    public int nodes() {
+        return nodes;
+    }
+
+    /**
+     * 已经申请的堆外内存的字节数
+     */
+    public long reservedBytes() {
+        return (long) slabs.size() * (slabMask + 1) * nodeSize;
+    }
+
+    public V get(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("key 不能为 null");
+        }
+
+        int x = root;
+        for (int h = 0; h < height; ++h)
+            x = child(x, childOf(x, key));
+
+        int idx = indexOf(x, key);
+        return idx >= 0 ? value(x, idx) : null;
+    }
+
+    public void put(K key, V val) {
+        if (key == null || val == null) {
+            throw new IllegalArgumentException("key 和 value 都不能为 null");
+        }
+
+        // 首先完成编码，编解码器抛出异常时树还没有被修改
+        ByteBuffer buf = ByteBuffer.wrap(encoded);
+        keyCodec.encode(key, buf, 0);
+        valueCodec.encode(val, buf, keySize);
+
+        replaced = false;
+        int t = insert(root, key, 0);
+        if (!replaced) size++;
+        if (t == NIL) return;
+
+        // 根节点发生了分裂，创建新的根节点，树的高度 +1
+        int r = allocate(false);
+        write(r, keysOffset, splitKey, 0, keySize);
+        setChild(r, 0, root);
+        setChild(r, 1, t);
+        setM(r, 1);
+        root = r;
+        height++;
+    }
+
+    /**
+     * 通过传入的 key 删除对应的键值对
+     *
+     * @param key : 待删除的键值对的 key
+     * @return : 如果删除成功，则返回该 key 对应的 value; 否则，返回 null
+     */
+    public V delete(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("待删除的 key 不能为 null");
+        }
+
+        V value = get(key);
+        if (value == null) return null;
+
+        delete(NIL, 0, root, key, 0);
+        size--;
+
+        // 根节点的所有分隔元素都被合并到子节点之后，它唯一的子节点成为新的根节点
+        if (height > 0 && m(root) == 0) {
+            int old = root;
+            root = child(root, 0);
+            free(old);
+            height--;
+        }
+        return value;
+    }
+
+    /**
+     * 在节点 x 的 keys[0, m) 中二分查找 key
+     *
+     * @return : 查找到时返回 key 所在的位置，否则返回 -(插入位置) - 1
+     */
+    private int indexOf(int x, K key) {
+        int lo = 0, hi = m(x) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = key.compareTo(key(x, mid));
+            if (cmp < 0) hi = mid - 1;
+            else if (cmp > 0) lo = mid + 1;
+            else return mid;
+        }
+
+        return -lo - 1;
+    }
+
+    /**
+     * 索引节点 x 中包含 key 的子节点的位置，即小于等于 key 的分隔 key 的个数
+     */
+    private int childOf(int x, K key) {
+        int idx = indexOf(x, key);
+        return idx >= 0 ? idx + 1 : -idx - 1;
+    }
+
+    /**
+     * 将键值对插入到以 x 为根的子树中，键值对已经在 put 中编码到了 encoded 中
+     *
+     * @return : 如果 x 发生了分裂，返回分裂得到的右节点，分隔 key 位于 splitKey 中；否则返回 NIL
+     */
+    private int insert(int x, K key, int h) {
+        int m = m(x);
+        if (h == height) {
+            int idx = indexOf(x, key);
+            if (idx >= 0) {
+                write(x, valuesOffset + idx * valueSize, encoded, keySize, valueSize);
+                replaced = true;
+                return NIL;
+            }
+
+            idx = -idx - 1;
+            moveKeys(x, idx, x, idx + 1, m - idx);
+            moveValues(x, idx, x, idx + 1, m - idx);
+            write(x, keysOffset + idx * keySize, encoded, 0, keySize);
+            write(x, valuesOffset + idx * valueSize, encoded, keySize, valueSize);
+            setM(x, m + 1);
+            return m + 1 < M ? NIL : splitLeaf(x);
+        }
+
+        int c = childOf(x, key);
+        int t = insert(child(x, c), key, h + 1);
+        if (t == NIL) return NIL;
+
+        // 子节点分裂得到的分隔 key 插入到位置 c，右节点成为第 c + 1 个子节点
+        moveKeys(x, c, x, c + 1, m - c);
+        moveChildren(x, c + 1, x, c + 2, m - c);
+        write(x, keysOffset + c * keySize, splitKey, 0, keySize);
+        setChild(x, c + 1, t);
+        setM(x, m + 1);
+        return m + 1 < M ? NIL : splitIndex(x);
+    }
+
+    /**
+     * 分裂已经达到 M 个 key 的叶子节点，x 保留前 M / 2 个键值对，新的叶子节点得到剩余的键值对，
+     * 新节点的第一个 key 作为分隔 key，同时将新节点插入到叶子节点的链表中
+     */
+    private int splitLeaf(int x) {
+        int t = allocate(true);
+        moveKeys(x, M / 2, t, 0, M - M / 2);
+        moveValues(x, M / 2, t, 0, M - M / 2);
+        setM(t, M - M / 2);
+        setM(x, M / 2);
+
+        int suc = suc(x);
+        setSuc(t, suc);
+        if (suc != NIL) setPrev(suc, t);
+        setPrev(t, x);
+        setSuc(x, t);
+
+        read(t, keysOffset, splitKey, keySize);
+        return t;
+    }
+
+    /**
+     * 分裂已经达到 M 个 key 的索引节点，中间的 key 上移作为分隔 key，两侧的 key 和子节点平分到两个节点中
+     */
+    private int splitIndex(int x) {
+        int t = allocate(false);
+        read(x, keysOffset + M / 2 * keySize, splitKey, keySize);
+        moveKeys(x, M / 2 + 1, t, 0, M / 2);
+        moveChildren(x, M / 2 + 1, t, 0, M / 2 + 1);
+        setM(t, M / 2);
+        setM(x, M / 2);
+        return t;
+    }
+
+    /**
+     * 删除以 cur 为根的子树中的 key，删除之后如果 cur 中的元素少于 M / 2，那么对 cur 进行重平衡
+     *
+     * @param parent : cur 的父节点，根节点的父节点为 NIL
+     * @param pos    : cur 在父节点中的位置
+     */
+    private void delete(int parent, int pos, int cur, K key, int h) {
+        if (h == height) {
+            int idx = indexOf(cur, key);
+            int m = m(cur);
+            moveKeys(cur, idx + 1, cur, idx, m - idx - 1);
+            moveValues(cur, idx + 1, cur, idx, m - idx - 1);
+            setM(cur, m - 1);
+        } else {
+            int c = childOf(cur, key);
+            delete(cur, c, child(cur, c), key, h + 1);
+        }
+
+        if (parent != NIL && m(cur) < M / 2) reBalance(parent, pos, cur, h == height);
+    }
+
+    /**
+     * 对元素不足的节点进行重平衡：如果兄弟节点存在多余的元素则借用一个元素，否则和兄弟节点合并
+     */
+    private void reBalance(int parent, int pos, int cur, boolean leaf) {
+        int pm = m(parent);
+        int left = pos > 0 ? child(parent, pos - 1) : NIL;
+        int right = pos < pm ? child(parent, pos + 1) : NIL;
+
+        if (left != NIL && m(left) > M / 2) {
+            borrowFromLeft(parent, pos, left, cur, leaf);
+        } else if (right != NIL && m(right) > M / 2) {
+            borrowFromRight(parent, pos, cur, right, leaf);
+        } else if (left != NIL) {
+            merge(parent, pos, left, cur, leaf);
+        } else {
+            merge(parent, pos + 1, cur, right, leaf);
+        }
+    }
+
+    private void borrowFromLeft(int parent, int pos, int left, int cur, boolean leaf) {
+        int lm = m(left), m = m(cur);
+        moveKeys(cur, 0, cur, 1, m);
+
+        if (leaf) {
+            // 左兄弟节点的最后一个键值对移动到当前节点的最前面，它的 key 成为新的分隔 key
+            moveValues(cur, 0, cur, 1, m);
+            moveKeys(left, lm - 1, cur, 0, 1);
+            moveValues(left, lm - 1, cur, 0, 1);
+            moveKeys(cur, 0, parent, pos - 1, 1);
+        } else {
+            // 分隔 key 下移到当前节点的最前面，左兄弟节点的最后一个子节点成为当前节点的第一个子节点，它的最后一个 key 上移
+            moveChildren(cur, 0, cur, 1, m + 1);
+            moveKeys(parent, pos - 1, cur, 0, 1);
+            moveChildren(left, lm, cur, 0, 1);
+            moveKeys(left, lm - 1, parent, pos - 1, 1);
+        }
+
+        setM(cur, m + 1);
+        setM(left, lm - 1);
+    }
+
+    private void borrowFromRight(int parent, int pos, int cur, int right, boolean leaf) {
+        int rm = m(right), m = m(cur);
+
+        if (leaf) {
+            moveKeys(right, 0, cur, m, 1);
+            moveValues(right, 0, cur, m, 1);
+            moveKeys(right, 1, right, 0, rm - 1);
+            moveValues(right, 1, right, 0, rm - 1);
+            moveKeys(right, 0, parent, pos, 1);
+        } else {
+            moveKeys(parent, pos, cur, m, 1);
+            moveChildren(right, 0, cur, m + 1, 1);
+            moveKeys(right, 0, parent, pos, 1);
+            moveKeys(right, 1, right, 0, rm - 1);
+            moveChildren(right, 1, right, 0, rm);
+        }
+
+        setM(cur, m + 1);
+        setM(right, rm - 1);
+    }
+
+    /**
+     * 将父节点中第 idx 个子节点 right 合并到它的左兄弟节点 left 中，然后删除父节点中分隔它们的 key
+     */
+    private void merge(int parent, int idx, int left, int right, boolean leaf) {
+        int lm = m(left), rm = m(right), pm = m(parent);
+
+        if (leaf) {
+            moveKeys(right, 0, left, lm, rm);
+            moveValues(right, 0, left, lm, rm);
+            setM(left, lm + rm);
+
+            int suc = suc(right);
+            setSuc(left, suc);
+            if (suc != NIL) setPrev(suc, left);
+        } else {
+            // 分隔 key 下移到左节点的末尾，右节点的所有 key 和子节点追加到它的后面
+            moveKeys(parent, idx - 1, left, lm, 1);
+            moveKeys(right, 0, left, lm + 1, rm);
+            moveChildren(right, 0, left, lm + 1, rm + 1);
+            setM(left, lm + rm + 1);
+        }
+
+        moveKeys(parent, idx, parent, idx - 1, pm - idx);
+        moveChildren(parent, idx + 1, parent, idx, pm - idx);
+        setM(parent, pm - 1);
+        free(right);
+    }
+
+    /**
+     * 返回一个按照 key 递增的顺序遍历区间 [from, to] 的游标，from 或者 to 为 null 时表示对应的方向上不设边界
+     * <br />
+     * 注意：游标创建之后如果对树进行了修改，那么这个游标将会失效
+     */
+    public Cursor range(K from, K to) {
+        return new Cursor(from, to);
+    }
+
+    public final class Cursor {
+        private final K to;
+        private int leaf;
+        private int pos;
+        private boolean valid;
+
+        private Cursor(K from, K to) {
+            this.to = to;
+
+            int x = root;
+            for (int h = 0; h < height; ++h)
+                x = child(x, from == null ? 0 : childOf(x, from));
+
+            leaf = x;
+            // pos 指向下一个待访问的键值对，第一次调用 next() 之后才指向当前的键值对
+            if (from == null) pos = -1;
+            else {
+                int idx = indexOf(x, from);
+                pos = (idx >= 0 ? idx : -idx - 1) - 1;
+            }
+        }
+
+        public boolean next() {
+            valid = false;
+            if (leaf == NIL) return false;
+
+            pos++;
+            while (leaf != NIL && pos >= m(leaf)) {
+                leaf = suc(leaf);
+                pos = 0;
+            }
+            if (leaf == NIL) return false;
+
+            if (to != null && to.compareTo(OffHeapBPlusTree.this.key(leaf, pos)) < 0) {
+                leaf = NIL;
+                return false;
+            }
+
+            valid = true;
+            return true;
+        }
+
+        public K key() {
+            if (!valid) throw new NoSuchElementException();
+            return OffHeapBPlusTree.this.key(leaf, pos);
+        }
+
+        public V value() {
+            if (!valid) throw new NoSuchElementException();
+            return OffHeapBPlusTree.this.value(leaf, pos);
+        }
+    }
+
+    /*
+        节点的分配以及释放
+     */
+    private int allocate(boolean leaf) {
+        int x;
+        if (freeHead != NIL) {
+            x = freeHead;
+            freeHead = m(x);
+        } else {
+            x = allocated++;
+            if ((x >>> slabShift) == slabs.size())
+                slabs.add(ByteBuffer.allocateDirect((slabMask + 1) * nodeSize));
+        }
+
+        ByteBuffer buf = buf(x);
+        int off = off(x);
+        buf.putInt(off + M_OFFSET, 0);
+        buf.putInt(off + LEAF_OFFSET, leaf ? 1 : 0);
+        buf.putInt(off + PREV_OFFSET, NIL);
+        buf.putInt(off + SUC_OFFSET, NIL);
+        nodes++;
+        return x;
+    }
+
+    private void free(int x) {
+        setM(x, freeHead);
+        freeHead = x;
+        nodes--;
+    }
+
+    /*
+        节点字段的访问
+     */
+    private ByteBuffer buf(int x) {
+        return slabs.get(x >>> slabShift);
+    }
+
+    private int off(int x) {
+        return (x & slabMask) * nodeSize;
+    }
+
+    private int m(int x) {
+        return buf(x).getInt(off(x) + M_OFFSET);
+    }
+
+    private void setM(int x, int m) {
+        buf(x).putInt(off(x) + M_OFFSET, m);
+    }
+
+    private int suc(int x) {
+        return buf(x).getInt(off(x) + SUC_OFFSET);
+    }
+
+    private void setSuc(int x, int suc) {
+        buf(x).putInt(off(x) + SUC_OFFSET, suc);
+    }
+
+    private void setPrev(int x, int prev) {
+        buf(x).putInt(off(x) + PREV_OFFSET, prev);
+    }
+
+    private int child(int x, int i) {
+        return buf(x).getInt(off(x) + CHILDREN_OFFSET + i * Integer.BYTES);
+    }
+
+    private void setChild(int x, int i, int c) {
+        buf(x).putInt(off(x) + CHILDREN_OFFSET + i * Integer.BYTES, c);
+    }
+
+    private K key(int x, int i) {
+        return keyCodec.decode(buf(x), off(x) + keysOffset + i * keySize);
+    }
+
+    private V value(int x, int i) {
+        return valueCodec.decode(buf(x), off(x) + valuesOffset + i * valueSize);
+    }
+
+    private void moveKeys(int src, int from, int dst, int to, int n) {
+        move(src, keysOffset + from * keySize, dst, keysOffset + to * keySize, n * keySize);
+    }
+
+    private void moveValues(int src, int from, int dst, int to, int n) {
+        move(src, valuesOffset + from * valueSize, dst, valuesOffset + to * valueSize, n * valueSize);
+    }
+
+    private void moveChildren(int src, int from, int dst, int to, int n) {
+        move(src, CHILDREN_OFFSET + from * Integer.BYTES, dst, CHILDREN_OFFSET + to * Integer.BYTES, n * Integer.BYTES);
+    }
+
+    private void read(int x, int offset, byte[] dst, int len) {
+        ByteBuffer b = buf(x);
+        b.position(off(x) + offset);
+        b.get(dst, 0, len);
+    }
+
+    private void write(int x, int offset, byte[] src, int from, int len) {
+        ByteBuffer b = buf(x);
+        b.position(off(x) + offset);
+        b.put(src, from, len);
+    }
+
+    /**
+     * 复制节点中的一段字节，首先完整地读取到临时数组中，因此源区间和目标区间可以重叠
+     */
+    private void move(int src, int srcOff, int dst, int dstOff, int len) {
+        if (len <= 0) return;
+
+        ByteBuffer s = buf(src);
+        s.position(off(src) + srcOff);
+        s.get(scratch, 0, len);
+
+        ByteBuffer d = buf(dst);
+        d.position(off(dst) + dstOff);
+        d.put(scratch, 0, len);
+    }
+
+    public static void main(String[] args) {
+        OffHeapBPlusTree<Long, Long> tree = new OffHeapBPlusTree<>(63, PagedBTree.LONG, PagedBTree.LONG);
+        for (long i = 1; i <= 1000000; ++i)
+            tree.put(i, i * i);
+        for (long i = 1; i <= 500000; ++i)
+            tree.delete(i);
+
+        System.out.println("size:     " + tree.size());
+        System.out.println("height:   " + tree.height());
+        System.out.println("nodes:    " + tree.nodes());
+        System.out.println("reserved: " + tree.reservedBytes() / (1 << 20) + " MB");
+        System.out.println("600000:   " + tree.get(600000L));
+
+        OffHeapBPlusTree<Long, Long>.Cursor cursor = tree.range(999995L, null);
+        while (cursor.next())
+            System.out.print(cursor.key() + " ");
+        System.out.println();
+    }
+}
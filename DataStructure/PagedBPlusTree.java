@@ -0,0 +1,852 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * 存储在文件中的 B+ 树，每个节点都是文件中一个大小为 16KB 的分槽页（slotted page），文件通过 {@link MappedByteBuffer}
+ * 映射到内存中。和 {@link PagedBTree} 一样，第 0 页为文件头，重新打开已有的文件时只需要读取文件头，不需要任何加载的过程
+ * <br />
+ * 和 {@link PagedBTree} 不同，key 和 value 编码之后的长度是可变的，每个页的布局如下：
+ * <pre>
+ *     | type | count | heap | garbage | prev | suc | leftmost | slots[0 .. count) ->   空闲空间   <- records |
+ * </pre>
+ * 1. 槽数组从页头之后开始向后增长，每个槽是 2 个字节的记录偏移量，槽按照 key 的顺序排列，因此可以直接在槽数组上进行二分查找 <br />
+ * 2. 记录从页的末尾开始向前增长，heap 为当前记录区的起始位置，槽数组和记录区之间就是页的空闲空间 <br />
+ * 3. 删除或者覆盖记录时只移除对应的槽，记录占用的空间累加到 garbage 中，
+ *    空闲空间不足而 garbage 足够时首先对页进行整理，只有整理之后依旧放不下时才对页进行分裂 <br />
+ * 4. 叶子节点的记录为 keyLen | key | valueLen | value，prev 和 suc 为相邻叶子节点的页号，组成持久化的叶子节点链表 <br />
+ * 5. 索引节点的记录为 keyLen | key | child，child 中的 key 都大于等于记录中的 key，leftmost 为第一个子节点
+ * <br />
+ * 由于记录的长度不固定，节点的分裂、合并以及重新分配都按照字节数而不是元素个数进行：分裂时两个节点各自得到大约一半的字节；
+ * 删除之后节点的使用空间少于页的 1/4 时，如果能够和兄弟节点合并到一个页中则进行合并，否则在两个节点之间重新平均分配记录
+ * <br />
+ * 注意：和 {@link PagedBTree} 一样，页的修改直接写入映射的内存，只保证 {@link #flush()} 或者 {@link #close()}
+ * 之后文件是完整的，崩溃恢复需要在上层通过预写日志来实现（参考 {@link DurableBTree}）
+ *
+ * @author : xhliu
+ * @param <Key> : B+ 树中键值对存储元素索引的 key
+ * @param <Value> : B+ 树中实际存储数据的载体
+ */
+public class PagedBPlusTree<Key extends Comparable<Key>, Value> implements Closeable {
+
+    /**
+     * 变长的编解码器，编码的结果直接作为记录中的字节
+     */
+    public interface RecordCodec<T> {
+        byte[] encode(T t);
+
+        T decode(ByteBuffer buf, int offset, int length);
+    }
+
+    public static final RecordCodec<Long> LONG = fixed(PagedBTree.LONG);
+
+    public static final RecordCodec<Integer> INTEGER = fixed(PagedBTree.INTEGER);
+
+    /**
+     * UTF-8 编码的字符串，只占用实际需要的字节
+     */
+    public static final RecordCodec<String> STRING = new RecordCodec<String>() {
+        @Override
+        public byte[] encode(String t) {
+            return t.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(ByteBuffer buf, int offset, int length) {
+            byte[] bytes = new byte[length];
+            ByteBuffer b = buf.duplicate();
+            b.position(offset);
+            b.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    /**
+     * 将 {@link PagedBTree} 的定长编解码器转换为变长的编解码器
+     */
+    public static <T> RecordCodec<T> fixed(final PagedBTree.Codec<T> codec) {
+        return new RecordCodec<T>() {
+            @Override
+            public byte[] encode(T t) {
+                ByteBuffer buf = ByteBuffer.allocate(codec.size());
+                codec.encode(t, buf, 0);
+                return buf.array();
+            }
+
+            @Override
+            public T decode(ByteBuffer buf, int offset, int length) {
+                return codec.decode(buf, offset);
+            }
+        };
+    }
+
+    public static final int DEFAULT_PAGE_SIZE = 16 * 1024;
+
+    private static final int MAGIC = 0x42505452;
+
+    // 文件头中各个字段的偏移量
+    private static final int H_MAGIC = 0, H_PAGE_SIZE = 4, H_ROOT = 8, H_HEIGHT = 12, H_SIZE = 16,
+            H_PAGE_COUNT = 20, H_FREE = 24;
+
+    // 页头中各个字段的偏移量，空闲页的位置 4 处记录了下一个空闲页
+    private static final int P_TYPE = 0, P_COUNT = 4, P_HEAP = 8, P_GARBAGE = 12, P_PREV = 16, P_SUC = 20,
+            P_LEFTMOST = 24, HEADER = 28;
+
+    private static final int FREE = 0, LEAF = 1, INDEX = 2;
+
+    private static final int SLOT = 2; // 每个槽占用的字节数
+
+    /*
+        第 0 页为文件头，因此页号 0 不会指向任何节点，可以用来表示空链接
+     */
+    private static final int NULL = 0;
+
+    private static final int SEGMENT_PAGES = 1024;
+
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private ByteBuffer header;
+
+    private final RecordCodec<Key> keyCodec;
+    private final RecordCodec<Value> valueCodec;
+
+    private final int pageSize;
+    private final int capacity;  // 每个页中可以用于槽和记录的字节数
+    private final int maxRecord; // 单条记录（包括它的槽）的最大长度，保证每个页至少能够容纳 4 条记录
+    private final byte[] scratch;
+
+    private int root;
+    private int height;
+    private int size;
+    private int pageCount;
+    private int freeHead;
+
+    // 分裂时产生的分隔 key，由 insert 返回给上一层
+    private byte[] splitKey;
+    private boolean replaced;
+
+    private PagedBPlusTree(FileChannel channel, int pageSize, RecordCodec<Key> keyCodec, RecordCodec<Value> valueCodec) {
+        if (pageSize < 512 || pageSize > 1 << 16) {
+            throw new IllegalArgumentException("页的大小必须位于 [512, 65536]");
+        }
+
+        this.channel = channel;
+        this.pageSize = pageSize;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.capacity = pageSize - HEADER;
+        this.maxRecord = capacity / 4;
+        this.scratch = new byte[pageSize];
+    }
+
+    /**
+     * 以默认的 16KB 页大小打开对应的文件，如果文件不存在或者为空，那么将会创建一棵新的 B+ 树
+     */
+    public static <Key extends Comparable<Key>, Value> PagedBPlusTree<Key, Value>
+    open(Path file, RecordCodec<Key> keyCodec, RecordCodec<Value> valueCodec) throws IOException {
+        return open(file, DEFAULT_PAGE_SIZE, keyCodec, valueCodec);
+    }
+
+    /**
+     * 打开对应的文件，如果文件中已经存在 B+ 树，那么只需要映射文件并读取文件头，就能直接进行读写；
+     * 否则，在文件中创建一棵新的 B+ 树
+     *
+     * @param file       : B+ 树所在的文件
+     * @param pageSize   : 新创建的文件的页大小，打开已有的文件时必须和文件中记录的页大小一致
+     * @param keyCodec   : key 的编解码器
+     * @param valueCodec : value 的编解码器
+     * @return : 打开的 B+ 树，使用完成之后需要调用 {@link #close()}
+     */
+    public static <Key extends Comparable<Key>, Value> PagedBPlusTree<Key, Value>
+    open(Path file, int pageSize, RecordCodec<Key> keyCodec, RecordCodec<Value> valueCodec) throws IOException {
+        boolean exists = Files.exists(file) && Files.size(file) > 0;
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            PagedBPlusTree<Key, Value> tree = new PagedBPlusTree<>(channel, pageSize, keyCodec, valueCodec);
+            if (exists) tree.load();
+            else tree.init();
+            return tree;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void init() {
+        pageCount = 1;
+        ensureMapped(0);
+        header = segments.get(0);
+        header.putInt(H_MAGIC, MAGIC);
+        header.putInt(H_PAGE_SIZE, pageSize);
+
+        root = allocate(LEAF);
+        writeHeader();
+    }
+
+    private void load() throws IOException {
+        ensureMapped(0);
+        header = segments.get(0);
+        if (header.getInt(H_MAGIC) != MAGIC) {
+            throw new IOException("文件不是一个 B+ 树文件");
+        }
+        if (header.getInt(H_PAGE_SIZE) != pageSize) {
+            throw new IOException("文件的页大小为 " + header.getInt(H_PAGE_SIZE) + "，和指定的页大小不一致");
+        }
+
+        root = header.getInt(H_ROOT);
+        height = header.getInt(H_HEIGHT);
+        size = header.getInt(H_SIZE);
+        pageCount = header.getInt(H_PAGE_COUNT);
+        freeHead = header.getInt(H_FREE);
+        ensureMapped(pageCount - 1);
+    }
+
+    private void writeHeader() {
+        header.putInt(H_ROOT, root);
+        header.putInt(H_HEIGHT, height);
+        header.putInt(H_SIZE, size);
+        header.putInt(H_PAGE_COUNT, pageCount);
+        header.putInt(H_FREE, freeHead);
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public int height() {
+        return this.height;
+    }
+
+    /**
+     * 文件中页的数目，包括文件头以及空闲页
+     */
+    public int pageCount() {
+        return this.pageCount;
+    }
+
+    /**
+     * 将所有修改过的页写回到文件中
+     */
+    public void flush() {
+        writeHeader();
+        for (MappedByteBuffer segment : segments)
+            segment.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    /**
+     * 通过传入的 key 查找对应的 value
+     *
+     * @param key : 待搜索的 key
+     * @return : 如果能够查找到 key，那么直接返回对应的 value，否则返回 null
+     */
+    public Value get(Key key) {
+        if (key == null) {
+            throw new IllegalArgumentException("key 不能为 null");
+        }
+
+        int x = root;
+        for (int h = 0; h < height; ++h)
+            x = childAt(x, childOf(x, key));
+
+        int idx = indexOf(x, key);
+        return idx >= 0 ? value(x, idx) : null;
+    }
+
+    /**
+     * 将对应的键值对 key-value 插入到树中，如果树中已经存在了 key，
+     * 那么将使用这个键值对覆盖树中原有的键值对
+     *
+     * @param key   : 键值对对应的 key
+     * @param value : 键值对对应的 value，不能为 null
+     */
+    public void put(Key key, Value value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("key 和 value 都不能为 null");
+        }
+
+        byte[] k = keyCodec.encode(key), v = valueCodec.encode(value);
+        byte[] rec = new byte[2 + k.length + 2 + v.length];
+        if (rec.length + SLOT > maxRecord) {
+            throw new IllegalArgumentException("键值对编码之后的长度超过了 " + (maxRecord - SLOT) + " 个字节");
+        }
+        ByteBuffer.wrap(rec).putShort((short) k.length).put(k).putShort((short) v.length).put(v);
+
+        replaced = false;
+        int r = insert(root, key, rec, 0);
+        if (!replaced) size++;
+
+        if (r != NULL) {
+            // 根节点发生了分裂，创建新的根节点，树的高度 +1
+            int p = allocate(INDEX);
+            buf(p).putInt(off(p) + P_LEFTMOST, root);
+            insertRecord(p, 0, indexRecord(splitKey, r));
+            root = p;
+            height++;
+            splitKey = null;
+        }
+        writeHeader();
+    }
+
+    /**
+     * 在以 x 为根的子树中插入记录 rec，插入之后如果页中放不下则对页进行分裂
+     *
+     * @return : 如果发生了分裂，返回分裂之后右边的节点所在的页，分隔 key 位于 splitKey 中；否则，返回 NULL
+     */
+    private int insert(int x, Key key, byte[] rec, int h) {
+        if (h == height) {
+            int idx = indexOf(x, key);
+            if (idx >= 0) {
+                removeRecord(x, idx);
+                replaced = true;
+            } else {
+                idx = -idx - 1;
+            }
+
+            return insertRecord(x, idx, rec) ? NULL : splitLeaf(x, idx, rec);
+        }
+
+        int c = childOf(x, key);
+        int r = insert(childAt(x, c), key, rec, h + 1);
+        if (r == NULL) return NULL;
+
+        // 分裂得到的右节点位于第 c 个子节点之后，因此对应的记录插入到位置 c
+        byte[] sep = indexRecord(splitKey, r);
+        return insertRecord(x, c, sep) ? NULL : splitIndex(x, c, sep);
+    }
+
+    /**
+     * 将叶子节点 x 的记录以及新的记录 rec 按照字节数平分到 x 以及新的叶子节点中，同时将新节点插入到叶子节点链表中
+     */
+    private int splitLeaf(int x, int idx, byte[] rec) {
+        List<byte[]> records = records(x);
+        records.add(idx, rec);
+        int s = half(records, 1, records.size() - 1);
+
+        int t = allocate(LEAF);
+        rebuild(x, records.subList(0, s));
+        rebuild(t, records.subList(s, records.size()));
+
+        ByteBuffer xb = buf(x), tb = buf(t);
+        int suc = xb.getInt(off(x) + P_SUC);
+        tb.putInt(off(t) + P_PREV, x);
+        tb.putInt(off(t) + P_SUC, suc);
+        if (suc != NULL) buf(suc).putInt(off(suc) + P_PREV, t);
+        xb.putInt(off(x) + P_SUC, t);
+
+        splitKey = keyBytes(records.get(s));
+        return t;
+    }
+
+    /**
+     * 对索引节点进行分裂，位于字节中点的记录上移作为分隔 key，它的子节点成为新节点的 leftmost
+     */
+    private int splitIndex(int x, int idx, byte[] rec) {
+        List<byte[]> records = records(x);
+        records.add(idx, rec);
+        int s = half(records, 0, records.size() - 1);
+        byte[] mid = records.get(s);
+
+        int t = allocate(INDEX);
+        rebuild(x, records.subList(0, s));
+        rebuild(t, records.subList(s + 1, records.size()));
+        buf(t).putInt(off(t) + P_LEFTMOST, indexChild(mid));
+
+        splitKey = keyBytes(mid);
+        return t;
+    }
+
+    /**
+     * 通过传入的 key 删除对应的键值对
+     *
+     * @param key : 待删除的键值对的 key
+     * @return : 如果删除成功，则返回该 key 对应的 value; 否则，返回 null
+     */
+    public Value delete(Key key) {
+        if (key == null) {
+            throw new IllegalArgumentException("待删除的 key 不能为 null");
+        }
+
+        Value value = delete(NULL, 0, root, key, 0);
+        if (value == null) return null;
+        size--;
+
+        // 根节点的分隔 key 全部被合并到子节点之后，它唯一的子节点成为新的根节点
+        while (height > 0 && count(root) == 0) {
+            int old = root;
+            root = childAt(root, 0);
+            height--;
+            free(old);
+        }
+        writeHeader();
+
+        return value;
+    }
+
+    private Value delete(int parent, int pos, int cur, Key key, int h) {
+        Value value;
+        if (h == height) {
+            int idx = indexOf(cur, key);
+            if (idx < 0) return null;
+
+            value = value(cur, idx);
+            removeRecord(cur, idx);
+        } else {
+            int c = childOf(cur, key);
+            value = delete(cur, c, childAt(cur, c), key, h + 1);
+        }
+
+        if (value != null && parent != NULL && used(cur) < capacity / 4)
+            reBalance(parent, pos, cur, h == height);
+
+        return value;
+    }
+
+    /**
+     * 对使用空间不足的节点进行重平衡：如果和一个兄弟节点的记录能够放入同一个页中，那么将它们合并；
+     * 否则，在两个节点之间按照字节数重新平均分配记录，并更新父节点中的分隔 key
+     */
+    private void reBalance(int parent, int pos, int cur, boolean leaf) {
+        int pm = count(parent);
+        if (pm == 0) return; // 父节点只有一个子节点，不存在兄弟节点
+
+        // sep 为分隔 left 和 right 的记录在父节点中的位置
+        int sep = pos > 0 ? pos - 1 : pos;
+        int left = childAt(parent, sep), right = childAt(parent, sep + 1);
+
+        List<byte[]> records = records(left);
+        if (!leaf) records.add(indexRecord(keyBytes(readRecord(parent, sep)), childAt(right, 0)));
+        records.addAll(records(right));
+
+        if (bytes(records, 0, records.size()) <= capacity) {
+            rebuild(left, records);
+            if (leaf) {
+                int suc = buf(right).getInt(off(right) + P_SUC);
+                buf(left).putInt(off(left) + P_SUC, suc);
+                if (suc != NULL) buf(suc).putInt(off(suc) + P_PREV, left);
+            }
+
+            removeRecord(parent, sep);
+            free(right);
+            return;
+        }
+
+        // 叶子节点的分隔 key 为右节点的第一个 key，索引节点则是将位于中点的记录上移
+        int s = half(records, leaf ? 1 : 0, records.size() - 1);
+        byte[] key = keyBytes(records.get(s));
+
+        // 新的分隔 key 可能比原有的更长，父节点放不下时放弃这次重新分配，节点只是暂时地使用率偏低
+        byte[] old = readRecord(parent, sep);
+        removeRecord(parent, sep);
+        if (!insertRecord(parent, sep, indexRecord(key, right))) {
+            insertRecord(parent, sep, old);
+            return;
+        }
+
+        if (leaf) {
+            rebuild(left, records.subList(0, s));
+            rebuild(right, records.subList(s, records.size()));
+        } else {
+            rebuild(left, records.subList(0, s));
+            rebuild(right, records.subList(s + 1, records.size()));
+            buf(right).putInt(off(right) + P_LEFTMOST, indexChild(records.get(s)));
+        }
+    }
+
+    /**
+     * 返回一个按照 key 递增的顺序遍历区间 [from, to] 的游标，from 或者 to 为 null 时表示对应的方向上不设边界，
+     * 游标沿着持久化的 suc 页号遍历叶子节点
+     * <br />
+     * 注意：游标创建之后如果对树进行了修改，那么这个游标将会失效
+     */
+    public Cursor range(Key from, Key to) {
+        return new Cursor(from, to, false);
+    }
+
+    /**
+     * 返回一个按照 key 递减的顺序遍历区间 [from, to] 的游标，游标沿着持久化的 prev 页号遍历叶子节点
+     */
+    public Cursor descendingRange(Key from, Key to) {
+        return new Cursor(from, to, true);
+    }
+
+    public final class Cursor {
+        private final boolean descending;
+        private final Key bound; // 遍历方向上的终止边界，为 null 时表示不存在边界
+
+        private int leaf;
+        private int pos; // 下一个待访问的记录在叶子节点中的位置
+        private int current = -1;
+        private int currentLeaf;
+
+        private Cursor(Key from, Key to, boolean descending) {
+            this.descending = descending;
+            this.bound = descending ? from : to;
+
+            Key start = descending ? to : from;
+            int x = root;
+            for (int h = 0; h < height; ++h)
+                x = childAt(x, start == null ? (descending ? count(x) : 0) : childOf(x, start));
+            leaf = x;
+
+            if (start == null) {
+                pos = descending ? count(x) - 1 : 0;
+                return;
+            }
+
+            // 正向遍历从第一个大于等于 start 的记录开始，反向遍历从最后一个小于等于 start 的记录开始
+            int idx = indexOf(x, start);
+            if (idx >= 0) pos = idx;
+            else pos = descending ? -idx - 2 : -idx - 1;
+        }
+
+        /**
+         * 将游标移动到下一个元素
+         *
+         * @return : 如果存在下一个元素则返回 true；如果已经遍历完成或者超过了边界，则返回 false
+         */
+        public boolean next() {
+            current = -1;
+            while (leaf != NULL && (pos < 0 || pos >= count(leaf))) {
+                leaf = buf(leaf).getInt(off(leaf) + (descending ? P_PREV : P_SUC));
+                if (leaf != NULL) pos = descending ? count(leaf) - 1 : 0;
+            }
+            if (leaf == NULL) return false;
+
+            if (bound != null) {
+                int cmp = PagedBPlusTree.this.key(leaf, pos).compareTo(bound);
+                if (descending ? cmp < 0 : cmp > 0) {
+                    leaf = NULL;
+                    return false;
+                }
+            }
+
+            currentLeaf = leaf;
+            current = pos;
+            pos += descending ? -1 : 1;
+            return true;
+        }
+
+        public Key key() {
+            if (current < 0) throw new NoSuchElementException();
+            return PagedBPlusTree.this.key(currentLeaf, current);
+        }
+
+        public Value value() {
+            if (current < 0) throw new NoSuchElementException();
+            return PagedBPlusTree.this.value(currentLeaf, current);
+        }
+    }
+
+    /**
+     * 在页 x 的槽数组中二分查找 key，返回值的约定和 {@link java.util.Arrays#binarySearch} 一致
+     */
+    private int indexOf(int x, Key key) {
+        int lo = 0, hi = count(x) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = key.compareTo(key(x, mid));
+            if (cmp < 0) hi = mid - 1;
+            else if (cmp > 0) lo = mid + 1;
+            else return mid;
+        }
+
+        return -lo - 1;
+    }
+
+    /**
+     * 索引节点 x 中包含 key 的子节点的位置，即小于等于 key 的分隔 key 的个数
+     */
+    private int childOf(int x, Key key) {
+        int idx = indexOf(x, key);
+        return idx >= 0 ? idx + 1 : -idx - 1;
+    }
+
+    /**
+     * 索引节点 x 的第 c 个子节点，第 0 个子节点为 leftmost，第 c 个子节点位于第 c - 1 条记录中
+     */
+    private int childAt(int x, int c) {
+        if (c == 0) return buf(x).getInt(off(x) + P_LEFTMOST);
+
+        int rec = record(x, c - 1);
+        return buf(x).getInt(rec + 2 + keyLength(x, rec));
+    }
+
+    private Key key(int x, int i) {
+        int rec = record(x, i);
+        return keyCodec.decode(buf(x), rec + 2, keyLength(x, rec));
+    }
+
+    private Value value(int x, int i) {
+        ByteBuffer buf = buf(x);
+        int rec = record(x, i), v = rec + 2 + keyLength(x, rec);
+        return valueCodec.decode(buf, v + 2, buf.getShort(v) & 0xFFFF);
+    }
+
+    /*
+        分槽页的基本操作
+     */
+    private int count(int x) {
+        return buf(x).getInt(off(x) + P_COUNT);
+    }
+
+    /**
+     * 第 i 个槽指向的记录在缓冲区中的位置
+     */
+    private int record(int x, int i) {
+        return off(x) + (buf(x).getShort(off(x) + HEADER + SLOT * i) & 0xFFFF);
+    }
+
+    private int keyLength(int x, int rec) {
+        return buf(x).getShort(rec) & 0xFFFF;
+    }
+
+    private int recordLength(int x, int rec) {
+        ByteBuffer buf = buf(x);
+        int k = 2 + (buf.getShort(rec) & 0xFFFF);
+        if (buf.getInt(off(x) + P_TYPE) == INDEX) return k + 4;
+        return k + 2 + (buf.getShort(rec + k) & 0xFFFF);
+    }
+
+    /**
+     * 槽数组和记录区之间的连续空闲空间
+     */
+    private int freeSpace(int x) {
+        ByteBuffer buf = buf(x);
+        return buf.getInt(off(x) + P_HEAP) - HEADER - SLOT * buf.getInt(off(x) + P_COUNT);
+    }
+
+    /**
+     * 有效的槽和记录占用的字节数
+     */
+    private int used(int x) {
+        return capacity - freeSpace(x) - buf(x).getInt(off(x) + P_GARBAGE);
+    }
+
+    /**
+     * 将记录 rec 插入到页 x 的第 idx 个槽，连续空闲空间不足时首先整理页
+     *
+     * @return : 如果整理之后依旧放不下这条记录，返回 false，页不会被修改
+     */
+    private boolean insertRecord(int x, int idx, byte[] rec) {
+        ByteBuffer buf = buf(x);
+        int base = off(x), need = rec.length + SLOT;
+        if (freeSpace(x) < need) {
+            if (freeSpace(x) + buf.getInt(base + P_GARBAGE) < need) return false;
+            compact(x);
+        }
+
+        int heap = buf.getInt(base + P_HEAP) - rec.length, count = buf.getInt(base + P_COUNT);
+        ByteBuffer d = buf.duplicate();
+        d.position(base + heap);
+        d.put(rec);
+
+        int slots = base + HEADER + SLOT * idx;
+        copy(buf, slots, slots + SLOT, SLOT * (count - idx));
+        buf.putShort(slots, (short) heap);
+        buf.putInt(base + P_HEAP, heap);
+        buf.putInt(base + P_COUNT, count + 1);
+        return true;
+    }
+
+    /**
+     * 移除第 idx 个槽，记录占用的空间累加到 garbage 中，直到下一次整理页时才会被回收
+     */
+    private void removeRecord(int x, int idx) {
+        ByteBuffer buf = buf(x);
+        int base = off(x), count = buf.getInt(base + P_COUNT);
+        buf.putInt(base + P_GARBAGE, buf.getInt(base + P_GARBAGE) + recordLength(x, record(x, idx)));
+
+        int slots = base + HEADER + SLOT * idx;
+        copy(buf, slots + SLOT, slots, SLOT * (count - idx - 1));
+        buf.putInt(base + P_COUNT, count - 1);
+    }
+
+    /**
+     * 整理页 x，将所有有效的记录紧凑地排列到页的末尾，回收 garbage 占用的空间
+     */
+    private void compact(int x) {
+        ByteBuffer buf = buf(x);
+        int base = off(x), count = buf.getInt(base + P_COUNT), heap = pageSize;
+        for (int i = 0; i < count; ++i) {
+            int rec = record(x, i), len = recordLength(x, rec);
+            heap -= len;
+            ByteBuffer s = buf.duplicate();
+            s.position(rec);
+            s.get(scratch, heap, len);
+            buf.putShort(base + HEADER + SLOT * i, (short) heap);
+        }
+
+        ByteBuffer d = buf.duplicate();
+        d.position(base + heap);
+        d.put(scratch, heap, pageSize - heap);
+        buf.putInt(base + P_HEAP, heap);
+        buf.putInt(base + P_GARBAGE, 0);
+    }
+
+    private byte[] readRecord(int x, int i) {
+        int rec = record(x, i);
+        byte[] bytes = new byte[recordLength(x, rec)];
+        ByteBuffer s = buf(x).duplicate();
+        s.position(rec);
+        s.get(bytes);
+        return bytes;
+    }
+
+    private List<byte[]> records(int x) {
+        int count = count(x);
+        List<byte[]> records = new ArrayList<>(count + 1);
+        for (int i = 0; i < count; ++i)
+            records.add(readRecord(x, i));
+        return records;
+    }
+
+    /**
+     * 清空页 x 中的所有记录，然后按照顺序写入 records，页的类型以及链接保持不变
+     */
+    private void rebuild(int x, List<byte[]> records) {
+        ByteBuffer buf = buf(x);
+        int base = off(x);
+        buf.putInt(base + P_COUNT, 0);
+        buf.putInt(base + P_HEAP, pageSize);
+        buf.putInt(base + P_GARBAGE, 0);
+        for (int i = 0; i < records.size(); ++i)
+            insertRecord(x, i, records.get(i));
+    }
+
+    /**
+     * 在 [lo, hi] 中选择一个位置 s，使得 s 之前的记录占用的字节数最接近所有记录的一半
+     */
+    private static int half(List<byte[]> records, int lo, int hi) {
+        int total = bytes(records, 0, records.size()), acc = 0, s = 0;
+        while (s < hi && (s < lo || acc + records.get(s).length + SLOT <= total / 2))
+            acc += records.get(s++).length + SLOT;
+        return s;
+    }
+
+    private static int bytes(List<byte[]> records, int from, int to) {
+        int total = 0;
+        for (int i = from; i < to; ++i)
+            total += records.get(i).length + SLOT;
+        return total;
+    }
+
+    private static byte[] keyBytes(byte[] rec) {
+        int len = (rec[0] & 0xFF) << 8 | rec[1] & 0xFF;
+        byte[] key = new byte[len];
+        System.arraycopy(rec, 2, key, 0, len);
+        return key;
+    }
+
+    private static int indexChild(byte[] rec) {
+        return ByteBuffer.wrap(rec).getInt(rec.length - 4);
+    }
+
+    private static byte[] indexRecord(byte[] key, int child) {
+        return ByteBuffer.allocate(2 + key.length + 4).putShort((short) key.length).put(key).putInt(child).array();
+    }
+
+    private void copy(ByteBuffer buf, int from, int to, int len) {
+        if (len <= 0) return;
+        ByteBuffer s = buf.duplicate(), d = buf.duplicate();
+        s.position(from);
+        s.get(scratch, 0, len);
+        d.position(to);
+        d.put(scratch, 0, len);
+    }
+
+    /*
+        页的分配以及释放
+     */
+    private ByteBuffer buf(int page) {
+        return segments.get(page / SEGMENT_PAGES);
+    }
+
+    private int off(int page) {
+        return (page % SEGMENT_PAGES) * pageSize;
+    }
+
+    /**
+     * 分配一个新的页，优先使用空闲页链表中的页
+     */
+    private int allocate(int type) {
+        int page;
+        if (freeHead != NULL) {
+            page = freeHead;
+            freeHead = buf(page).getInt(off(page) + 4);
+        } else {
+            page = pageCount++;
+            ensureMapped(page);
+        }
+
+        ByteBuffer buf = buf(page);
+        int base = off(page);
+        buf.putInt(base + P_TYPE, type);
+        buf.putInt(base + P_COUNT, 0);
+        buf.putInt(base + P_HEAP, pageSize);
+        buf.putInt(base + P_GARBAGE, 0);
+        buf.putInt(base + P_PREV, NULL);
+        buf.putInt(base + P_SUC, NULL);
+        buf.putInt(base + P_LEFTMOST, NULL);
+        return page;
+    }
+
+    private void free(int page) {
+        ByteBuffer buf = buf(page);
+        buf.putInt(off(page) + P_TYPE, FREE);
+        buf.putInt(off(page) + 4, freeHead);
+        freeHead = page;
+    }
+
+    private void ensureMapped(int page) {
+        try {
+            while (segments.size() <= page / SEGMENT_PAGES) {
+                long position = (long) segments.size() * SEGMENT_PAGES * pageSize;
+                segments.add(channel.map(FileChannel.MapMode.READ_WRITE, position, (long) SEGMENT_PAGES * pageSize));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("映射文件失败", e);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path file = Files.createTempFile("paged-bplus-tree", ".db");
+        try (PagedBPlusTree<String, String> st = PagedBPlusTree.open(file, STRING, STRING)) {
+            for (int i = 0; i < 100000; ++i)
+                st.put("user:" + i, "{\"id\": " + i + ", \"name\": \"" + Integer.toHexString(i * 31) + "\"}");
+            for (int i = 0; i < 100000; i += 2)
+                st.delete("user:" + i);
+        }
+
+        // 重新打开文件，只需要读取文件头，之后直接沿着持久化的叶子节点链表进行遍历
+        try (PagedBPlusTree<String, String> st = PagedBPlusTree.open(file, STRING, STRING)) {
+            System.out.println("size:   " + st.size());
+            System.out.println("height: " + st.height());
+            System.out.println("pages:  " + st.pageCount());
+            System.out.println("user:7  " + st.get("user:7"));
+            System.out.println("user:8  " + st.get("user:8"));
+
+            PagedBPlusTree<String, String>.Cursor cursor = st.descendingRange("user:99990", null);
+            while (cursor.next())
+                System.out.println(cursor.key() + " -> " + cursor.value());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,803 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 存储在文件中的 B 树，树的每个节点都是文件中一个固定大小的页，文件通过 {@link MappedByteBuffer} 映射到内存中，
+ * 因此节点的缓存完全交给操作系统的页缓存来处理
+ * <br />
+ * 文件的第 0 页为文件头，记录了页的大小、阶数、根节点所在的页以及树的高度等信息，因此重新打开一个已经存在的文件时
+ * 只需要读取文件头，不需要重新构建整棵树
+ * <br />
+ * 每个节点页的布局如下，和 {@link LongBTree} 一样，元素从 0 开始计数，不再需要哨兵元素：
+ * <pre>
+ *     | m (4 bytes) | children[0 .. M] (4 bytes * (M + 1)) | keys[0 .. M) | values[0 .. M) |
+ * </pre>
+ * key 和 value 通过 {@link Codec} 编码成为固定长度的字节，为了和 BTree 一样允许节点的元素暂时地溢出 M - 1 的上限，
+ * 每个页都会预留一个元素的空间，阶数 M 由页的大小以及 key、value 编码之后的长度计算得到
+ * <br />
+ * 如果需要限制索引占用的内存，可以在打开文件时指定缓冲池的容量，此时页不再通过内存映射访问，而是由 {@link BufferPool}
+ * 缓存固定数目的页。每次操作访问到的页都会被固定在缓冲池中，操作完成之后再统一解除固定
+ *
+ * @author : xhliu
+ * @param <Key> : B 树中键值对存储元素索引的 key
+ * @param <Value> : B 树中实际存储数据的载体
+ */
+public class PagedBTree<Key extends Comparable<Key>, Value> implements Closeable {
+
+    /**
+     * key 和 value 的编解码器，每个对象编码之后的长度都是固定的 {@link #size()} 个字节
+     */
+    public interface Codec<T> {
+        int size();
+
+        void encode(T t, ByteBuffer buf, int offset);
+
+        T decode(ByteBuffer buf, int offset);
+    }
+
+    public static final Codec<Long> LONG = new Codec<Long>() {
+        @Override
+        public int size() {
+            return Long.BYTES;
+        }
+
+        @Override
+        public void encode(Long t, ByteBuffer buf, int offset) {
+            buf.putLong(offset, t);
+        }
+
+        @Override
+        public Long decode(ByteBuffer buf, int offset) {
+            return buf.getLong(offset);
+        }
+    };
+
+    public static final Codec<Integer> INTEGER = new Codec<Integer>() {
+        @Override
+        public int size() {
+            return Integer.BYTES;
+        }
+
+        @Override
+        public void encode(Integer t, ByteBuffer buf, int offset) {
+            buf.putInt(offset, t);
+        }
+
+        @Override
+        public Integer decode(ByteBuffer buf, int offset) {
+            return buf.getInt(offset);
+        }
+    };
+
+    /**
+     * 最多 maxBytes 个字节（UTF-8 编码）的字符串，编码时首先写入 2 个字节的长度，剩余的空间补 0
+     *
+     * @param maxBytes : 字符串编码之后的最大长度
+     * @return : 对应的编解码器
+     */
+    public static Codec<String> string(final int maxBytes) {
+        if (maxBytes <= 0 || maxBytes > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("字符串的最大长度必须位于 (0, " + Short.MAX_VALUE + "]");
+        }
+
+        return new Codec<String>() {
+            @Override
+            public int size() {
+                return Short.BYTES + maxBytes;
+            }
+
+            @Override
+            public void encode(String t, ByteBuffer buf, int offset) {
+                byte[] bytes = t.getBytes(StandardCharsets.UTF_8);
+                if (bytes.length > maxBytes) {
+                    throw new IllegalArgumentException("字符串编码之后的长度超过了 " + maxBytes + " 个字节");
+                }
+
+                buf.putShort(offset, (short) bytes.length);
+                for (int i = 0; i < maxBytes; ++i)
+                    buf.put(offset + Short.BYTES + i, i < bytes.length ? bytes[i] : 0);
+            }
+
+            @Override
+            public String decode(ByteBuffer buf, int offset) {
+                byte[] bytes = new byte[buf.getShort(offset)];
+                for (int i = 0; i < bytes.length; ++i)
+                    bytes[i] = buf.get(offset + Short.BYTES + i);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+    }
+
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+
+    private static final int MAGIC = 0x42545245;
+
+    // 文件头中各个字段的偏移量
+    private static final int H_MAGIC = 0, H_PAGE_SIZE = 4, H_KEY_SIZE = 8, H_VALUE_SIZE = 12, H_ORDER = 16,
+            H_ROOT = 20, H_HEIGHT = 24, H_SIZE = 28, H_PAGE_COUNT = 32, H_FREE = 36;
+
+    /*
+        第 0 页为文件头，因此页号 0 不会指向任何节点，可以用来表示空链接
+     */
+    private static final int NULL = 0;
+
+    /*
+        文件按照段进行映射，每一段包含固定数目的页，文件增长时只需要映射新增加的段
+     */
+    private static final int SEGMENT_PAGES = 1024;
+
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final BufferPool pool; // 为 null 时表示通过内存映射访问页
+
+    /*
+        使用缓冲池时，当前操作已经固定的页以及它们所在的页帧
+     */
+    private int[] pinnedPages = new int[16];
+    private ByteBuffer[] pinnedFrames = new ByteBuffer[16];
+    private int pinned;
+
+    private ByteBuffer header; // 文件头所在的页，使用缓冲池时它会一直被固定
+
+    private final Codec<Key> keyCodec;
+    private final Codec<Value> valueCodec;
+
+    private final int pageSize;
+    private final int M;
+    private final int keysOffset, valuesOffset; // 页中 keys 和 values 区域的偏移量
+    private final byte[] scratch; // 移动页中的数据时使用的临时空间
+    private final ByteBuffer encoded; // put 时预先编码的 key 和 value，编码失败时不会修改任何页
+
+    private int root;
+    private int height;
+    private int size;
+    private int pageCount;
+    private int freeHead; // 空闲页链表的头，空闲页的位置 4 处记录了下一个空闲页
+
+    private PagedBTree(FileChannel channel, int pageSize, Codec<Key> keyCodec, Codec<Value> valueCodec, int poolPages) {
+        this.channel = channel;
+        this.pageSize = pageSize;
+        this.pool = poolPages > 0 ? new BufferPool(channel, pageSize, poolPages) : null;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+
+        int entrySize = keyCodec.size() + valueCodec.size();
+        // 4 + 4 * (M + 1) + M * entrySize <= pageSize，同时要求 M 为奇数
+        int m = (pageSize - 8) / (4 + entrySize);
+        if (m % 2 == 0) m--;
+        if (m < 3) {
+            throw new IllegalArgumentException("页的大小 " + pageSize + " 无法容纳至少 3 阶的节点");
+        }
+
+        this.M = m;
+        this.keysOffset = 4 + 4 * (M + 1);
+        this.valuesOffset = keysOffset + M * keyCodec.size();
+        this.scratch = new byte[pageSize];
+        this.encoded = ByteBuffer.allocate(entrySize);
+    }
+
+    /**
+     * 以默认的页大小打开对应的文件，如果文件不存在或者为空，那么将会创建一棵新的 B 树
+     */
+    public static <Key extends Comparable<Key>, Value> PagedBTree<Key, Value>
+    open(Path file, Codec<Key> keyCodec, Codec<Value> valueCodec) throws IOException {
+        return open(file, DEFAULT_PAGE_SIZE, keyCodec, valueCodec);
+    }
+
+    /**
+     * 打开对应的文件，如果文件中已经存在 B 树，那么只需要读取文件头，就能直接进行读写；
+     * 否则，在文件中创建一棵新的 B 树
+     *
+     * @param file       : B 树所在的文件
+     * @param pageSize   : 新创建的文件的页大小，打开已有的文件时必须和文件中记录的页大小一致
+     * @param keyCodec   : key 的编解码器
+     * @param valueCodec : value 的编解码器
+     * @return : 打开的 B 树，使用完成之后需要调用 {@link #close()}
+     */
+    public static <Key extends Comparable<Key>, Value> PagedBTree<Key, Value>
+    open(Path file, int pageSize, Codec<Key> keyCodec, Codec<Value> valueCodec) throws IOException {
+        return open(file, pageSize, keyCodec, valueCodec, 0);
+    }
+
+    /**
+     * 打开对应的文件，并且通过容量为 poolPages 的缓冲池来访问文件中的页，缓冲池的容量至少需要能够容纳
+     * 一次修改同时固定的页：每一层最多会访问路径上的节点以及它的两个兄弟节点，插入时树的高度还可能增加 1，
+     * 再加上文件头，即 3 * (树的高度 + 2) + 1 个页。这个下限会随着树的增长而增加，
+     * 每次 put 和 delete 之前都会检查，容量不足时在修改任何页之前抛出 IllegalStateException
+     *
+     * @param poolPages : 缓冲池中页帧的数目，为 0 时表示通过内存映射访问页
+     */
+    public static <Key extends Comparable<Key>, Value> PagedBTree<Key, Value>
+    open(Path file, int pageSize, Codec<Key> keyCodec, Codec<Value> valueCodec, int poolPages) throws IOException {
+        if (poolPages < 0) {
+            throw new IllegalArgumentException("缓冲池的容量不能为负数");
+        }
+        if (poolPages > 0 && poolPages < minPoolPages(0)) {
+            throw new IllegalArgumentException("缓冲池的容量至少为 " + minPoolPages(0));
+        }
+
+        boolean exists = Files.exists(file) && Files.size(file) > 0;
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            PagedBTree<Key, Value> tree = new PagedBTree<>(channel, pageSize, keyCodec, valueCodec, poolPages);
+            if (exists) tree.load();
+            else tree.init();
+            return tree;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void init() {
+        pageCount = 1;
+        header = page0();
+        header.putInt(H_MAGIC, MAGIC);
+        header.putInt(H_PAGE_SIZE, pageSize);
+        header.putInt(H_KEY_SIZE, keyCodec.size());
+        header.putInt(H_VALUE_SIZE, valueCodec.size());
+        header.putInt(H_ORDER, M);
+
+        root = allocate();
+        writeHeader();
+        if (pool != null) release();
+    }
+
+    private void load() throws IOException {
+        header = page0();
+        if (header.getInt(H_MAGIC) != MAGIC) {
+            throw new IOException("文件不是一个 B 树文件");
+        }
+        if (header.getInt(H_PAGE_SIZE) != pageSize || header.getInt(H_KEY_SIZE) != keyCodec.size()
+                || header.getInt(H_VALUE_SIZE) != valueCodec.size() || header.getInt(H_ORDER) != M) {
+            throw new IOException("文件的页格式和当前的编解码器不一致");
+        }
+
+        root = header.getInt(H_ROOT);
+        height = header.getInt(H_HEIGHT);
+        size = header.getInt(H_SIZE);
+        pageCount = header.getInt(H_PAGE_COUNT);
+        freeHead = header.getInt(H_FREE);
+        if (pool == null) ensureMapped(pageCount - 1);
+    }
+
+    private ByteBuffer page0() {
+        if (pool != null) return pool.pin(0);
+
+        ensureMapped(0);
+        return segments.get(0);
+    }
+
+    private void writeHeader() {
+        if (pool != null) pool.markDirty(0);
+        header.putInt(H_ROOT, root);
+        header.putInt(H_HEIGHT, height);
+        header.putInt(H_SIZE, size);
+        header.putInt(H_PAGE_COUNT, pageCount);
+        header.putInt(H_FREE, freeHead);
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public int height() {
+        return this.height;
+    }
+
+    public int order() {
+        return this.M;
+    }
+
+    /**
+     * 使用缓冲池时返回对应的缓冲池，可以通过它读取命中率等统计信息；通过内存映射访问页时返回 null
+     */
+    public BufferPool bufferPool() {
+        return pool;
+    }
+
+    /**
+     * 将所有修改过的页写回到文件中
+     */
+    public void flush() {
+        writeHeader();
+        if (pool != null) {
+            pool.flush();
+            return;
+        }
+
+        for (MappedByteBuffer segment : segments)
+            segment.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    /**
+     * 通过传入的 key 查找对应的 value
+     *
+     * @param key : 待搜索的 key
+     * @return : 如果能够查找到 key，那么直接返回对应的 value，否则返回 null
+     */
+    public Value get(Key key) {
+        if (key == null) {
+            throw new IllegalArgumentException("key 不能为 null");
+        }
+
+        try {
+            int x = root;
+            for (int h = 0; ; ++h) {
+                int idx = indexOf(x, key);
+                if (idx >= 0) return value(x, idx);
+                if (h == height) return null;
+
+                x = child(x, -idx - 1);
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * 将对应的键值对 key-value 插入到树中，如果树中已经存在了 key，
+     * 那么将使用这个键值对覆盖树中原有的键值对
+     *
+     * @param key   : 键值对对应的 key
+     * @param value : 键值对对应的 value，不能为 null
+     */
+    public void put(Key key, Value value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("key 和 value 都不能为 null");
+        }
+
+        // 首先完成编码，编解码器抛出异常时树还没有被修改
+        keyCodec.encode(key, encoded, 0);
+        valueCodec.encode(value, encoded, keyCodec.size());
+        checkPoolCapacity();
+
+        try {
+            int r = insert(root, key, 0);
+            size++;
+
+            if (r != NULL) {
+                /*
+                    根节点发生了分裂，分裂之后的中间元素依旧保留在原根节点的位置 M / 2，
+                    将它移动到新的根节点中，同时树的高度 +1
+                 */
+                int p = allocate();
+                copyEntries(root, M / 2, p, 0, 1);
+                setChild(p, 0, root);
+                setChild(p, 1, r);
+                setM(p, 1);
+
+                root = p;
+                height++;
+            }
+            writeHeader();
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * 在以 x 为根的子树中插入键值对，插入之后如果节点溢出则对节点进行分裂。键值对已经在 put 中编码到了 encoded 中
+     *
+     * @return : 如果发生了分裂，返回分裂之后右边的节点所在的页，中间元素保留在 x 的位置 M / 2；否则，返回 NULL
+     */
+    private int insert(int x, Key key, int h) {
+        int idx = indexOf(x, key);
+        // 键值对已经存在，使用当前的键值对覆盖原有的键值对
+        if (idx >= 0) {
+            writeEncoded(x, idx, true);
+            size--;
+            return NULL;
+        }
+
+        idx = -idx - 1;
+        int m = m(x);
+        if (h == height) {
+            copyEntries(x, idx, x, idx + 1, m - idx);
+            writeEncoded(x, idx, false);
+        } else {
+            int c = child(x, idx);
+            int r = insert(c, key, h + 1);
+            if (r == NULL) return NULL;
+
+            // 子节点分裂之后的中间元素插入到 idx 位置，分裂得到的右节点则作为它的右区间
+            copyEntries(x, idx, x, idx + 1, m - idx);
+            copyEntries(c, M / 2, x, idx, 1);
+            copyChildren(x, idx + 1, x, idx + 2, m - idx);
+            setChild(x, idx + 1, r);
+        }
+        setM(x, ++m);
+
+        if (m < M) return NULL;
+        return split(x, h == height);
+    }
+
+    /**
+     * 对溢出的节点 x 进行分裂，后半部分的元素移动到新的页中，中间元素保留在 x 的位置 M / 2
+     *
+     * @return : 分裂之后右边的节点所在的页
+     */
+    private int split(int x, boolean leaf) {
+        int mid = M / 2, t = allocate();
+        copyEntries(x, mid + 1, t, 0, M - mid - 1);
+        if (!leaf) copyChildren(x, mid + 1, t, 0, M - mid);
+
+        setM(t, M - mid - 1);
+        setM(x, mid);
+        return t;
+    }
+
+    /**
+     * 通过传入的 key 删除对应的键值对
+     *
+     * @param key : 待删除的键值对的 key
+     * @return : 如果删除成功，则返回该 key 对应的 value; 否则，返回 null
+     */
+    public Value delete(Key key) {
+        if (key == null) {
+            throw new IllegalArgumentException("待删除的 key 不能为 null");
+        }
+        checkPoolCapacity();
+
+        try {
+            Value value = delete(NULL, 0, root, key, 0);
+            if (value == null) return null;
+            size--;
+
+            // 根节点的元素全部被合并到子节点之后，它唯一的子节点成为新的根节点
+            if (m(root) == 0 && height > 0) {
+                int old = root;
+                root = child(root, 0);
+                height--;
+                free(old);
+            }
+            writeHeader();
+
+            return value;
+        } finally {
+            release();
+        }
+    }
+
+    private Value delete(int parent, int pos, int cur, Key key, int h) {
+        Value value;
+        int idx = indexOf(cur, key);
+
+        if (h == height) {
+            if (idx < 0) return null;
+            value = value(cur, idx);
+
+            int m = m(cur);
+            copyEntries(cur, idx + 1, cur, idx, m - idx - 1);
+            setM(cur, m - 1);
+        } else if (idx < 0) {
+            idx = -idx - 1;
+            value = delete(cur, idx, child(cur, idx), key, h + 1);
+        } else {
+            // 将待删除的元素和后继子树中的最小元素交换，之后在后继子树中删除它
+            int min = child(cur, idx + 1);
+            for (int i = h + 1; i < height; ++i)
+                min = child(min, 0);
+            swap(cur, idx, min, 0);
+
+            value = delete(cur, idx + 1, child(cur, idx + 1), key, h + 1);
+        }
+
+        if (parent != NULL && m(cur) < M / 2) reBalance(parent, pos, cur, h == height);
+
+        return value;
+    }
+
+    /**
+     * 对元素个数少于 M / 2 的节点进行重平衡，优先从兄弟节点借用一个元素；如果兄弟节点都不存在多余的元素，
+     * 则将父节点的分隔元素和两个节点合并成为一个节点，合并之后空出来的页放入空闲页链表
+     */
+    private void reBalance(int parent, int pos, int cur, boolean leaf) {
+        int pm = m(parent), m = m(cur);
+        int left = pos > 0 ? child(parent, pos - 1) : NULL;
+        int right = pos < pm ? child(parent, pos + 1) : NULL;
+
+        // 左兄弟节点的最大元素上移成为分隔元素，原有的分隔元素下移成为当前节点的最小元素
+        if (left != NULL && m(left) > M / 2) {
+            int lm = m(left);
+            copyEntries(cur, 0, cur, 1, m);
+            copyEntries(parent, pos - 1, cur, 0, 1);
+            copyEntries(left, lm - 1, parent, pos - 1, 1);
+            if (!leaf) {
+                copyChildren(cur, 0, cur, 1, m + 1);
+                setChild(cur, 0, child(left, lm));
+            }
+
+            setM(cur, m + 1);
+            setM(left, lm - 1);
+            return;
+        }
+
+        // 右兄弟节点的最小元素上移成为分隔元素，原有的分隔元素下移成为当前节点的最大元素
+        if (right != NULL && m(right) > M / 2) {
+            int rm = m(right);
+            copyEntries(parent, pos, cur, m, 1);
+            copyEntries(right, 0, parent, pos, 1);
+            copyEntries(right, 1, right, 0, rm - 1);
+            if (!leaf) {
+                setChild(cur, m + 1, child(right, 0));
+                copyChildren(right, 1, right, 0, rm);
+            }
+
+            setM(cur, m + 1);
+            setM(right, rm - 1);
+            return;
+        }
+
+        if (left != NULL) merge(parent, pos - 1, leaf);
+        else merge(parent, pos, leaf);
+    }
+
+    /**
+     * 将父节点中位置 idx 的分隔元素，以及它两侧的子节点合并成为左边的子节点，右边的子节点所在的页将会被释放
+     */
+    private void merge(int parent, int idx, boolean leaf) {
+        int left = child(parent, idx), right = child(parent, idx + 1);
+        int lm = m(left), rm = m(right), pm = m(parent);
+
+        copyEntries(parent, idx, left, lm, 1);
+        copyEntries(right, 0, left, lm + 1, rm);
+        if (!leaf) copyChildren(right, 0, left, lm + 1, rm + 1);
+        setM(left, lm + rm + 1);
+
+        copyEntries(parent, idx + 1, parent, idx, pm - idx - 1);
+        copyChildren(parent, idx + 2, parent, idx + 1, pm - idx - 1);
+        setM(parent, pm - 1);
+
+        free(right);
+    }
+
+    /**
+     * 在页 x 的有效元素 [0, m) 中二分查找 key，返回值的约定和 {@link Arrays#binarySearch} 一致
+     */
+    private int indexOf(int x, Key key) {
+        ByteBuffer buf = buf(x);
+        int base = off(x) + keysOffset, ks = keyCodec.size();
+        int lo = 0, hi = m(x) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = key.compareTo(keyCodec.decode(buf, base + mid * ks));
+            if (cmp < 0) hi = mid - 1;
+            else if (cmp > 0) lo = mid + 1;
+            else return mid;
+        }
+
+        return -lo - 1;
+    }
+
+    /**
+     * 修改操作固定的页会一直保留到操作结束，如果中途缓冲池无法再固定新的页，那么树将停留在修改了一半的状态。
+     * 因此在修改任何页之前检查缓冲池的容量：每一层最多固定路径上的节点以及它的两个兄弟节点，
+     * 插入时树的高度还可能增加 1，再加上一直被固定的文件头
+     */
+    private void checkPoolCapacity() {
+        if (pool == null) return;
+
+        int required = minPoolPages(height);
+        if (pool.capacity() < required) {
+            throw new IllegalStateException("缓冲池的容量 " + pool.capacity() + " 少于高度为 " + height
+                    + " 的树的一次修改需要固定的 " + required + " 个页");
+        }
+    }
+
+    private static int minPoolPages(int height) {
+        return 3 * (height + 2) + 1;
+    }
+
+    /**
+     * 返回页所在的缓冲区，使用缓冲池时，当前操作第一次访问某个页时会将它固定在缓冲池中
+     */
+    private ByteBuffer buf(int page) {
+        if (pool == null) return segments.get(page / SEGMENT_PAGES);
+
+        for (int i = 0; i < pinned; ++i)
+            if (pinnedPages[i] == page) return pinnedFrames[i];
+
+        ByteBuffer frame = pool.pin(page);
+        if (pinned == pinnedPages.length) {
+            pinnedPages = Arrays.copyOf(pinnedPages, pinned * 2);
+            pinnedFrames = Arrays.copyOf(pinnedFrames, pinned * 2);
+        }
+        pinnedPages[pinned] = page;
+        pinnedFrames[pinned++] = frame;
+        return frame;
+    }
+
+    /**
+     * 返回即将被修改的页所在的缓冲区，使用缓冲池时会将这个页标记为脏页
+     */
+    private ByteBuffer writable(int page) {
+        ByteBuffer buf = buf(page);
+        if (pool != null) pool.markDirty(page);
+        return buf;
+    }
+
+    /**
+     * 解除当前操作固定的所有页
+     */
+    private void release() {
+        for (int i = 0; i < pinned; ++i) {
+            pool.unpin(pinnedPages[i]);
+            pinnedFrames[i] = null;
+        }
+        pinned = 0;
+    }
+
+    private int off(int page) {
+        return pool == null ? (page % SEGMENT_PAGES) * pageSize : 0;
+    }
+
+    private int m(int page) {
+        return buf(page).getInt(off(page));
+    }
+
+    private void setM(int page, int m) {
+        writable(page).putInt(off(page), m);
+    }
+
+    private int child(int page, int i) {
+        return buf(page).getInt(off(page) + 4 + 4 * i);
+    }
+
+    private void setChild(int page, int i, int child) {
+        writable(page).putInt(off(page) + 4 + 4 * i, child);
+    }
+
+    private int keyAt(int page, int i) {
+        return off(page) + keysOffset + i * keyCodec.size();
+    }
+
+    private int valueAt(int page, int i) {
+        return off(page) + valuesOffset + i * valueCodec.size();
+    }
+
+    private Value value(int page, int i) {
+        return valueCodec.decode(buf(page), valueAt(page, i));
+    }
+
+    /**
+     * 将页 src 中从 from 开始的 n 个元素（包括 key 和 value）复制到页 dst 的 to 位置，两个区域可以重叠
+     */
+    private void copyEntries(int src, int from, int dst, int to, int n) {
+        if (n <= 0) return;
+        copy(src, keyAt(src, from), dst, keyAt(dst, to), n * keyCodec.size());
+        copy(src, valueAt(src, from), dst, valueAt(dst, to), n * valueCodec.size());
+    }
+
+    private void copyChildren(int src, int from, int dst, int to, int n) {
+        if (n <= 0) return;
+        copy(src, off(src) + 4 + 4 * from, dst, off(dst) + 4 + 4 * to, 4 * n);
+    }
+
+    private void copy(int src, int srcOffset, int dst, int dstOffset, int len) {
+        ByteBuffer s = buf(src).duplicate(), d = writable(dst).duplicate();
+        s.position(srcOffset);
+        s.get(scratch, 0, len);
+        d.position(dstOffset);
+        d.put(scratch, 0, len);
+    }
+
+    /**
+     * 将 put 中预先编码的键值对写入页 x 的位置 i，valueOnly 为 true 时只写入 value
+     */
+    private void writeEncoded(int x, int i, boolean valueOnly) {
+        ByteBuffer s = encoded.duplicate(), d = writable(x).duplicate();
+        int ks = keyCodec.size();
+        if (!valueOnly) {
+            s.limit(ks);
+            d.position(keyAt(x, i));
+            d.put(s);
+        }
+
+        s.limit(ks + valueCodec.size());
+        s.position(ks);
+        d.position(valueAt(x, i));
+        d.put(s);
+    }
+
+    private void swap(int a, int i, int b, int j) {
+        Key k = keyCodec.decode(buf(a), keyAt(a, i));
+        Value v = value(a, i);
+        copyEntries(b, j, a, i, 1);
+        keyCodec.encode(k, writable(b), keyAt(b, j));
+        valueCodec.encode(v, writable(b), valueAt(b, j));
+    }
+
+    /**
+     * 分配一个新的页，优先使用空闲页链表中的页
+     */
+    private int allocate() {
+        int page;
+        if (freeHead != NULL) {
+            page = freeHead;
+            freeHead = buf(page).getInt(off(page) + 4);
+        } else {
+            page = pageCount++;
+            if (pool == null) ensureMapped(page);
+        }
+
+        setM(page, 0);
+        return page;
+    }
+
+    private void free(int page) {
+        writable(page).putInt(off(page) + 4, freeHead);
+        setM(page, 0);
+        freeHead = page;
+    }
+
+    private void ensureMapped(int page) {
+        try {
+            while (segments.size() <= page / SEGMENT_PAGES) {
+                long position = (long) segments.size() * SEGMENT_PAGES * pageSize;
+                segments.add(channel.map(FileChannel.MapMode.READ_WRITE, position, (long) SEGMENT_PAGES * pageSize));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("映射文件失败", e);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path file = Files.createTempFile("paged-btree", ".db");
+        try (PagedBTree<String, String> st = PagedBTree.open(file, 512, string(32), string(16))) {
+            st.put("www.cs.princeton.edu", "128.112.136.12");
+            st.put("www.cs.princeton.edu", "128.112.136.11");
+            st.put("www.princeton.edu", "128.112.128.15");
+            st.put("www.yale.edu", "130.132.143.21");
+            st.put("www.simpsons.com", "209.052.165.60");
+            st.put("www.apple.com", "17.112.152.32");
+            st.put("www.amazon.com", "207.171.182.16");
+            st.put("www.ebay.com", "66.135.192.87");
+            st.put("www.cnn.com", "64.236.16.20");
+            st.put("www.google.com", "216.239.41.99");
+            st.put("www.nytimes.com", "199.239.136.200");
+            st.put("www.microsoft.com", "207.126.99.140");
+            st.put("www.dell.com", "143.166.224.230");
+            st.put("www.slashdot.org", "66.35.250.151");
+            st.put("www.espn.com", "199.181.135.201");
+            st.put("www.weather.com", "63.111.66.11");
+            st.put("www.yahoo.com", "216.109.118.65");
+        }
+
+        // 重新打开文件，不需要重新构建树，这里通过一个只有 8 个页帧的缓冲池来访问文件
+        try (PagedBTree<String, String> st = PagedBTree.open(file, 512, string(32), string(16), 8)) {
+            System.out.println("cs.princeton.edu:  " + st.get("www.cs.princeton.edu"));
+            System.out.println("hardvardsucks.com: " + st.get("www.harvardsucks.com"));
+            System.out.println("simpsons.com:      " + st.get("www.simpsons.com"));
+            System.out.println("apple.com:         " + st.get("www.apple.com"));
+            System.out.println("ebay.com:          " + st.get("www.ebay.com"));
+            System.out.println("dell.com:          " + st.get("www.dell.com"));
+            System.out.println();
+
+            System.out.println("order:   " + st.order());
+            System.out.println("size:    " + st.size());
+            System.out.println("height:  " + st.height());
+            System.out.println(st.bufferPool());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,502 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * 支持快照的 B 树，树中的节点一旦发布之后就不会再被修改：
+ * <br />
+ * 每次 put 或者 delete 时，只会复制从根节点到目标节点的路径上的节点（以及重平衡时涉及到的兄弟节点），
+ * 在复制得到的节点上完成修改之后，再发布一个新的根节点。没有被修改的子树则由新旧两个版本共享，
+ * 因此每次写操作只会额外产生 O(log n) 个节点
+ * <br />
+ * {@link #snapshot()} 返回的是某个时刻的根节点，它引用的所有节点都不会再被修改，
+ * 因此读取快照时不需要任何锁，写操作之间则通过对象锁进行互斥
+ * <br />
+ * 节点的布局和 {@link LongBTree} 一致，元素从 0 开始计数，叶子节点的 children 为 null
+ *
+ * @author : xhliu
+ * @param <Key> : B 树中键值对存储元素索引的 key
+ * @param <Value> : B 树中实际存储数据的载体
+ */
+@SuppressWarnings("unchecked")
+public class SnapshotBTree<Key extends Comparable<Key>, Value> {
+    private final int M;
+
+    static final class Node {
+        private int m;
+        private final Object[] keys;
+        private final Object[] values;
+        private final Node[] children;
+
+        private Node(int M, boolean leaf) {
+            this.keys = new Object[M];
+            this.values = new Object[M];
+            this.children = leaf ? null : new Node[M + 1];
+        }
+
+        private Node(Node x) {
+            this.m = x.m;
+            this.keys = x.keys.clone();
+            this.values = x.values.clone();
+            this.children = x.children == null ? null : x.children.clone();
+        }
+    }
+
+    /**
+     * 当前最新的版本，每次写操作完成之后都会发布一个新的版本
+     */
+    private volatile Snapshot current;
+
+    /*
+        写操作过程中的临时状态，写操作之间是互斥的，因此可以直接使用成员变量
+     */
+    private boolean found;
+    private Object removed;
+
+    public SnapshotBTree(int m) {
+        if (m % 2 == 0 || m < 2) {
+            throw new IllegalArgumentException("阶数 M 只能是大于 1 的奇数");
+        }
+
+        M = m;
+        current = new Snapshot(new Node(M, true), 0, 0);
+    }
+
+    public int size() {
+        return current.size;
+    }
+
+    public int height() {
+        return current.height;
+    }
+
+    /**
+     * 返回当前版本的只读快照，之后的写操作不会影响这个快照
+     */
+    public Snapshot snapshot() {
+        return current;
+    }
+
+    public Value get(Key key) {
+        return current.get(key);
+    }
+
+    /**
+     * 将对应的键值对 key-value 插入到树中，如果树中已经存在了 key，
+     * 那么将使用这个键值对覆盖树中原有的键值对
+     *
+     * @param key   : 键值对对应的 key
+     * @param value : 键值对对应的 value
+     */
+    public synchronized void put(Key key, Value value) {
+        if (key == null) {
+            throw new IllegalArgumentException("argument key fot put() is null");
+        }
+
+        Snapshot s = current;
+        found = false;
+        Node root = insert(s.root, key, value);
+        int height = s.height;
+
+        // 根节点溢出，分裂之后树的高度 +1
+        if (root.m == M) {
+            Node p = new Node(M, false);
+            p.children[0] = root;
+            splitChild(p, 0);
+            root = p;
+            height++;
+        }
+
+        current = new Snapshot(root, found ? s.size : s.size + 1, height);
+    }
+
+    /**
+     * 通过传入的 key 删除对应的键值对
+     *
+     * @param key : 待删除的键值对的 key
+     * @return : 如果删除成功，则返回该 key 对应的 value; 否则，返回 null
+     */
+    public synchronized Value delete(Key key) {
+        if (key == null) {
+            throw new IllegalArgumentException("待删除的 key 不能为 null");
+        }
+
+        Snapshot s = current;
+        found = false;
+        removed = null;
+        Node root = delete(s.root, key);
+        if (!found) return null;
+
+        int height = s.height;
+        // 根节点的元素全部被合并到子节点之后，它唯一的子节点成为新的根节点
+        if (root.m == 0 && root.children != null) {
+            root = root.children[0];
+            height--;
+        }
+
+        current = new Snapshot(root, s.size - 1, height);
+        Object value = removed;
+        removed = null;
+        return (Value) value;
+    }
+
+    /**
+     * 在以 x 为根的子树中插入键值对，返回插入之后的子树的根节点，它是 x 的一个副本，
+     * 元素个数可能暂时地达到 M，此时由调用方对它进行分裂
+     */
+    private Node insert(Node x, Key key, Value value) {
+        int idx = indexOf(x, key);
+        Node c = new Node(x);
+
+        // 键值对已经存在，使用当前的键值对覆盖原有的键值对
+        if (idx >= 0) {
+            c.values[idx] = value;
+            found = true;
+            return c;
+        }
+
+        idx = -idx - 1;
+        if (c.children == null) {
+            insertAt(c, idx, key, value, null);
+            return c;
+        }
+
+        c.children[idx] = insert(x.children[idx], key, value);
+        if (c.children[idx].m == M) splitChild(c, idx);
+        return c;
+    }
+
+    /**
+     * 分裂节点 p 的第 idx 个子节点，这个子节点必须是一个还没有发布的副本，中间元素插入到 p 的位置 idx
+     */
+    private void splitChild(Node p, int idx) {
+        Node x = p.children[idx];
+        int mid = M / 2, n = M - mid - 1;
+
+        Node t = new Node(M, x.children == null);
+        System.arraycopy(x.keys, mid + 1, t.keys, 0, n);
+        System.arraycopy(x.values, mid + 1, t.values, 0, n);
+        if (x.children != null) {
+            System.arraycopy(x.children, mid + 1, t.children, 0, n + 1);
+            Arrays.fill(x.children, mid + 1, M + 1, null);
+        }
+        t.m = n;
+
+        insertAt(p, idx, x.keys[mid], x.values[mid], t);
+        Arrays.fill(x.keys, mid, M, null);
+        Arrays.fill(x.values, mid, M, null);
+        x.m = mid;
+    }
+
+    /**
+     * 在以 x 为根的子树中删除 key，如果 key 不存在则直接返回 x，否则返回删除之后的子树的根节点的副本
+     */
+    private Node delete(Node x, Key key) {
+        int idx = indexOf(x, key);
+
+        if (x.children == null) {
+            if (idx < 0) return x;
+
+            Node c = new Node(x);
+            found = true;
+            removed = c.values[idx];
+            removeAt(c, idx);
+            return c;
+        }
+
+        Node c;
+        if (idx < 0) {
+            idx = -idx - 1;
+            Node u = delete(x.children[idx], key);
+            if (u == x.children[idx]) return x;
+
+            c = new Node(x);
+            c.children[idx] = u;
+        } else {
+            // 使用后继子树中的最小元素替换待删除的元素，然后在后继子树中删除这个最小元素
+            c = new Node(x);
+            found = true;
+            removed = c.values[idx];
+            c.children[idx + 1] = deleteMin(x.children[idx + 1], c, idx);
+            idx++;
+        }
+
+        if (c.children[idx].m < M / 2) reBalance(c, idx);
+        return c;
+    }
+
+    /**
+     * 删除以 x 为根的子树中的最小元素，并将它移动到节点 target 的位置 idx
+     */
+    private Node deleteMin(Node x, Node target, int idx) {
+        Node c = new Node(x);
+        if (c.children == null) {
+            target.keys[idx] = c.keys[0];
+            target.values[idx] = c.values[0];
+            removeAt(c, 0);
+            return c;
+        }
+
+        c.children[0] = deleteMin(x.children[0], target, idx);
+        if (c.children[0].m < M / 2) reBalance(c, 0);
+        return c;
+    }
+
+    /**
+     * 重平衡节点 p 的第 pos 个子节点，p 以及这个子节点都必须是还没有发布的副本，
+     * 借用或者合并时涉及到的兄弟节点则会先复制再修改
+     */
+    private void reBalance(Node p, int pos) {
+        Node cur = p.children[pos];
+        Node left = pos > 0 ? p.children[pos - 1] : null;
+        Node right = pos < p.m ? p.children[pos + 1] : null;
+
+        // 左兄弟节点的最大元素上移成为分隔元素，原有的分隔元素下移成为当前节点的最小元素
+        if (left != null && left.m > M / 2) {
+            left = p.children[pos - 1] = new Node(left);
+            insertAt(cur, 0, p.keys[pos - 1], p.values[pos - 1], null);
+            if (cur.children != null) {
+                cur.children[1] = cur.children[0];
+                cur.children[0] = left.children[left.m];
+            }
+
+            p.keys[pos - 1] = left.keys[left.m - 1];
+            p.values[pos - 1] = left.values[left.m - 1];
+            removeAt(left, left.m - 1);
+            return;
+        }
+
+        // 右兄弟节点的最小元素上移成为分隔元素，原有的分隔元素下移成为当前节点的最大元素
+        if (right != null && right.m > M / 2) {
+            right = p.children[pos + 1] = new Node(right);
+            insertAt(cur, cur.m, p.keys[pos], p.values[pos], right.children == null ? null : right.children[0]);
+
+            p.keys[pos] = right.keys[0];
+            p.values[pos] = right.values[0];
+            if (right.children != null)
+                System.arraycopy(right.children, 1, right.children, 0, right.m);
+            int n = right.m - 1;
+            System.arraycopy(right.keys, 1, right.keys, 0, n);
+            System.arraycopy(right.values, 1, right.values, 0, n);
+            right.keys[n] = right.values[n] = null;
+            if (right.children != null) right.children[n + 1] = null;
+            right.m = n;
+            return;
+        }
+
+        if (left != null) {
+            p.children[pos - 1] = new Node(left);
+            merge(p, pos - 1);
+        } else {
+            merge(p, pos);
+        }
+    }
+
+    /**
+     * 将父节点中位置 idx 的分隔元素，以及它两侧的子节点合并成为左边的子节点，左边的子节点必须是还没有发布的副本
+     */
+    private void merge(Node parent, int idx) {
+        Node left = parent.children[idx], right = parent.children[idx + 1];
+
+        left.keys[left.m] = parent.keys[idx];
+        left.values[left.m] = parent.values[idx];
+        System.arraycopy(right.keys, 0, left.keys, left.m + 1, right.m);
+        System.arraycopy(right.values, 0, left.values, left.m + 1, right.m);
+        if (left.children != null)
+            System.arraycopy(right.children, 0, left.children, left.m + 1, right.m + 1);
+        left.m += right.m + 1;
+
+        removeAt(parent, idx);
+    }
+
+    private void insertAt(Node x, int idx, Object key, Object value, Node right) {
+        int n = x.m - idx;
+        System.arraycopy(x.keys, idx, x.keys, idx + 1, n);
+        System.arraycopy(x.values, idx, x.values, idx + 1, n);
+        x.keys[idx] = key;
+        x.values[idx] = value;
+
+        if (x.children != null) {
+            System.arraycopy(x.children, idx + 1, x.children, idx + 2, n);
+            x.children[idx + 1] = right;
+        }
+        x.m++;
+    }
+
+    private void removeAt(Node x, int idx) {
+        int n = x.m - idx - 1;
+        System.arraycopy(x.keys, idx + 1, x.keys, idx, n);
+        System.arraycopy(x.values, idx + 1, x.values, idx, n);
+        x.keys[x.m - 1] = x.values[x.m - 1] = null;
+
+        if (x.children != null) {
+            System.arraycopy(x.children, idx + 2, x.children, idx + 1, n);
+            x.children[x.m] = null;
+        }
+        x.m--;
+    }
+
+    /**
+     * 在节点 x 的有效元素 [0, x.m) 中二分查找 key，返回值的约定和 {@link Arrays#binarySearch} 一致
+     */
+    private static <Key extends Comparable<Key>> int indexOf(Node x, Key key) {
+        int lo = 0, hi = x.m - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = key.compareTo((Key) x.keys[mid]);
+            if (cmp < 0) hi = mid - 1;
+            else if (cmp > 0) lo = mid + 1;
+            else return mid;
+        }
+
+        return -lo - 1;
+    }
+
+    /**
+     * 树在某个时刻的只读快照，它引用的节点都不会再被修改，因此可以在任意线程中无锁地读取
+     */
+    public final class Snapshot {
+        private final Node root;
+        private final int size;
+        private final int height;
+
+        private Snapshot(Node root, int size, int height) {
+            this.root = root;
+            this.size = size;
+            this.height = height;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int height() {
+            return height;
+        }
+
+        public Value get(Key key) {
+            if (key == null) {
+                throw new IllegalArgumentException("key 不能为 null");
+            }
+
+            Node x = root;
+            while (true) {
+                int idx = indexOf(x, key);
+                if (idx >= 0) return (Value) x.values[idx];
+                if (x.children == null) return null;
+
+                x = x.children[-idx - 1];
+            }
+        }
+
+        /**
+         * 返回一个遍历快照中区间 [from, to] 的游标，from 或者 to 为 null 时表示对应的方向上不设边界
+         */
+        public Cursor range(Key from, Key to) {
+            Cursor cursor = new Cursor(this, to);
+            if (from == null) cursor.pushLeftmost(root);
+            else cursor.seek(from);
+            return cursor;
+        }
+    }
+
+    /**
+     * 按照 key 的顺序遍历快照的游标，和 {@link BTree.Cursor} 一样使用显式的栈记录从根节点到当前位置的路径，
+     * 由于快照不会被修改，因此游标在任何时候都不会失效
+     * <br />
+     * 栈中的每一层记录了该层的节点，以及该节点中下一个待访问的元素的位置，位置 i 表示 children[i] 这个区间已经在下层中处理
+     */
+    public final class Cursor {
+        private final Snapshot snapshot;
+        private final Node[] nodes;
+        private final int[] pos;
+        private final Key to;
+
+        private int top = -1;
+        private Node node; // 当前元素所在的节点
+        private int idx;   // 当前元素在节点中的位置
+
+        private Cursor(Snapshot snapshot, Key to) {
+            this.snapshot = snapshot;
+            this.nodes = new Node[snapshot.height + 1];
+            this.pos = new int[snapshot.height + 1];
+            this.to = to;
+        }
+
+        private void seek(Key key) {
+            Node x = snapshot.root;
+            while (true) {
+                nodes[++top] = x;
+                int i = indexOf(x, key);
+                if (i >= 0) {
+                    pos[top] = i;
+                    return;
+                }
+
+                pos[top] = -i - 1;
+                if (x.children == null) return;
+                x = x.children[-i - 1];
+            }
+        }
+
+        private void pushLeftmost(Node x) {
+            while (x != null) {
+                nodes[++top] = x;
+                pos[top] = 0;
+                x = x.children == null ? null : x.children[0];
+            }
+        }
+
+        public boolean next() {
+            while (top >= 0 && pos[top] >= nodes[top].m) top--;
+            if (top < 0) {
+                node = null;
+                return false;
+            }
+
+            Node x = nodes[top];
+            int i = pos[top]++;
+            if (to != null && to.compareTo((Key) x.keys[i]) < 0) {
+                top = -1;
+                node = null;
+                return false;
+            }
+
+            node = x;
+            idx = i;
+            // 访问完当前元素之后，下一个待访问的是它的右区间中的最小元素
+            if (x.children != null) pushLeftmost(x.children[i + 1]);
+            return true;
+        }
+
+        public Key key() {
+            if (node == null) throw new NoSuchElementException();
+            return (Key) node.keys[idx];
+        }
+
+        public Value value() {
+            if (node == null) throw new NoSuchElementException();
+            return (Value) node.values[idx];
+        }
+    }
+
+    public static void main(String[] args) {
+        SnapshotBTree<Integer, Integer> tree = new SnapshotBTree<>(5);
+        for (int i = 1; i <= 300; ++i)
+            tree.put(i, i);
+
+        SnapshotBTree<Integer, Integer>.Snapshot snapshot = tree.snapshot();
+        for (int i = 1; i <= 250; ++i)
+            tree.delete(i);
+
+        System.out.println("tree size:      " + tree.size());
+        System.out.println("tree height:    " + tree.height());
+        System.out.println("snapshot size:  " + snapshot.size());
+        System.out.println("snapshot 100:   " + snapshot.get(100));
+        System.out.println("tree 100:       " + tree.get(100));
+
+        SnapshotBTree<Integer, Integer>.Cursor cursor = snapshot.range(95, 105);
+        while (cursor.next())
+            System.out.print(cursor.key() + " ");
+        System.out.println();
+    }
+}
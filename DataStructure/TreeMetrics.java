@@ -0,0 +1,239 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntSupplier;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * 树的结构指标的记录者，由树在分裂、合并、借用以及每次操作结束时更新，
+ * 通过树的 enableMetrics() 开启，没有开启时树只需要额外进行一次 null 判断
+ * <br />
+ * 计数器的更新和树的修改位于同一个线程中，因此不需要同步。其它线程（例如 JMX）读取到的值可能会稍有滞后，
+ * 填充因子由树维护的元素个数和节点个数直接计算，读取时不需要遍历树
+ *
+ * @author : xhliu
+ */
+public class TreeMetrics implements TreeMetricsMXBean {
+    /**
+     * 记录延迟的操作类型
+     */
+    public enum Op {
+        GET, PUT, DELETE
+    }
+
+    long splits, merges, borrowsFromLeft, borrowsFromRight;
+    long comparisons; // 所有操作的比较次数，由树在每次查找节点时累加
+    private long lookups, lookupComparisons;
+
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Op.values().length];
+
+    private final DoubleSupplier fillFactor;
+    private final IntSupplier height, size;
+
+    TreeMetrics(DoubleSupplier fillFactor, IntSupplier height, IntSupplier size) {
+        this.fillFactor = fillFactor;
+        this.height = height;
+        this.size = size;
+        for (int i = 0; i < latencies.length; ++i)
+            latencies[i] = new LatencyHistogram();
+    }
+
+    /**
+     * 记录一次查找，comparisons 为这次查找进行的比较次数
+     */
+    void recordLookup(long comparisons, long nanos) {
+        lookups++;
+        lookupComparisons += comparisons;
+        latencies[Op.GET.ordinal()].record(nanos);
+    }
+
+    void record(Op op, long nanos) {
+        latencies[op.ordinal()].record(nanos);
+    }
+
+    public LatencyHistogram latency(Op op) {
+        return latencies[op.ordinal()];
+    }
+
+    /**
+     * 将指标注册到平台的 MBean 服务器中，对象名称为 DataStructure:type=TreeMetrics,name=name
+     *
+     * @param name : 区分不同的树的名称
+     * @return : 注册使用的对象名称
+     */
+    public ObjectName register(String name) {
+        try {
+            ObjectName objectName = new ObjectName("DataStructure:type=TreeMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("注册 MBean 失败", e);
+        }
+    }
+
+    @Override
+    public long getSplits() {
+        return splits;
+    }
+
+    @Override
+    public long getMerges() {
+        return merges;
+    }
+
+    @Override
+    public long getBorrowsFromLeft() {
+        return borrowsFromLeft;
+    }
+
+    @Override
+    public long getBorrowsFromRight() {
+        return borrowsFromRight;
+    }
+
+    @Override
+    public double getAverageFillFactor() {
+        return fillFactor.getAsDouble();
+    }
+
+    @Override
+    public int getHeight() {
+        return height.getAsInt();
+    }
+
+    @Override
+    public int getSize() {
+        return size.getAsInt();
+    }
+
+    @Override
+    public long getLookups() {
+        return lookups;
+    }
+
+    @Override
+    public double getComparisonsPerLookup() {
+        return lookups == 0 ? 0 : (double) lookupComparisons / lookups;
+    }
+
+    @Override
+    public long getGetLatencyP50Nanos() {
+        return latency(Op.GET).percentile(0.5);
+    }
+
+    @Override
+    public long getGetLatencyP99Nanos() {
+        return latency(Op.GET).percentile(0.99);
+    }
+
+    @Override
+    public long getPutLatencyP50Nanos() {
+        return latency(Op.PUT).percentile(0.5);
+    }
+
+    @Override
+    public long getPutLatencyP99Nanos() {
+        return latency(Op.PUT).percentile(0.99);
+    }
+
+    @Override
+    public long getDeleteLatencyP50Nanos() {
+        return latency(Op.DELETE).percentile(0.5);
+    }
+
+    @Override
+    public long getDeleteLatencyP99Nanos() {
+        return latency(Op.DELETE).percentile(0.99);
+    }
+
+    @Override
+    public void reset() {
+        splits = merges = borrowsFromLeft = borrowsFromRight = 0;
+        comparisons = lookups = lookupComparisons = 0;
+        for (LatencyHistogram h : latencies)
+            h.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TreeMetrics[height=%d, size=%d, splits=%d, merges=%d, borrowsFromLeft=%d, " +
+                        "borrowsFromRight=%d, fillFactor=%.2f, comparisonsPerLookup=%.2f, get=%s, put=%s, delete=%s]",
+                getHeight(), getSize(), splits, merges, borrowsFromLeft, borrowsFromRight, getAverageFillFactor(),
+                getComparisonsPerLookup(), latency(Op.GET), latency(Op.PUT), latency(Op.DELETE));
+    }
+
+    /**
+     * 对数分桶的延迟直方图，每个 2 的幂次区间再均分为 8 个桶，因此百分位数的相对误差不超过 12.5%，
+     * 而整个直方图只需要固定的 496 个计数器
+     */
+    public static final class LatencyHistogram {
+        private static final int SUB_BITS = 3, SUB = 1 << SUB_BITS;
+
+        private final long[] counts = new long[(64 - SUB_BITS + 1) * SUB];
+        private long count, total, max;
+
+        public void record(long nanos) {
+            if (nanos < 0) nanos = 0;
+            counts[bucket(nanos)]++;
+            count++;
+            total += nanos;
+            max = Math.max(max, nanos);
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public long max() {
+            return max;
+        }
+
+        public double mean() {
+            return count == 0 ? 0 : (double) total / count;
+        }
+
+        /**
+         * 返回第 p 个百分位数所在的桶的上界，没有任何记录时返回 0
+         *
+         * @param p : 百分位，取值范围为 [0, 1]
+         */
+        public long percentile(double p) {
+            if (count == 0) return 0;
+
+            long rank = Math.max(1, (long) Math.ceil(p * count)), seen = 0;
+            for (int b = 0; b < counts.length; ++b) {
+                seen += counts[b];
+                if (seen >= rank) return Math.min(upperBound(b), max);
+            }
+            return max;
+        }
+
+        public void reset() {
+            Arrays.fill(counts, 0);
+            count = total = max = 0;
+        }
+
+        /*
+            小于 SUB 的值直接作为桶的下标，否则由最高位的位置 e 以及紧随其后的 SUB_BITS 位决定所在的桶
+         */
+        private static int bucket(long v) {
+            if (v < SUB) return (int) v;
+            int e = 63 - Long.numberOfLeadingZeros(v);
+            return (e - SUB_BITS + 1) * SUB + (int) (v >>> (e - SUB_BITS)) - SUB;
+        }
+
+        private static long upperBound(int b) {
+            if (b < SUB) return b;
+            int e = b / SUB + SUB_BITS - 1, sub = b % SUB;
+            long lower = (long) (SUB + sub) << (e - SUB_BITS);
+            return lower + (1L << (e - SUB_BITS)) - 1;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("{count=%d, mean=%.0fns, p50=%dns, p99=%dns, max=%dns}",
+                    count, mean(), percentile(0.5), percentile(0.99), max);
+        }
+    }
+}
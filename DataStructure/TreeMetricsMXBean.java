@@ -0,0 +1,52 @@
+/**
+ * B 树以及 B+ 树的结构指标，既可以直接通过 {@link TreeMetrics} 读取，也可以通过
+ * {@link TreeMetrics#register(String)} 注册到 JMX 之后通过 jconsole 等工具读取
+ * <br />
+ * 计数器从开启指标开始累计，填充因子、高度以及元素个数则是在读取时计算的当前值
+ *
+ * @author : xhliu
+ */
+public interface TreeMetricsMXBean {
+    long getSplits();
+
+    long getMerges();
+
+    long getBorrowsFromLeft();
+
+    long getBorrowsFromRight();
+
+    /**
+     * 所有节点（包括根节点）的总体填充因子，即元素个数和所有节点的容量之比 entries / (nodes * (M - 1))，由树维护的计数直接计算。
+     * B 树的 entries 包括还没有被压缩的墓碑元素；B+ 树的 entries 只包括叶子节点中的键值对，索引节点的容量计入了分母，
+     * 而其中的分隔元素没有计入分子，因此结果比实际占用的比例低大约 1 / (M - 1)，阶数较小时偏差更加明显
+     */
+    double getAverageFillFactor();
+
+    int getHeight();
+
+    int getSize();
+
+    long getLookups();
+
+    /**
+     * 平均每次查找进行的 key 的比较次数
+     */
+    double getComparisonsPerLookup();
+
+    long getGetLatencyP50Nanos();
+
+    long getGetLatencyP99Nanos();
+
+    long getPutLatencyP50Nanos();
+
+    long getPutLatencyP99Nanos();
+
+    long getDeleteLatencyP50Nanos();
+
+    long getDeleteLatencyP99Nanos();
+
+    /**
+     * 清空所有的计数器以及延迟直方图
+     */
+    void reset();
+}